@@ -18,12 +18,17 @@ import android.widget.Toast;
 import androidx.fragment.app.Fragment;
 
 import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.JsonCodec;
 
+import java.io.File;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -52,11 +57,28 @@ public class LoginFragment extends Fragment {
     private static final String LAST_NAME_KEY = "lastName";
     private static final String STATUS_KEY = "success";
 
+    // Downloads the user's data: persons on one thread and events on the other, let go once they are idle
+    private static final ThreadPoolExecutor DOWNLOADS = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>());
+
+    static {
+        DOWNLOADS.allowCoreThreadTimeOut(true);
+    }
+
+    // The persons and events last downloaded for each user, so an unchanged family isn't downloaded again
+    private static volatile ResponseCache responses;
+
     public LoginFragment() {}
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
+        // Get the JSON adapters ready while the user types, so the first request doesn't wait for them
+        DOWNLOADS.execute(JsonCodec::warmUp);
+        if (responses == null) {
+            responses = new ResponseCache(new File(requireContext().getCacheDir(), "responses"));
+        }
+
         // Inflate the layout for this fragment
         View theView = inflater.inflate(R.layout.login_fragment, container, false);
         Button loginButton = theView.findViewById(R.id.loginButton);
@@ -372,22 +394,30 @@ public class LoginFragment extends Fragment {
 
 
          //Runs the background task to download user data from the server.
-         //If successful, updates the local cache with the downloaded data and sends a success message to the main thread.
+         //Persons and events are downloaded and parsed at the same time; once both have arrived,
+         //updates the local cache with the downloaded data and sends a success message to the main thread.
          //If unsuccessful, logs an error message and sends a failure message to the main thread.
+         //If storing the data fails, the main thread is still sent a failure message, so the login ends.
 
         @Override
         public void run() {
-            DataCache dataCache = DataCache.getInstance();
-            ServerProxy proxy = new ServerProxy();
-            PersonResponse personResponse = proxy.people(host, port);
-            EventResponse eventResponse = proxy.events(host, port);
+            ServerProxy proxy = new ServerProxy(responses);
+            proxy.peopleAndEvents(host, port, DOWNLOADS, this::onData).whenComplete((ignored, e) -> {
+                if (e != null) {
+                    Log.e("Data", "Unable to load user data: " + e.getMessage());
+                    sendFailure();
+                }
+            });
+        }
+
+        private void onData(PersonResponse personResponse, EventResponse eventResponse) {
             Log.d("Data", String.format("Persons result: %s, %s",
                     personResponse.getSuccess()?"success":"failure", personResponse.getMessage()));
             Log.d("Data", String.format("Events result: %s, %s",
-                    personResponse.getSuccess()?"success":"failure", eventResponse.getMessage()));
+                    eventResponse.getSuccess()?"success":"failure", eventResponse.getMessage()));
             if (personResponse.getSuccess() && eventResponse.getSuccess()) {
-                dataCache.setPersons(personResponse.getData());
-                dataCache.setEvents(eventResponse.getData());
+                DataCache dataCache = DataCache.getInstance();
+                dataCache.setData(personResponse.getData(), eventResponse.getData());
             }
             else {
                 Log.e("Data", "Unable to download user data from server");
@@ -413,6 +443,14 @@ public class LoginFragment extends Fragment {
             handler.sendMessage(message);
         }
 
+        private void sendFailure() {
+            Message message = Message.obtain();
+            Bundle messageBundle = new Bundle();
+            messageBundle.putString(STATUS_KEY, "failure");
+            message.setData(messageBundle);
+            handler.sendMessage(message);
+        }
+
     }
 
     private static class LoginData {
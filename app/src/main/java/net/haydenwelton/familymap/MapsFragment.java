@@ -36,13 +36,12 @@ import com.google.android.gms.maps.model.Polyline;
 import com.google.android.gms.maps.model.PolylineOptions;
 
 import net.haydenwelton.familymap.data.DataCache;
-import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.data.DataSnapshot;
+import net.haydenwelton.familymap.data.EventCursor;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Locale;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -58,8 +57,7 @@ public class MapsFragment extends Fragment implements OnMapReadyCallback, Google
     private static final String SPOUSE_KEY = "spouse";
     private static final String FAMILY_KEY = "family";
     private static final String LIFE_KEY = "life";
-    private Person[] filteredPersons = null;
-    private Event[] filteredEvents = null;
+    private EventCursor filteredEvents = null;
     ArrayList<LatLng> spouseLine = null;
     ArrayList<ArrayList<LatLng>> lifeLines = null;
     ArrayList<FamilyLine> familyLines = null;
@@ -281,13 +279,16 @@ public class MapsFragment extends Fragment implements OnMapReadyCallback, Google
             // Gets the boolean value for success from the Bundle
             boolean success = bundle.getBoolean(SUCCESS_KEY);
             if (success) {
-                // If success is true, adds a marker for each event to the GoogleMap
-                for (Event event : fragment.filteredEvents) {
-                    Log.d("Maps", String.format("Adding %s event", event.getEventType()));
+                // If success is true, adds a marker for each event to the GoogleMap, reading the
+                // location and type straight from the event columns
+                EventCursor cursor = fragment.filteredEvents;
+                while (cursor.next()) {
+                    Log.d("Maps", String.format("Adding %s event", cursor.getEventType()));
                     // Adds a marker to the GoogleMap and stores the marker and its corresponding event in the eventsOnMap HashMap
                     fragment.eventsOnMap.put(googleMap.addMarker(new MarkerOptions()
-                            .position(new LatLng(event.getLatitude(), event.getLongitude()))
-                            .icon(BitmapDescriptorFactory.defaultMarker(dataCache.getColor(event.getEventType())))), event);
+                            .position(new LatLng(cursor.getLatitude(), cursor.getLongitude()))
+                            .icon(BitmapDescriptorFactory.defaultMarker(dataCache.getColor(cursor.getEventType())))),
+                            cursor.getEvent());
                 }
             } else {
                 // If success is false, displays a toast message indicating that the markers could not be added to the map
@@ -316,9 +317,8 @@ public class MapsFragment extends Fragment implements OnMapReadyCallback, Google
             SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
             // Get the DataCache instance with the filtered data
             DataCache dataCache = DataCache.getFilteredInstance(prefs);
-            // Get the filtered events and persons from the DataCache instance
-            filteredEvents = dataCache.getEvents();
-            filteredPersons = dataCache.getFilteredPersons();
+            // Get a cursor over the filtered events from the DataCache instance
+            filteredEvents = dataCache.getFilteredEventCursor();
             // Call the sendMessage method to send the results to the UI thread
             sendMessage();
         }
@@ -422,6 +422,9 @@ public class MapsFragment extends Fragment implements OnMapReadyCallback, Google
         private final LineHandler handler;
         private final Context context;
 
+        // The cache state the lines are drawn from, taken once so every line agrees with the same filter
+        private DataSnapshot snapshot;
+
         // Constructor that initializes the handler and context variables
         protected LineTask(LineHandler handler, Context context) {
             this.handler = handler;
@@ -434,6 +437,8 @@ public class MapsFragment extends Fragment implements OnMapReadyCallback, Google
             // Get the shared preferences for the app
             SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
 
+            snapshot = DataCache.getInstance().getSnapshot();
+
             // Initialize variables for the spouse, life, and family lines
             spouseLine = null;
             lifeLines = null;
@@ -470,115 +475,93 @@ public class MapsFragment extends Fragment implements OnMapReadyCallback, Google
         }
 
         private ArrayList<LatLng> findSpouseLine() {
-            // Find the earliest birth event or earliest event if no birth event exists for the selected person's spouse
-            Event cachedEvent = null;
-            for (Event event : filteredEvents) {
-                if (event.getPersonID().equals(selectedPerson.getSpouseID())) {
-                    if (event.getEventType().equalsIgnoreCase("birth")) {
-                        // Add the two events to an ArrayList and return it
-                        ArrayList<LatLng> points = new ArrayList<>();
-                        points.add(new LatLng(selectedEvent.getLatitude(), selectedEvent.getLongitude()));
-                        points.add(new LatLng(event.getLatitude(), event.getLongitude()));
-                        return points;
-                    }
-                    else {
-                        // Cache the earliest event if there is no birth event
-                        if (cachedEvent == null || event.compareTo(cachedEvent) < 0) {
-                            cachedEvent = event;
-                        }
-                    }
-                }
-            }
+            // The spouse's events are sorted with birth first, so the first one is either their
+            // birth or, if there is no birth event, their earliest event
+            LatLng spouseLocation = getFirstLocation(selectedPerson.getSpouseID(), snapshot);
             // If no events were found for the spouse, return null
-            if (cachedEvent == null) return null;
-            else {
-                // Add the two events to an ArrayList and return it
-                ArrayList<LatLng> points = new ArrayList<>();
-                points.add(new LatLng(selectedEvent.getLatitude(), selectedEvent.getLongitude()));
-                points.add(new LatLng(cachedEvent.getLatitude(), cachedEvent.getLongitude()));
-                return points;
-            }
+            if (spouseLocation == null) return null;
+            // Add the two events to an ArrayList and return it
+            ArrayList<LatLng> points = new ArrayList<>();
+            points.add(new LatLng(selectedEvent.getLatitude(), selectedEvent.getLongitude()));
+            points.add(spouseLocation);
+            return points;
         }
 
         private ArrayList<ArrayList<LatLng>> findLifeLines() {
-            // Create a list of events for the selected person
-            ArrayList<Event> storyEvents = new ArrayList<>();
+            // Walk the selected person's events in chronological order
+            EventCursor storyEvents = snapshot.getPersonEventCursor(selectedPerson.getPersonID());
             ArrayList<ArrayList<LatLng>> lifeLines = null;
-            for (Event event : filteredEvents) {
-                if (event.getPersonID().equals(selectedPerson.getPersonID())) {
-                    storyEvents.add(event);
-                }
-            }
+            LatLng previous = null;
             // Create an ArrayList of ArrayLists, where each inner ArrayList contains the LatLng points for a line segment
-            for (int i = 0; i < storyEvents.size() - 1; i++) {
-                Event event1 = storyEvents.get(i);
-                Event event2 = storyEvents.get(i + 1);
-                if (lifeLines == null) {
-                    lifeLines = new ArrayList<>();
+            while (storyEvents.next()) {
+                LatLng current = new LatLng(storyEvents.getLatitude(), storyEvents.getLongitude());
+                if (previous != null) {
+                    if (lifeLines == null) {
+                        lifeLines = new ArrayList<>();
+                    }
+                    ArrayList<LatLng> points = new ArrayList<>();
+                    points.add(previous);
+                    points.add(current);
+                    lifeLines.add(points);
                 }
-                ArrayList<LatLng> points = new ArrayList<>();
-                points.add(new LatLng(event1.getLatitude(), event1.getLongitude()));
-                points.add(new LatLng(event2.getLatitude(), event2.getLongitude()));
-                lifeLines.add(points);
+                previous = current;
             }
             return lifeLines;
         }
 
         private ArrayList<FamilyLine> findFamilyLines() {
-            // Create a map of Person objects keyed by person ID
-            HashMap<String, Person> personMap = DataProcessor.generatePersonMap(filteredPersons);
-            // Create a map of Event objects keyed by person ID and sorted by year
-            HashMap<String, TreeSet<Event>> eventsByPerson = DataProcessor.generateSortedEventMap(filteredEvents, personMap);
             // Create an ArrayList of FamilyLine objects, where each object represents a lineage line
             ArrayList<FamilyLine> familyLines = new ArrayList<>();
 
-            // Recursive function to add all lineage lines for a given person
-            addLineage(familyLines, personMap, eventsByPerson, selectedPerson, 0);
+            // Walk the selected person's filtered ancestors, adding a line from each person to each parent
+            snapshot.walkLineage(selectedPerson.getPersonID(), true, (person, mother, father, generation) ->
+                    addParentLines(familyLines, person, mother, father, generation));
             // Return null if no lineage lines were found
             if (familyLines.isEmpty()) return null;
             return familyLines;
         }
 
-        private void addLineage(ArrayList<FamilyLine> familyLines,
-                                HashMap<String, Person> personMap,
-                                HashMap<String, TreeSet<Event>> eventsByPerson,
-                                Person person,
-                                int generation) {
-            // Base case: return if the person is null
-            if (person == null) return;
-            // Recurse on the person's mother and father
-            Person mother = personMap.get(person.getMotherID());
-            Person father = personMap.get(person.getFatherID());
-            addLineage(familyLines, personMap, eventsByPerson, mother, generation + 1);
-            addLineage(familyLines, personMap, eventsByPerson, father, generation + 1);
-            ArrayList<LatLng> points = new ArrayList<>();
-            Event personEvent;
+        private void addParentLines(ArrayList<FamilyLine> familyLines,
+                                    Person person,
+                                    Person mother,
+                                    Person father,
+                                    int generation) {
+            LatLng personLocation;
 
             // Get selected event, not first event of selectedPerson
             if (person == selectedPerson) {
-                personEvent = selectedEvent;
+                personLocation = new LatLng(selectedEvent.getLatitude(), selectedEvent.getLongitude());
             }
             else {
-                personEvent = getFirstEvent(person.getPersonID(), eventsByPerson);
+                personLocation = getFirstLocation(person.getPersonID(), snapshot);
             }
+            if (personLocation == null) return;
             if (mother != null) {
-                Event firstEventMother = getFirstEvent(mother.getPersonID(), eventsByPerson);
-                points.add(new LatLng(personEvent.getLatitude(), personEvent.getLongitude()));
-                points.add(new LatLng(firstEventMother.getLatitude(), firstEventMother.getLongitude()));
-                familyLines.add(new FamilyLine(generation, points));
+                LatLng motherLocation = getFirstLocation(mother.getPersonID(), snapshot);
+                if (motherLocation != null) {
+                    // Each line gets its own points, or the second would also draw the first
+                    ArrayList<LatLng> points = new ArrayList<>();
+                    points.add(personLocation);
+                    points.add(motherLocation);
+                    familyLines.add(new FamilyLine(generation, points));
+                }
             }
             if (father != null) {
-                Event firstEventFather = getFirstEvent(father.getPersonID(), eventsByPerson);
-                points.add(new LatLng(personEvent.getLatitude(), personEvent.getLongitude()));
-                points.add(new LatLng(firstEventFather.getLatitude(), firstEventFather.getLongitude()));
-                familyLines.add(new FamilyLine(generation, points));
+                LatLng fatherLocation = getFirstLocation(father.getPersonID(), snapshot);
+                if (fatherLocation != null) {
+                    ArrayList<LatLng> points = new ArrayList<>();
+                    points.add(personLocation);
+                    points.add(fatherLocation);
+                    familyLines.add(new FamilyLine(generation, points));
+                }
             }
         }
 
-        private Event getFirstEvent(String personID, HashMap<String, TreeSet<Event>> eventsByPerson) {
-            Set<Event> orderedEvents = eventsByPerson.get(personID);
-            assert orderedEvents != null;
-            return orderedEvents.iterator().next();
+        // Returns the location of the person's first event, or null if they have no visible events
+        private LatLng getFirstLocation(String personID, DataSnapshot snapshot) {
+            EventCursor orderedEvents = snapshot.getPersonEventCursor(personID);
+            if (!orderedEvents.next()) return null;
+            return new LatLng(orderedEvents.getLatitude(), orderedEvents.getLongitude());
         }
     }
 
@@ -13,7 +13,6 @@ import net.haydenwelton.familymap.adapter.PersonExpandableListAdapter;
 import net.haydenwelton.familymap.data.DataCache;
 import net.haydenwelton.familymap.data.DataProcessor;
 import net.haydenwelton.familymap.model.FamilyMember;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -90,19 +89,8 @@ public class PersonActivity extends AppCompatActivity {
             // Get an instance of DataCache class
             DataCache dataCache = DataCache.getInstance();
 
-            // Create an ArrayList to store person's events
-            ArrayList<Event> personEvents = new ArrayList<>();
-
-            // Iterate through all events
-            for (Event event : dataCache.getEvents()) {
-                // Check if the event is for the current person
-                if (event.getPersonID().equals(personID)) {
-                    personEvents.add(event);
-                }
-            }
-
-            // Sort the personEvents by chronological order
-            personEvents.sort(new Event.EventComparator());
+            // Get the person's events, already sorted in chronological order
+            List<Event> personEvents = dataCache.getPersonEvents(personID);
 
             // Return the list of person's events
             return personEvents;
@@ -126,8 +114,8 @@ public class PersonActivity extends AppCompatActivity {
             // Get the root person based on the personID
             Person rootPerson = dataCache.getPersonByID(personID);
 
-            // Find the family members of the root person
-            List<FamilyMember> familyMembers = DataProcessor.findFamily(rootPerson);
+            // Find the family members of the root person, including siblings and grandparents
+            List<FamilyMember> familyMembers = DataProcessor.findExtendedFamily(rootPerson);
 
             // Return the list of family members
             return familyMembers;
@@ -0,0 +1,247 @@
+package net.haydenwelton.familymap;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Keeps the last /person/ and /event/ responses of each user on disk, with the ETag and Last-Modified the server
+ * sent with them. ServerProxy asks the server whether its copy is still current, and when the server answers
+ * 304 Not Modified it reads the copy instead of downloading the whole response again.
+ *
+ * Each user of each server has a directory named after a hash of the server's host and port and the username, so
+ * the same username on another server never gets this one's copies. A response is stored as its decompressed
+ * JSON next to a properties file holding its validators; the properties are written last, so a copy without
+ * them is never offered to the server.
+ */
+public class ResponseCache {
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+
+    private final File directory;
+
+    public ResponseCache(File directory) {
+        this.directory = directory;
+    }
+
+    // Asks the server to answer 304 if the stored copy of name is still current. Sends nothing without one.
+    // The connection's URL says which server the copy came from.
+    void addValidators(HttpURLConnection connection, String username, String name) {
+        File userDirectory = userDirectory(connection, username);
+        File body = bodyFile(userDirectory, name);
+        Properties validators = readValidators(userDirectory, name);
+        if (validators == null || !body.isFile()) return;
+        String etag = validators.getProperty(ETAG);
+        String lastModified = validators.getProperty(LAST_MODIFIED);
+        if (etag != null) connection.setRequestProperty("If-None-Match", etag);
+        if (lastModified != null) connection.setRequestProperty("If-Modified-Since", lastModified);
+    }
+
+    // Opens the stored copy of name, to read in place of a 304's empty body.
+    InputStream openStored(HttpURLConnection connection, String username, String name) throws IOException {
+        return new FileInputStream(bodyFile(userDirectory(connection, username), name));
+    }
+
+    // Returns the response body, copied to disk as it is read when the server sent validators for it.
+    // The copy replaces the stored one once the response is known to be good; see Download.store.
+    Download download(HttpURLConnection connection, String username, String name, InputStream body)
+            throws IOException {
+        String etag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+        File userDirectory = userDirectory(connection, username);
+        if (etag == null && lastModified == null) {
+            return new Download(body, userDirectory, name, null, null);
+        }
+        Properties validators = new Properties();
+        if (etag != null) validators.setProperty(ETAG, etag);
+        if (lastModified != null) validators.setProperty(LAST_MODIFIED, lastModified);
+        if (!userDirectory.isDirectory() && !userDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + userDirectory);
+        }
+        return new Download(body, userDirectory, name, validators,
+                new FileOutputStream(partFile(userDirectory, name)));
+    }
+
+    // Forgets the stored copy of name, so it is downloaded in full next time.
+    void remove(HttpURLConnection connection, String username, String name) {
+        File userDirectory = userDirectory(connection, username);
+        validatorFile(userDirectory, name).delete();
+        bodyFile(userDirectory, name).delete();
+    }
+
+    private Properties readValidators(File userDirectory, String name) {
+        File file = validatorFile(userDirectory, name);
+        if (!file.isFile()) return null;
+        Properties validators = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            validators.load(in);
+            return validators;
+        }
+        catch (IOException e) {
+            Log.e("Cache", "Validators for " + name + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private File userDirectory(HttpURLConnection connection, String username) {
+        URL url = connection.getURL();
+        int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+        String key = url.getHost().toLowerCase(Locale.ROOT) + ":" + port + "/" + username;
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return new File(directory, hex.toString());
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static File bodyFile(File userDirectory, String name) {
+        return new File(userDirectory, name + ".json");
+    }
+
+    private static File partFile(File userDirectory, String name) {
+        return new File(userDirectory, name + ".json.part");
+    }
+
+    private static File validatorFile(File userDirectory, String name) {
+        return new File(userDirectory, name + ".properties");
+    }
+
+    /**
+     * A response body being read, with everything read from it also written to a new copy. Nothing stored is
+     * changed until store is called.
+     */
+    class Download extends FilterInputStream {
+        private final File userDirectory;
+        private final String name;
+        private final Properties validators;
+        private final OutputStream copy;
+        private boolean failed;
+
+        private Download(InputStream body, File userDirectory, String name, Properties validators,
+                         OutputStream copy) {
+            super(body);
+            this.userDirectory = userDirectory;
+            this.name = name;
+            this.validators = validators;
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) copy(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) copy(buffer, offset, n);
+            return n;
+        }
+
+        // Skipped bytes are read, so the copy has them too
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read < 0) break;
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            }
+            finally {
+                if (copy != null) copy.close();
+            }
+        }
+
+        // Keeps the copy as the stored response for next time, once the whole body has been read and decoded.
+        // A response without validators can't be asked about, so it only drops the old copy.
+        void store() {
+            try {
+                close();
+                File validatorFile = validatorFile(userDirectory, name);
+                File part = partFile(userDirectory, name);
+                if (validatorFile.exists() && !validatorFile.delete()) {
+                    throw new IOException("Unable to replace " + validatorFile);
+                }
+                if (copy == null || failed) {
+                    part.delete();
+                    return;
+                }
+                File body = bodyFile(userDirectory, name);
+                if (!part.renameTo(body)) {
+                    // Some platforms won't rename over an existing file
+                    body.delete();
+                    if (!part.renameTo(body)) throw new IOException("Unable to replace " + body);
+                }
+                try (OutputStream out = new FileOutputStream(validatorFile)) {
+                    validators.store(out, null);
+                }
+            }
+            catch (IOException e) {
+                // The response was read all the same; it just won't be reused
+                Log.e("Cache", "Store " + name + ": " + e.getMessage());
+            }
+        }
+
+        private void copy(byte[] buffer, int offset, int length) {
+            if (copy == null || failed) return;
+            try {
+                copy.write(buffer, offset, length);
+            }
+            catch (IOException e) {
+                copyFailed(e);
+            }
+        }
+
+        private void copy(int b) {
+            if (copy == null || failed) return;
+            try {
+                copy.write(b);
+            }
+            catch (IOException e) {
+                copyFailed(e);
+            }
+        }
+
+        // A full disk shouldn't fail the download; the copy just isn't kept
+        private void copyFailed(IOException e) {
+            Log.e("Cache", "Copy of " + name + ": " + e.getMessage());
+            failed = true;
+        }
+    }
+}
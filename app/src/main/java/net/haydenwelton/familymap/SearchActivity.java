@@ -2,12 +2,14 @@ package net.haydenwelton.familymap;
 
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.EditText;
+import android.widget.AutoCompleteTextView;
+import android.widget.CheckBox;
 import android.widget.ImageButton;
 import android.widget.RelativeLayout;
 
@@ -20,27 +22,27 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import net.haydenwelton.familymap.adapter.SearchRecyclerAdapter;
-import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.adapter.SuggestionAdapter;
+import net.haydenwelton.familymap.data.SearchPipeline;
 import net.haydenwelton.familymap.model.SearchResult;
 
-import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.List;
 
 public class SearchActivity extends AppCompatActivity {
 
-    private ArrayList<SearchResult> searchResults; // list of search results
-    private ArrayList<SearchTask> searchTasks; // list of active search tasks
+    // How long typing has to pause before a search starts
+    private static final long DEBOUNCE_MILLIS = 150;
+
+    // The next page of results is asked for once the list is scrolled this close to its end
+    private static final int PREFETCH_ROWS = 20;
+
+    private SearchPipeline searchPipeline; // runs searches on a single worker thread
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.search_activity);
 
-        // initialize lists
-        searchResults = new ArrayList<>();
-        searchTasks = new ArrayList<>();
-
         // set up toolbar
         Toolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
@@ -58,31 +60,43 @@ public class SearchActivity extends AppCompatActivity {
         RelativeLayout loadingPanel = findViewById(R.id.loadingPanel);
         loadingPanel.setVisibility(View.GONE);
 
-        // set up adapter for RecyclerView
-        SearchRecyclerAdapter recyclerAdapter = new SearchRecyclerAdapter(searchResults);
+        // set up the search worker, which hands finished result lists to the UI thread
+        SearchHandler searchHandler = new SearchHandler(loadingPanel);
+        searchPipeline = new SearchPipeline(DEBOUNCE_MILLIS, (generation, query, results) ->
+                searchHandler.sendMessage(searchHandler.obtainMessage(0, generation, 0, results)));
+
+        // set up adapter for RecyclerView, which diffs each new result list against the shown one on the
+        // search worker so only the rows that changed are rebound
+        SearchRecyclerAdapter recyclerAdapter = new SearchRecyclerAdapter(searchPipeline.getExecutor());
         recyclerView.setAdapter(recyclerAdapter);
+        searchHandler.setPipeline(searchPipeline, recyclerAdapter);
+
+        // ask for more results as the list nears its end
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                int shown = recyclerAdapter.getItemCount();
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition() >= shown - PREFETCH_ROWS) {
+                    searchPipeline.loadMore(shown);
+                }
+            }
+        });
 
-        // set up search box with listener for search input
-        EditText searchText = findViewById(R.id.searchText);
+        // set up search box with listener for search input, and a dropdown completing what has been typed
+        AutoCompleteTextView searchText = findViewById(R.id.searchText);
+        searchText.setAdapter(new SuggestionAdapter(this));
         searchText.addTextChangedListener(new TextWatcher() {
-            // when search text changes, start new search task
+            // when search text changes, supersede any earlier search with a new one
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                ExecutorService executorService = Executors.newSingleThreadExecutor();
-                SearchTask searchTask = new SearchTask(new SearchHandler(recyclerAdapter, loadingPanel),
-                        s.toString().trim());
-                searchTasks.add(searchTask);
                 loadingPanel.setVisibility(View.VISIBLE);
-                executorService.submit(searchTask);
+                searchPipeline.submit(s.toString().trim());
             }
 
-            // when search text is being changed, interrupt any running search tasks
+            // do nothing before search text is changed
             @Override
-            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
-                for (SearchTask searchTask : searchTasks) {
-                    searchTask.interrupt();
-                }
-            }
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
 
             // do nothing after search text is changed
             @Override
@@ -92,26 +106,47 @@ public class SearchActivity extends AppCompatActivity {
         // set up clear button for search box
         ImageButton clearButton = findViewById(R.id.clearText);
         clearButton.setOnClickListener(v -> searchText.setText(""));
+
+        // set up toggle for matching names by how they sound, searching the current text again when it changes
+        CheckBox soundsLike = findViewById(R.id.soundsLike);
+        soundsLike.setOnCheckedChangeListener((button, checked) -> {
+            searchPipeline.setSoundsLike(checked);
+            loadingPanel.setVisibility(View.VISIBLE);
+            searchPipeline.submit(searchText.getText().toString().trim());
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        searchPipeline.shutdown();
+        super.onDestroy();
     }
 
-    // handler for messages from search tasks, updates UI with new search results
+    // handler for messages from the search worker, updates UI with new search results
     private static class SearchHandler extends Handler {
-        private final SearchRecyclerAdapter recyclerAdapter; // adapter for search results RecyclerView
         private final RelativeLayout loadingPanel; // panel for displaying search progress
+        private SearchPipeline pipeline; // tells which results are still current
+        private SearchRecyclerAdapter recyclerAdapter; // adapter for search results RecyclerView
 
-        // constructor takes adapter and loading panel as arguments
-        private SearchHandler(SearchRecyclerAdapter recyclerAdapter, RelativeLayout loadingPanel) {
-            this.recyclerAdapter = recyclerAdapter;
+        // constructor takes loading panel as argument
+        private SearchHandler(RelativeLayout loadingPanel) {
+            super(Looper.getMainLooper());
             this.loadingPanel = loadingPanel;
         }
 
-        // update UI with new search results
+        private void setPipeline(SearchPipeline pipeline, SearchRecyclerAdapter recyclerAdapter) {
+            this.pipeline = pipeline;
+            this.recyclerAdapter = recyclerAdapter;
+        }
+
+        // update UI with new search results, unless the user has typed since they were searched for
         @Override
+        @SuppressWarnings("unchecked")
         public void handleMessage(@NonNull Message msg) {
             super.handleMessage(msg);
+            if (msg.arg1 != pipeline.getGeneration()) return;
             loadingPanel.setVisibility(View.GONE); //Sets the visibility of the loadingPanel to GONE, hiding it from view.
-            recyclerAdapter.notifyDataSetChanged(); //Notifies the SearchRecyclerAdapter that the dataset has changed, prompting it to update its views.
-
+            recyclerAdapter.setSearchResults((List<SearchResult>) msg.obj); //Diffs the new results against the shown ones and rebinds the rows that changed.
         }
     }
 
@@ -128,65 +163,4 @@ public class SearchActivity extends AppCompatActivity {
                 return super.onOptionsItemSelected(item);
         }
     }
-    private class SearchTask implements Runnable {
-
-        // Flag to indicate whether the task is running or not
-        volatile boolean running = true;
-
-        // Handler to communicate the search results to the UI thread
-        private final SearchHandler searchHandler;
-
-        // The search query string
-        private final String query;
-
-        public SearchTask(SearchHandler searchHandler, String query) {
-            this.searchHandler = searchHandler;
-            this.query = query;
-        }
-
-        // Interrupt the task if it is currently running
-        protected void interrupt() {
-            running = false;
-        }
-
-        @Override
-        public void run() {
-
-            // Clear the search results list
-            searchResults.clear();
-
-            // If the task is no longer running, return
-            if (!running) {
-                return;
-            }
-
-            // Search for persons that match the query
-            DataProcessor.searchPersons(searchResults, query);
-
-            // If the task is no longer running, clear the results and return
-            if (!running) {
-                searchResults.clear();
-                return;
-            }
-
-            // Search for events that match the query
-            DataProcessor.searchEvents(searchResults, query);
-
-            // If the task is no longer running, clear the results and return
-            if (!running) {
-                searchResults.clear();
-                return;
-            }
-
-            // Send a message to the search handler to update the UI with the results
-            sendMessage();
-        }
-
-        // Send a message to the search handler to update the UI with the results
-        private void sendMessage() {
-            Message message = Message.obtain();
-            searchHandler.sendMessage(message);
-        }
-
-    }
-}
\ No newline at end of file
+}
@@ -3,6 +3,10 @@ package net.haydenwelton.familymap;
 import android.util.Log;
 import com.google.gson.Gson;
 import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.JsonCodec;
+import net.haydenwelton.familymap.data.RecordDecoder;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -11,6 +15,14 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import requests.LoginRequest;
 import requests.RegisterRequest;
 import responses.ClearResponse;
@@ -20,6 +32,23 @@ import responses.PersonResponse;
 import responses.RegisterResponse;
 
 public class ServerProxy {
+    // Request bodies at least this many bytes long are sent gzip-compressed
+    static final int COMPRESS_BODY_AT = 1024;
+
+    // Names of the responses kept in the response cache
+    private static final String PERSONS = "person";
+    private static final String EVENTS = "event";
+
+    // Where the persons and events last downloaded are kept, or null to always download them in full
+    private final ResponseCache responseCache;
+
+    public ServerProxy() {
+        this(null);
+    }
+
+    public ServerProxy(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
 
     // Sends a login request to the server and returns a LoginResponse object.
     public LoginResponse login(LoginRequest request, String hostNum, String portNum) {
@@ -40,23 +69,20 @@ public class ServerProxy {
             connection.setRequestMethod("POST");
             // Allow output from the connection.
             connection.setDoOutput(true);
-            // Set the Accept header to JSON.
+            // Set the Accept header to JSON, and ask for it compressed.
             connection.addRequestProperty("Accept", "application/json");
-            // Connect to the server.
-            connection.connect();
+            acceptCompressed(connection);
 
-            // Create a GSON object to convert between JSON and Java objects.
-            Gson gson = new Gson();
+            // Use the shared GSON object to convert between JSON and Java objects.
+            Gson gson = JsonCodec.gson();
             // Convert the request object to a JSON string.
             String jsonRequest = gson.toJson(request);
-            // Get an output stream from the connection and write the JSON string to it.
-            OutputStream outputStream = connection.getOutputStream();
-            outputStream.write(jsonRequest.getBytes(StandardCharsets.UTF_8));
-            outputStream.close();
+            // Connect to the server and write the JSON string to it.
+            writeBody(connection, jsonRequest);
 
             // If the response code indicates success, parse the response body and return a LoginResponse object.
             if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                InputStream is = connection.getInputStream();
+                InputStream is = responseStream(connection);
                 InputStreamReader reader = new InputStreamReader(is);
                 LoginResponse response = gson.fromJson(reader, LoginResponse.class);
                 is.close();
@@ -95,24 +121,22 @@ public class ServerProxy {
             connection.setRequestMethod("POST");
             connection.setDoOutput(true);
             connection.addRequestProperty("Accept", "application/json");
-            connection.connect();
+            acceptCompressed(connection);
 
-            Gson gson = new Gson();
+            Gson gson = JsonCodec.gson();
 
             // Convert the RegisterRequest object to a JSON string.
             String jsonRequest = gson.toJson(request);
 
-            // Get the output stream from the connection and write the JSON string to it.
-            OutputStream outputStream = connection.getOutputStream();
-            outputStream.write(jsonRequest.getBytes(StandardCharsets.UTF_8));
-            outputStream.close();
+            // Connect and write the JSON string to the connection.
+            writeBody(connection, jsonRequest);
 
             // Check if the connection was successful.
             if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
                 Log.d("Proxy", "Opening response stream...");
 
                 // Get the input stream from the connection and create a reader for it.
-                InputStream inputStream = connection.getInputStream();
+                InputStream inputStream = responseStream(connection);
                 InputStreamReader streamReader = new InputStreamReader(inputStream);
 
                 // Convert the JSON response to a RegisterResponse object.
@@ -136,6 +160,11 @@ public class ServerProxy {
     }
 
     public PersonResponse people(String hostNumber, String portNumber) {
+        return people(hostNumber, portNumber, true);
+    }
+
+    // Downloads the persons, asking first whether the stored copy is current when revalidate is set
+    private PersonResponse people(String hostNumber, String portNumber, boolean revalidate) {
         try {
             // Check if hostNumber is empty or null
             if (hostNumber.isEmpty() || hostNumber == null) {
@@ -159,25 +188,53 @@ public class ServerProxy {
             // Set the Authorization header in the HTTP request using the authentication token
             // retrieved from the DataCache singleton
             connection.setRequestProperty("Authorization", dataCache.getAuthToken().getAuthToken());
+            acceptCompressed(connection);
+
+            // If the persons were downloaded before, only ask for them if they have changed
+            String username = dataCache.getAuthToken().getUsername();
+            if (revalidate && responseCache != null) {
+                responseCache.addValidators(connection, username, PERSONS);
+            }
 
             // Establish the connection
             connection.connect();
 
+            // Nothing has changed since the stored copy was downloaded, so read that instead
+            if (revalidate && responseCache != null &&
+                    connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                try (InputStream stored = responseCache.openStored(connection, username, PERSONS)) {
+                    return RecordDecoder.readPersons(new InputStreamReader(stored, StandardCharsets.UTF_8));
+                }
+                catch (IOException | IllegalStateException | NumberFormatException e) {
+                    // The server is fine, only the copy can't be read or isn't a persons response: forget it
+                    // and download the persons in full
+                    Log.e("Proxy", "Stored persons: " + e.getMessage());
+                    responseCache.remove(connection, username, PERSONS);
+                    return people(hostNumber, portNumber, false);
+                }
+            }
+
             // Check if the response code is HTTP_OK (200)
             if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                // Create a new Gson object for JSON parsing
-                Gson gson = new Gson();
-
                 // Get an input stream from the connection and wrap it in an InputStreamReader
                 // for character decoding
-                InputStream inputStream = connection.getInputStream();
-                InputStreamReader streamReader = new InputStreamReader(inputStream);
+                InputStream inputStream = responseStream(connection);
+
+                // Copy the persons to disk as they are read, to ask about next time
+                ResponseCache.Download download = null;
+                if (responseCache != null) {
+                    inputStream = download = responseCache.download(connection, username, PERSONS, inputStream);
+                }
+                InputStreamReader streamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
 
-                // Parse the JSON response using Gson and create a new PersonResponse object
-                PersonResponse personResponse = gson.fromJson(streamReader, PersonResponse.class);
+                // Read the persons one at a time as they arrive, straight into the array the cache keeps
+                PersonResponse personResponse = RecordDecoder.readPersons(streamReader);
 
-                // Close the input stream
+                // Close the input stream, and keep the copy unless the server sent an error
                 inputStream.close();
+                if (download != null && Boolean.TRUE.equals(personResponse.getSuccess())) {
+                    download.store();
+                }
 
                 // Return the PersonResponse object
                 return personResponse;
@@ -196,7 +253,32 @@ public class ServerProxy {
         }
     }
 
+    // Downloads and parses the user's persons and events at the same time on the executor, and hands both
+    // responses to onBoth once the slower one has arrived. A download that throws counts as a failed response.
+    // The returned future completes after onBoth has run.
+    public CompletableFuture<Void> peopleAndEvents(String hostNumber, String portNumber, Executor executor,
+                                                   BiConsumer<PersonResponse, EventResponse> onBoth) {
+        CompletableFuture<PersonResponse> persons = CompletableFuture
+                .supplyAsync(() -> people(hostNumber, portNumber), executor)
+                .exceptionally(e -> {
+                    Log.e("Proxy", "Persons: " + e.getMessage());
+                    return new PersonResponse(null, "Unable to download persons", false);
+                });
+        CompletableFuture<EventResponse> events = CompletableFuture
+                .supplyAsync(() -> events(hostNumber, portNumber), executor)
+                .exceptionally(e -> {
+                    Log.e("Proxy", "Events: " + e.getMessage());
+                    return new EventResponse(null, "Unable to download events", false);
+                });
+        return persons.thenAcceptBoth(events, onBoth);
+    }
+
     public EventResponse events(String hostNumber, String portNumber) {
+        return events(hostNumber, portNumber, true);
+    }
+
+    // Downloads the events, asking first whether the stored copy is current when revalidate is set
+    private EventResponse events(String hostNumber, String portNumber, boolean revalidate) {
         try {
             // Validate the host number and port number inputs
             if (hostNumber.isEmpty() || hostNumber == null) {
@@ -218,24 +300,54 @@ public class ServerProxy {
             // Set the request method and add the authentication token to the header
             urlConnection.setRequestMethod("GET");
             urlConnection.setRequestProperty("Authorization", dataCache.getAuthToken().getAuthToken());
+            acceptCompressed(urlConnection);
+
+            // If the events were downloaded before, only ask for them if they have changed
+            String username = dataCache.getAuthToken().getUsername();
+            if (revalidate && responseCache != null) {
+                responseCache.addValidators(urlConnection, username, EVENTS);
+            }
 
             // Connect to the API endpoint
             urlConnection.connect();
 
+            // If nothing has changed since the stored copy was downloaded, read that instead
+            if (revalidate && responseCache != null &&
+                    urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                try (InputStream stored = responseCache.openStored(urlConnection, username, EVENTS)) {
+                    return RecordDecoder.readEvents(new InputStreamReader(stored, StandardCharsets.UTF_8));
+                }
+                catch (IOException | IllegalStateException | NumberFormatException e) {
+                    // The server is fine, only the copy can't be read or isn't an events response: forget it
+                    // and download the events in full
+                    Log.e("Proxy", "Stored events: " + e.getMessage());
+                    responseCache.remove(urlConnection, username, EVENTS);
+                    return events(hostNumber, portNumber, false);
+                }
+            }
+
             // If the response code is OK, parse the JSON response
             if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                Gson gson = new Gson();
-                InputStream inputStream = urlConnection.getInputStream();
-                InputStreamReader streamReader = new InputStreamReader(inputStream);
+                InputStream inputStream = responseStream(urlConnection);
+
+                // Copy the events to disk as they are read, to ask about next time
+                ResponseCache.Download download = null;
+                if (responseCache != null) {
+                    inputStream = download = responseCache.download(urlConnection, username, EVENTS, inputStream);
+                }
+                InputStreamReader streamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
 
                 // Log a message to indicate that the response stream has been closed
                 Log.d("Proxy", "Events: Response stream closed");
 
-                // Parse the response JSON into an EventResponse object
-                EventResponse eventResponse = gson.fromJson(streamReader, EventResponse.class);
+                // Read the events one at a time as they arrive, straight into the array the cache keeps
+                EventResponse eventResponse = RecordDecoder.readEvents(streamReader);
 
-                // Close the input stream
+                // Close the input stream, and keep the copy unless the server sent an error
                 inputStream.close();
+                if (download != null && Boolean.TRUE.equals(eventResponse.getSuccess())) {
+                    download.store();
+                }
 
                 // Return the EventResponse object
                 return eventResponse;
@@ -268,13 +380,14 @@ public class ServerProxy {
             HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
             urlConnection.setDoOutput(true);
             urlConnection.setRequestMethod("POST");
+            acceptCompressed(urlConnection);
             urlConnection.connect();
             // Check response code for success
             if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                // Create Gson object for parsing JSON response
-                Gson gson = new Gson();
+                // Use the shared Gson object for parsing the JSON response
+                Gson gson = JsonCodec.gson();
                 // Get input stream and create input stream reader
-                InputStream inputStream = urlConnection.getInputStream();
+                InputStream inputStream = responseStream(urlConnection);
                 InputStreamReader streamReader = new InputStreamReader(inputStream);
                 // Parse JSON response into ClearResponse object
                 ClearResponse clearResponse = gson.fromJson(streamReader, ClearResponse.class);
@@ -295,4 +408,63 @@ public class ServerProxy {
             return new ClearResponse("Invalid URL", false);
         }
     }
+
+    // Asks the server to compress its response; responseStream undoes whichever compression it chose.
+    private static void acceptCompressed(HttpURLConnection connection) {
+        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+    }
+
+    // Connects and writes the request body, gzip-compressed when it is long enough for that to pay off.
+    private static void writeBody(HttpURLConnection connection, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        if (body.length >= COMPRESS_BODY_AT) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body);
+            }
+            body = compressed.toByteArray();
+            connection.setRequestProperty("Content-Encoding", "gzip");
+        }
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.connect();
+        try (OutputStream outputStream = connection.getOutputStream()) {
+            outputStream.write(body);
+        }
+    }
+
+    // Returns the response body, decompressed as the JSON reader pulls from it if the server compressed it.
+    private static InputStream responseStream(HttpURLConnection connection) throws IOException {
+        InputStream body = connection.getInputStream();
+        String encoding = connection.getContentEncoding();
+        if (encoding == null) return body;
+        switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(body, 8192);
+            case "deflate":
+                // deflate is meant to be zlib-wrapped, but some servers send the bare stream
+                BufferedInputStream buffered = new BufferedInputStream(body, 8192);
+                buffered.mark(2);
+                int cmf = buffered.read();
+                int flg = buffered.read();
+                buffered.reset();
+                if ((cmf & 0x0F) == 8 && flg >= 0 && ((cmf << 8) | flg) % 31 == 0) {
+                    return new InflaterInputStream(buffered);
+                }
+                Inflater inflater = new Inflater(true);
+                return new InflaterInputStream(buffered, inflater, 8192) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        }
+                        finally {
+                            inflater.end();
+                        }
+                    }
+                };
+            default:
+                return body;
+        }
+    }
 }
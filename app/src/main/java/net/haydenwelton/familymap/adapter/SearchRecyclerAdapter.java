@@ -1,6 +1,10 @@
 package net.haydenwelton.familymap.adapter;
 
 import android.content.Intent;
+import android.graphics.Typeface;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,6 +13,10 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import net.haydenwelton.familymap.EventActivity;
@@ -16,7 +24,8 @@ import net.haydenwelton.familymap.PersonActivity;
 import net.haydenwelton.familymap.R;
 import net.haydenwelton.familymap.model.SearchResult;
 
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 public class SearchRecyclerAdapter extends RecyclerView.Adapter<SearchRecyclerAdapter.ViewHolder> {
 
@@ -24,12 +33,37 @@ public class SearchRecyclerAdapter extends RecyclerView.Adapter<SearchRecyclerAd
     private static final String PERSON_KEY = "personID";
     private static final String EVENT_KEY = "eventID";
 
-    // The list of search results to display
-    private final ArrayList<SearchResult> searchResults;
+    // Results are the same row if they are the same person or event, and need no rebinding if they show the same
+    private static final DiffUtil.ItemCallback<SearchResult> DIFF = new DiffUtil.ItemCallback<SearchResult>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull SearchResult oldResult, @NonNull SearchResult newResult) {
+            return oldResult.getType() == newResult.getType() && oldResult.getId().equals(newResult.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull SearchResult oldResult, @NonNull SearchResult newResult) {
+            return oldResult.getMatch() == newResult.getMatch() &&
+                    oldResult.getMainInfo().equals(newResult.getMainInfo()) &&
+                    String.valueOf(oldResult.getSubInfo()).equals(String.valueOf(newResult.getSubInfo())) &&
+                    String.valueOf(oldResult.getGender()).equals(String.valueOf(newResult.getGender()));
+        }
+    };
+
+    // The results shown, and the diffing of each new list against them
+    private final AsyncListDiffer<SearchResult> differ;
+
+    // Constructor that sets where new result lists are diffed against the shown ones
+    public SearchRecyclerAdapter(Executor diffExecutor) {
+        differ = new AsyncListDiffer<>(new AdapterListUpdateCallback(this),
+                new AsyncDifferConfig.Builder<>(DIFF).setBackgroundThreadExecutor(diffExecutor).build());
+        setHasStableIds(true);
+    }
 
-    // Constructor that sets the search results
-    public SearchRecyclerAdapter(ArrayList<SearchResult> searchResults) {
-        this.searchResults = searchResults;
+    // Shows a new, complete list of search results. The list is diffed against the shown one on the diff
+    // executor, and only the rows that changed are rebound; a list handed over before an earlier one was shown
+    // replaces it. Call on the UI thread, and don't modify the list afterwards.
+    public void setSearchResults(List<SearchResult> searchResults) {
+        differ.submitList(searchResults);
     }
 
     /**
@@ -92,7 +126,7 @@ public class SearchRecyclerAdapter extends RecyclerView.Adapter<SearchRecyclerAd
         TextView subInfo = viewHolder.getSubInfo();
 
         // Set the contents of the views based on the search result at this position
-        SearchResult result = this.searchResults.get(position);
+        SearchResult result = differ.getCurrentList().get(position);
         assert result != null;
         if (result.getType() == SearchResult.Type.PERSON) {
             // If the search result is a person, set the image to the gender-specific icon
@@ -103,14 +137,14 @@ public class SearchRecyclerAdapter extends RecyclerView.Adapter<SearchRecyclerAd
                 imageView.setImageResource(R.drawable.male);
             }
             // Set the main info and clear the sub info
-            mainInfo.setText(result.getMainInfo());
+            mainInfo.setText(highlight(result.getMainInfo(), result.getMatch()));
             subInfo.setText("");
         }
         else {
             // If the search result is an even set the image to the location icon
             imageView.setImageResource(R.drawable.location);
             // Set the main info and sub info
-            mainInfo.setText(result.getMainInfo());
+            mainInfo.setText(highlight(result.getMainInfo(), result.getMatch()));
             subInfo.setText(result.getSubInfo());
         }
 
@@ -132,10 +166,26 @@ public class SearchRecyclerAdapter extends RecyclerView.Adapter<SearchRecyclerAd
         });
     }
 
+    // Bold the part of the text the search matched, from the offsets it recorded
+    private static CharSequence highlight(String text, long match) {
+        if (match == SearchResult.NO_MATCH) return text;
+        int start = Math.min(SearchResult.matchStart(match), text.length());
+        int end = Math.min(start + SearchResult.matchLength(match), text.length());
+        if (start == end) return text;
+        SpannableString highlighted = new SpannableString(text);
+        highlighted.setSpan(new StyleSpan(Typeface.BOLD), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        return highlighted;
+    }
+
     // Return the size of your dataset (invoked by the layout manager)
     @Override
     public int getItemCount() {
-        return searchResults.size();
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getStableId();
     }
 
 
@@ -0,0 +1,83 @@
+package net.haydenwelton.familymap.adapter;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import net.haydenwelton.familymap.data.DataProcessor;
+
+import java.util.Collections;
+import java.util.List;
+
+public class SuggestionAdapter extends BaseAdapter implements Filterable {
+
+    // How many completions the dropdown shows
+    private static final int MAX_SUGGESTIONS = 8;
+
+    private final LayoutInflater inflater;
+
+    // The completions shown; replaced as a whole when the filter publishes new ones
+    private List<String> suggestions = Collections.emptyList();
+
+    // Constructor that sets the inflater for the dropdown rows
+    public SuggestionAdapter(Context context) {
+        this.inflater = LayoutInflater.from(context);
+    }
+
+    @Override
+    public int getCount() {
+        return suggestions.size();
+    }
+
+    @Override
+    public String getItem(int position) {
+        return suggestions.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    // Show a completion in a plain one line row, reusing the row when there is one
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView row = (TextView) (convertView != null ? convertView :
+                inflater.inflate(android.R.layout.simple_dropdown_item_1line, parent, false));
+        row.setText(getItem(position));
+        return row;
+    }
+
+    // Completions are looked up on the filter's worker thread and handed to the UI thread when they are found
+    @Override
+    public Filter getFilter() {
+        return new Filter() {
+            @Override
+            protected FilterResults performFiltering(CharSequence constraint) {
+                List<String> found = constraint == null ? Collections.emptyList() :
+                        DataProcessor.suggest(constraint.toString(), MAX_SUGGESTIONS);
+                FilterResults results = new FilterResults();
+                results.values = found;
+                results.count = found.size();
+                return results;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected void publishResults(CharSequence constraint, FilterResults results) {
+                suggestions = results.values == null ? Collections.emptyList() : (List<String>) results.values;
+                if (results.count > 0) {
+                    notifyDataSetChanged();
+                }
+                else {
+                    notifyDataSetInvalidated();
+                }
+            }
+        };
+    }
+}
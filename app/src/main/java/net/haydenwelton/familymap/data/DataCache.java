@@ -4,10 +4,10 @@ import android.content.SharedPreferences;
 
 import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
 import model.AuthToken;
 import model.Event;
@@ -21,20 +21,21 @@ import model.User;
 public class DataCache {
 
     // Singleton instance
-    private static DataCache instance;
+    private static final DataCache instance = new DataCache();
 
-    // User and auth token data
-    private User user;
-    private AuthToken authToken;
+    // The current state of the cache. Writers build a new snapshot and publish it here in one volatile write,
+    // so readers on any thread see either the old state or the new one in full, without locking.
+    private volatile DataSnapshot snapshot = DataSnapshot.EMPTY;
 
-    // Event and person data
-    private Event[] events;
-    private HashMap<String, Person> personMap;
-    private HashMap<String, Person> filteredPersons;
-    private ArrayList<Event> filteredEvents;
+    private volatile AuthToken authToken;
 
-    // Map of event types to their marker colors
-    private final HashMap<String, Float> colorMap = new HashMap<>();
+    // Earlier filter results by switch combination, for the current snapshot's data.
+    // The cache may hold about 1/16 of the heap; it is cleared whenever the data changes.
+    // Only used by writers, which hold the DataCache lock.
+    private final FilterCache filterCache = new FilterCache(Runtime.getRuntime().maxMemory() / 16);
+
+    // Map of event types to their marker colors, read from the map and list threads
+    private final ConcurrentHashMap<String, Float> colorMap = new ConcurrentHashMap<>();
     private static final float[] MARKER_COLORS = {
             BitmapDescriptorFactory.HUE_RED,
             BitmapDescriptorFactory.HUE_YELLOW,
@@ -46,12 +47,9 @@ public class DataCache {
             BitmapDescriptorFactory.HUE_MAGENTA
     };
 
-  //Returns the singleton instance of the DataCache class. If an instance does not exist, one will be created.
+  //Returns the singleton instance of the DataCache class.
 
     public static DataCache getInstance() {
-        if (instance == null) {
-            instance = new DataCache();
-        }
         return instance;
     }
 
@@ -68,10 +66,16 @@ public class DataCache {
 
     private DataCache() {}
 
+    // Returns the current state of the cache. Reads from one snapshot always agree with each other.
+    public DataSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     //Sets the current user.
 
-    public void setUser(User user) {
-        this.user = user;
+    public synchronized void setUser(User user) {
+        this.snapshot = this.snapshot.withUser(user);
+        this.filterCache.clear();
     }
 
     //Sets the current auth token.
@@ -82,165 +86,138 @@ public class DataCache {
 
    //Sets the array of persons and creates a map of person IDs to Person objects.
 
-    public void setPersons(Person[] persons) {
-        this.personMap = new HashMap<>();
-        this.filteredPersons = new HashMap<>();
-        for (Person person : persons) {
-            this.personMap.put(person.getPersonID(), person);
-            this.filteredPersons.put(person.getPersonID(), person);
-        }
+    public synchronized void setPersons(Person[] persons) {
+        this.snapshot = this.snapshot.withPersons(persons);
+        this.filterCache.clear();
     }
 
-   // Sets the array of events and creates an array list of filtered events.
+   // Sets the persons and their events together, so no snapshot ever has the new persons with the old events.
 
-    public void setEvents(Event[] events) {
-        this.events = events;
-        this.filteredEvents = new ArrayList<>();
-        filteredEvents.addAll(Arrays.asList(events));
+    public synchronized void setData(Person[] persons, Event[] events) {
+        this.snapshot = this.snapshot.withData(persons, events);
+        this.filterCache.clear();
+    }
+
+   // Sets the array of events and groups them by person.
+
+    public synchronized void setEvents(Event[] events) {
+        this.snapshot = this.snapshot.withEvents(events);
+        this.filterCache.clear();
     }
 
 
     public User getUser() {
-        return this.user;
+        return snapshot.getUser();
     }
 
     public AuthToken getAuthToken() {
         return this.authToken;
     }
 
+    // Returns a copy of all persons. Use getPersonList() to read them without copying.
     public Person[] getPersons() {
-        return this.personMap.values().toArray(new Person[0]);
+        return snapshot.getPersons();
+    }
+
+    // Returns a read-only view of all persons, shared with the cache.
+    public List<Person> getPersonList() {
+        return snapshot.getPersonList();
     }
 
-    public Person[] getFilteredPersons() { return this.filteredPersons.values().toArray(new Person[0]); }
+    // Returns a copy of the persons that passed the last filter.
+    public Person[] getFilteredPersons() {
+        return snapshot.getFilteredPersons();
+    }
+
+    // Returns a read-only view of the persons that passed the last filter, shared with the cache.
+    public List<Person> getFilteredPersonList() {
+        return snapshot.getFilteredPersonList();
+    }
 
     public HashMap<String, Person> getPersonMap() {
-        return personMap;
+        return snapshot.getPersonMap();
     }
 
+    // Returns a copy of the filtered events. Use getEventList() to read them without copying.
     public Event[] getEvents() {
-        return filteredEvents.toArray(new Event[0]);
+        return snapshot.getEvents();
+    }
+
+    // Returns a read-only view of the filtered events, shared with the cache.
+    public List<Event> getEventList() {
+        return snapshot.getEventList();
     }
 
     public float getColor(String eventType) {
-        if (!colorMap.containsKey(eventType.toLowerCase(Locale.ROOT))) {
-            colorMap.put(eventType.toLowerCase(Locale.ROOT), MARKER_COLORS[colorMap.size() % MARKER_COLORS.length]);
+        String key = eventType.toLowerCase(Locale.ROOT);
+        Float color = colorMap.get(key);
+        if (color == null) {
+            Float newColor = MARKER_COLORS[colorMap.size() % MARKER_COLORS.length];
+            color = colorMap.putIfAbsent(key, newColor);
+            if (color == null) color = newColor;
         }
-        return colorMap.get(eventType.toLowerCase(Locale.ROOT));
+        return color;
     }
 
-    public void invalidate() {
-        this.user = null;
+    public synchronized void invalidate() {
+        this.snapshot = DataSnapshot.EMPTY;
         this.authToken = null;
-        this.events = null;
-        this.personMap = null;
-        this.filteredPersons = null;
-        this.filteredEvents = null;
+        this.filterCache.clear();
         this.colorMap.clear();
     }
 
     public Person getPersonByID(String id) {
-        return personMap.get(id);
+        return snapshot.getPersonByID(id);
     }
 
     public Event getEventByID(String id) {
-        for (Event event : this.events) {
-            if (id.equals(event.getEventID())) {
-                return event;
-            }
-        }
-        return null;
+        return snapshot.getEventByID(id);
     }
 
-   //Filters the list of persons based on the given criteria, and matches events to the filtered persons.
-
-    private void filter(boolean motherSide, boolean fatherSide, boolean female, boolean male) {
-        // Clear the current list of filtered persons.
-        this.filteredPersons.clear();
-
-        // Get the root person (the user's person) from the personMap.
-        Person root = this.personMap.get(this.user.getPersonID());
-
-        // Make sure the root person exists.
-        assert root != null;
-
-        // Get the root person's spouse from the personMap.
-        Person spouse = this.personMap.get(root.getSpouseID());
-
-        // If the "male" criteria is true, add the root person and spouse (if they exist) to the filteredPersons list if they are male.
-        if (male) {
-            if (root.getGender().equals("m")) {
-                filteredPersons.put(root.getPersonID(), root);
-            }
-            if (spouse != null) {
-                if (spouse.getGender().equalsIgnoreCase("m")) {
-                    filteredPersons.put(spouse.getPersonID(), spouse);
-                }
-            }
-        }
-
-        // If the "female" criteria is true, add the root person and spouse (if they exist) to the filteredPersons list if they are female.
-        if (female) {
-            if (root.getGender().equals("f")) {
-                filteredPersons.put(root.getPersonID(), root);
-            }
-            if (spouse != null) {
-                if (spouse.getGender().equalsIgnoreCase("f")) {
-                    filteredPersons.put(spouse.getPersonID(), spouse);
-                }
-            }
-        }
-
-        // Get the root person's mother and father from the personMap.
-        Person mother = this.personMap.get(root.getMotherID());
-        Person father = this.personMap.get(root.getFatherID());
-
-        // If the "motherSide" criteria is true, add all ancestors on the mother's side of the family to the filteredPersons list.
-        if (motherSide) {
-            addLineage(mother, female, male);
-        }
-
-        // If the "fatherSide" criteria is true, add all ancestors on the father's side of the family to the filteredPersons list.
-        if (fatherSide) {
-            addLineage(father, female, male);
-        }
-
-        // Match events to the filtered persons.
-        matchEventsToPersons();
+    // Returns the position of the event in the filtered view (getEvents()), or -1 if it is filtered out.
+    public int getFilteredEventPosition(String id) {
+        return snapshot.getFilteredEventPosition(id);
     }
 
+    // Returns the person's events in chronological order, or an empty list if the person is filtered out.
+    public List<Event> getPersonEvents(String personID) {
+        return snapshot.getPersonEvents(personID);
+    }
 
+    public EventColumns getEventColumns() {
+        return snapshot.getEventColumns();
+    }
 
+    // Returns a cursor over the filtered view (the same events as getEvents(), in the same order).
+    public EventCursor getFilteredEventCursor() {
+        return snapshot.getFilteredEventCursor();
+    }
 
-    //Recursively adds all ancestors of the given person to the `filteredPersons` map, but only if they match the desired gender filters.
-    private void addLineage(Person person, boolean female, boolean male) {
-        // If the person is null, there's nothing to add, so return.
-        if (person == null) return;
-
-        // Recursively add the person's mother and father to the map.
-        addLineage(personMap.get(person.getMotherID()), female, male);
-        addLineage(personMap.get(person.getFatherID()), female, male);
+    // Returns a cursor over the person's events in chronological order; it is empty if the person is filtered out.
+    public EventCursor getPersonEventCursor(String personID) {
+        return snapshot.getPersonEventCursor(personID);
+    }
 
-        // Add the person to the map if they match the desired gender filters.
-        if (female) {
-            if (person.getGender().equals("f")) {
-                this.filteredPersons.put(person.getPersonID(), person);
-            }
-        }
-        if (male) {
-            if (person.getGender().equals("m")) {
-                this.filteredPersons.put(person.getPersonID(), person);
-            }
-        }
+    // Visits the person and each of their ancestors exactly once, however deep the tree or even if its
+    // records form a cycle. When filteredOnly is true, persons hidden by the last filter are skipped.
+    public void walkLineage(String personID, boolean filteredOnly, LineageTraversal.Visitor visitor) {
+        snapshot.walkLineage(personID, filteredOnly, visitor);
     }
 
-    //Clears the list of filtered events, and then iterates through all the events in the global list events
-    private void matchEventsToPersons() {
-        this.filteredEvents.clear();
-        for (Event event : this.events) {
-            if (filteredPersons.containsKey(event.getPersonID())) {
-                this.filteredEvents.add(event);
-            }
+   //Filters the list of persons based on the given criteria, and matches events to the filtered persons.
+
+    private synchronized void filter(boolean motherSide, boolean fatherSide, boolean female, boolean male) {
+        DataSnapshot current = this.snapshot;
+
+        // Reuse the result if this combination was filtered since the data last changed.
+        int key = FilterCache.key(motherSide, fatherSide, female, male);
+        FilterResult result = this.filterCache.get(key);
+        FilterSets filterSets = current.getFilterSets();
+        if (result == null) {
+            // Combine the bitsets for the chosen switches and match events to the persons that passed.
+            result = current.matchEventsToPersons(filterSets.select(motherSide, fatherSide, female, male));
+            this.filterCache.put(key, result);
         }
+        this.snapshot = current.withFilter(filterSets, result);
     }
-}
\ No newline at end of file
+}
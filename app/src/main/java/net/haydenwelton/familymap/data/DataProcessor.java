@@ -4,74 +4,302 @@ import net.haydenwelton.familymap.model.FamilyMember;
 import net.haydenwelton.familymap.model.SearchResult;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 
 import model.Event;
 import model.Person;
 
 public class DataProcessor {
 
-    // Find family members for a given person
+    // Event search reads posting lists when they cover at most 1/SCAN_RATIO of the events
+    private static final int SCAN_RATIO = 8;
+
+    // Find family members for a given person: parents, spouse and children
     public static ArrayList<FamilyMember> findFamily(Person rootPerson) {
         ArrayList<FamilyMember> familyMembers = new ArrayList<>();
-        for (Person person : DataCache.getInstance().getPersons()) {
-            // Check if person is father or mother
-            if (rootPerson.getMotherID() != null &&
-                    rootPerson.getFatherID().equals(person.getPersonID())) {
-                familyMembers.add(new FamilyMember("Father", person));
-            }
-            else if (rootPerson.getMotherID() != null &&
-                    rootPerson.getMotherID().equals(person.getPersonID())) {
-                familyMembers.add(new FamilyMember("Mother", person));
-            }
-            // Check if person is spouse
-            else if (rootPerson.getSpouseID() != null &&
-                    rootPerson.getSpouseID().equals(person.getPersonID())) {
-                familyMembers.add(new FamilyMember("Spouse", person));
+        DataSnapshot snapshot = DataCache.getInstance().getSnapshot();
+        int root = snapshot.getPersonOrdinal(rootPerson.getPersonID());
+        if (root < 0) return familyMembers;
+        addImmediateFamily(familyMembers, snapshot, root);
+        return familyMembers;
+    }
+
+    // Find family members for a given person as findFamily does, followed by their siblings and grandparents
+    public static ArrayList<FamilyMember> findExtendedFamily(Person rootPerson) {
+        ArrayList<FamilyMember> familyMembers = new ArrayList<>();
+        DataSnapshot snapshot = DataCache.getInstance().getSnapshot();
+        int root = snapshot.getPersonOrdinal(rootPerson.getPersonID());
+        if (root < 0) return familyMembers;
+        addImmediateFamily(familyMembers, snapshot, root);
+
+        FamilyIndex family = snapshot.getFamilyIndex();
+        int father = family.getFather(root);
+        int mother = family.getMother(root);
+        int spouse = family.getSpouse(root);
+
+        // Siblings are the other children of either parent; a full sibling is listed under the father only
+        if (father >= 0) {
+            for (int i = family.getChildStart(father); i < family.getChildEnd(father); i++) {
+                int sibling = family.getChild(i);
+                if (sibling != root && sibling != spouse) {
+                    familyMembers.add(new FamilyMember("Sibling", snapshot.getPerson(sibling)));
+                }
             }
-            // Check if person is child
-            else if (person.getFatherID() != null &&
-                    person.getFatherID().equals(rootPerson.getPersonID()) ||
-                    person.getMotherID() != null &&
-                            person.getMotherID().equals(rootPerson.getPersonID())) {
-                familyMembers.add(new FamilyMember("Child", person));
+        }
+        if (mother >= 0) {
+            for (int i = family.getChildStart(mother); i < family.getChildEnd(mother); i++) {
+                int sibling = family.getChild(i);
+                if (sibling != root && sibling != spouse && (father < 0 || family.getFather(sibling) != father)) {
+                    familyMembers.add(new FamilyMember("Sibling", snapshot.getPerson(sibling)));
+                }
             }
         }
-        // Sort the family members by age using the FamilyMemberComparator
-        familyMembers.sort(new FamilyMember.FamilyMemberComparator());
+
+        // Grandparents on the father's side first
+        for (int parent : new int[] { father, mother }) {
+            if (parent < 0) continue;
+            addRelative(familyMembers, snapshot, "Grandfather", family.getFather(parent));
+            addRelative(familyMembers, snapshot, "Grandmother", family.getMother(parent));
+        }
         return familyMembers;
     }
 
+    // Adds the parents, spouse and children of the person with the given ordinal, in that order
+    private static void addImmediateFamily(ArrayList<FamilyMember> familyMembers, DataSnapshot snapshot, int root) {
+        FamilyIndex family = snapshot.getFamilyIndex();
+        int father = family.getFather(root);
+        int mother = family.getMother(root);
+        int spouse = family.getSpouse(root);
+        addRelative(familyMembers, snapshot, "Father", father);
+        addRelative(familyMembers, snapshot, "Mother", mother);
+        addRelative(familyMembers, snapshot, "Spouse", spouse);
+        for (int i = family.getChildStart(root); i < family.getChildEnd(root); i++) {
+            int child = family.getChild(i);
+            // A person is listed once, under the first relationship that applies
+            if (child != father && child != mother && child != spouse) {
+                familyMembers.add(new FamilyMember("Child", snapshot.getPerson(child)));
+            }
+        }
+    }
+
+    private static void addRelative(ArrayList<FamilyMember> familyMembers, DataSnapshot snapshot,
+                                    String relationship, int ordinal) {
+        if (ordinal >= 0) {
+            familyMembers.add(new FamilyMember(relationship, snapshot.getPerson(ordinal)));
+        }
+    }
+
     // Search for persons that match the query
     public static void searchPersons(List<SearchResult> results, String query) {
         if (query.isEmpty() || query.trim().isEmpty()) return;
-        for (Person person : DataCache.getInstance().getPersons()) {
-            // Check if person's name contains the query
-            if (containsIgnoreCase(person.getFirstName() + " " + person.getLastName(), query)) {
-                results.add(new SearchResult(person));
-            }
-        }
+        DataSnapshot snapshot = DataCache.getInstance().getSnapshot();
+        addPersonResults(results, snapshot, findPersons(snapshot, query, null));
     }
 
     // Search for events that match the query
     public static void searchEvents(List<SearchResult> results, String query) {
         if (query.isEmpty() || query.trim().isEmpty()) return;
-        DataCache dataCache = DataCache.getInstance();
-        for (Event event : DataCache.getInstance().getEvents()) {
-            // Check if event's properties contain the query
-            if (containsIgnoreCase(event.getCountry(), query) ||
-                    containsIgnoreCase(event.getCity(), query) ||
-                    containsIgnoreCase(event.getEventType(), query) ||
-                    containsIgnoreCase(String.valueOf(event.getYear()), query)) {
-                // Get the corresponding person and add the SearchResult
-                Person person = dataCache.getPersonByID(event.getPersonID());
-                assert person != null;
-                results.add(new SearchResult(event, person.getFirstName(), person.getLastName()));
+        // Read the index and the filtered events from one snapshot so they agree
+        DataSnapshot snapshot = DataCache.getInstance().getSnapshot();
+        addEventResults(results, snapshot, findEvents(snapshot, query, null));
+    }
+
+    // Search for persons and events that match the query, as searchPersons and searchEvents do, and rank them
+    // best first; see RankedSearch. Results are built a page at a time as they are asked for.
+    // A query with field clauses, like "type:birth year:1850..1900", is run as a SearchQuery instead.
+    public static RankedSearch searchRanked(String query) {
+        DataSnapshot snapshot = DataCache.getInstance().getSnapshot();
+        if (query.isEmpty() || query.trim().isEmpty()) {
+            return new RankedSearch(snapshot, query, new int[0], new int[0]);
+        }
+        SearchQuery structured = SearchQuery.parse(query);
+        if (structured != null) {
+            return searchStructured(snapshot, query, structured);
+        }
+        return new RankedSearch(snapshot, query, findPersons(snapshot, query, null), findEvents(snapshot, query, null));
+    }
+
+    // Search for persons whose names sound like the query: every word of the query has to have the Soundex code
+    // of a word of their first or last name. Spellings closest to the query are ranked first.
+    public static RankedSearch searchSoundsLike(String query) {
+        DataSnapshot snapshot = DataCache.getInstance().getSnapshot();
+        if (query.isEmpty() || query.trim().isEmpty()) {
+            return new RankedSearch(snapshot, query, new int[0], new int[0]);
+        }
+        return new RankedSearch(snapshot, query, snapshot.getPhoneticIndex().find(query), new int[0]);
+    }
+
+    // Returns the distinct Soundex codes of the words of the text, such as "S530" for "Smith", separated by spaces.
+    public static String soundex(String text) {
+        StringBuilder codes = new StringBuilder();
+        for (int code : PhoneticIndex.codes(SearchKeys.of(new String[] { text }), 0)) {
+            if (codes.length() > 0) codes.append(' ');
+            codes.append(PhoneticIndex.format(code));
+        }
+        return codes.toString();
+    }
+
+    // Returns up to limit names, event types, cities and countries starting with the text, ignoring case and accents,
+    // the ones carried by the most persons or events first.
+    public static List<String> suggest(String text, int limit) {
+        SuggestionTrie suggestions = DataCache.getInstance().getSnapshot().getSuggestions();
+        if (suggestions == null || text.trim().isEmpty()) return Collections.emptyList();
+        return suggestions.complete(text.trim(), limit);
+    }
+
+    // Describes how the query would be run: the plan of a query with field clauses, or the plain search.
+    public static String explainQuery(String query) {
+        SearchQuery structured = SearchQuery.parse(query);
+        if (structured == null) {
+            return "plain search: names, event types, cities, countries and years containing \"" + query + "\"\n";
+        }
+        return QueryPlan.compile(DataCache.getInstance().getSnapshot(), structured).explain();
+    }
+
+    static RankedSearch searchStructured(DataSnapshot snapshot, String query, SearchQuery structured) {
+        QueryPlan plan = QueryPlan.compile(snapshot, structured);
+        return new RankedSearch(snapshot, query, plan.findPersons(), plan.findEvents());
+    }
+
+    // Search for persons and then events that match the query, as searchPersons and searchEvents do,
+    // splitting large searches across the pool's threads. The results are in the same order.
+    public static void searchParallel(List<SearchResult> results, String query, ForkJoinPool pool) {
+        if (query.isEmpty() || query.trim().isEmpty()) return;
+        DataSnapshot snapshot = DataCache.getInstance().getSnapshot();
+        addPersonResults(results, snapshot, findPersons(snapshot, query, pool));
+        addEventResults(results, snapshot, findEvents(snapshot, query, pool));
+    }
+
+    // Returns the ordinals of the persons whose names contain the query, in ordinal order.
+    // With a pool, large searches are split across its threads.
+    // Names and query are compared as SearchKeys, ignoring case and accents.
+    static int[] findPersons(DataSnapshot snapshot, String query, ForkJoinPool pool) {
+        char[] folded = SearchKeys.fold(query);
+        SearchKeys names = snapshot.getNameKeys();
+        if (!TrigramIndex.canSearch(folded)) {
+            // Too short for the index, so check every person
+            return ParallelMatch.match(names.size(), ordinal -> ordinal,
+                    ordinal -> names.contains(ordinal, folded), pool);
+        }
+        // Only persons whose names have every trigram of the query can contain it
+        return matchNames(names, snapshot.getNameIndex().candidates(folded), folded, pool);
+    }
+
+    // Returns the persons among the given ordinals whose names contain the query, in the same order
+    static int[] refinePersons(DataSnapshot snapshot, int[] ordinals, String query, ForkJoinPool pool) {
+        return matchNames(snapshot.getNameKeys(), ordinals, SearchKeys.fold(query), pool);
+    }
+
+    // Returns the persons whose names contain the query, given every person matching a query it contains.
+    // A longer query may have a rarer trigram than the one that found the ordinals, and then the index gives
+    // fewer names to check than the earlier matches.
+    static int[] narrowPersons(DataSnapshot snapshot, int[] ordinals, String query, ForkJoinPool pool) {
+        char[] folded = SearchKeys.fold(query);
+        TrigramIndex index = snapshot.getNameIndex();
+        if (TrigramIndex.canSearch(folded) && index.maxCandidates(folded) < ordinals.length) {
+            return matchNames(snapshot.getNameKeys(), index.candidates(folded), folded, pool);
+        }
+        return matchNames(snapshot.getNameKeys(), ordinals, folded, pool);
+    }
+
+    private static int[] matchNames(SearchKeys names, int[] ordinals, char[] folded, ForkJoinPool pool) {
+        return ParallelMatch.match(ordinals.length, i -> ordinals[i],
+                ordinal -> names.contains(ordinal, folded), pool);
+    }
+
+    // Returns the ascending positions of the filtered events whose properties contain the query.
+    // With a pool, large searches are split across its threads.
+    static int[] findEvents(DataSnapshot snapshot, String query, ForkJoinPool pool) {
+        EventTermIndex terms = snapshot.getEventTermIndex();
+
+        // Find the countries, cities, event types and years that contain the query
+        boolean[] matches = terms.matchTerms(query);
+
+        // When few events carry those values, read them from the posting lists;
+        // otherwise it is cheaper to check every filtered event
+        int size = snapshot.getEventColumns().size();
+        if (terms.countPostings(matches) <= size / SCAN_RATIO) {
+            return visibleEvents(snapshot, terms.findEvents(matches));
+        }
+        return ParallelMatch.match(size, position -> position,
+                position -> snapshot.isEventVisible(position) && terms.matches(matches, position), pool);
+    }
+
+    // Returns the filtered events whose properties contain the query, given the ascending positions of every
+    // filtered event matching a query it contains. When the values matching the longer query are carried by fewer
+    // events than that (as when "1" grows to "18"), the events are read from the posting lists instead.
+    static int[] narrowEvents(DataSnapshot snapshot, int[] positions, String query, ForkJoinPool pool) {
+        EventTermIndex terms = snapshot.getEventTermIndex();
+        boolean[] matches = terms.matchTerms(query);
+        if (terms.countPostings(matches) < positions.length) {
+            return visibleEvents(snapshot, terms.findEvents(matches));
+        }
+        return ParallelMatch.match(positions.length, i -> positions[i],
+                position -> terms.matches(matches, position), pool);
+    }
+
+    // Keeps the positions of the events the last filter shows, in place
+    private static int[] visibleEvents(DataSnapshot snapshot, int[] positions) {
+        int visible = 0;
+        for (int position : positions) {
+            if (snapshot.isEventVisible(position)) {
+                positions[visible++] = position;
             }
         }
+        return Arrays.copyOf(positions, visible);
+    }
+
+    static void addPersonResults(List<SearchResult> results, DataSnapshot snapshot, int[] ordinals) {
+        for (int ordinal : ordinals) {
+            results.add(personResult(snapshot, ordinal));
+        }
+    }
+
+    static void addEventResults(List<SearchResult> results, DataSnapshot snapshot, int[] positions) {
+        for (int position : positions) {
+            results.add(eventResult(snapshot, position));
+        }
+    }
+
+    static SearchResult personResult(DataSnapshot snapshot, int ordinal) {
+        return new SearchResult(snapshot.getPerson(ordinal));
+    }
+
+    // The person's SearchResult, with where the folded query matched their name at the given rank. Folding
+    // can change the length of a name, and then the position in the key is not one in the name, so nothing is
+    // highlighted.
+    static SearchResult personResult(DataSnapshot snapshot, int ordinal, char[] folded, int rank) {
+        Person person = snapshot.getPerson(ordinal);
+        SearchKeys names = snapshot.getNameKeys();
+        int start = -1;
+        if (folded.length > 0 && names.length(ordinal) ==
+                String.valueOf(person.getFirstName()).length() + 1 + String.valueOf(person.getLastName()).length()) {
+            start = names.matchStart(ordinal, folded, rank);
+        }
+        return new SearchResult(person, start, folded.length);
+    }
+
+    // Get the corresponding person of the event and make its SearchResult
+    static SearchResult eventResult(DataSnapshot snapshot, int position) {
+        Event event = snapshot.getEventArray()[position];
+        Person person = snapshot.getPersonByID(event.getPersonID());
+        assert person != null;
+        return new SearchResult(event, person.getFirstName(), person.getLastName());
+    }
+
+    // The event's SearchResult, with where the folded query matched the field it ranked best on
+    static SearchResult eventResult(DataSnapshot snapshot, int position, int[] termRanks, char[] folded) {
+        Event event = snapshot.getEventArray()[position];
+        Person person = snapshot.getPersonByID(event.getPersonID());
+        assert person != null;
+        EventTermIndex terms = snapshot.getEventTermIndex();
+        int term = terms.bestTerm(termRanks, position);
+        int start = folded.length > 0 ? terms.matchStart(term, folded, termRanks[term]) : -1;
+        return new SearchResult(event, person.getFirstName(), person.getLastName(), terms.fieldOf(term), start,
+                folded.length);
     }
 
 
@@ -96,40 +324,4 @@ public class DataProcessor {
 
         return false;
     }
-
-    public static HashMap<String, Person> generatePersonMap(Person[] filteredPersons) {
-        HashMap<String, Person> personMap = new HashMap<>();
-        for (Person person : filteredPersons) {
-            personMap.put(person.getPersonID(), person);
-        }
-        return personMap;
-    }
-
-    public static HashMap<String, TreeSet<Event>> generateSortedEventMap(Event[] filteredEvents,
-                                                                         HashMap<String, Person> personMap) {
-        HashMap<String, TreeSet<Event>> sortedEventsByPerson = new HashMap<>();
-        for (Event event : filteredEvents) {
-            Person person = personMap.get(event.getPersonID());
-            assert person != null;
-            if (sortedEventsByPerson.get(person.getPersonID()) == null) {
-                TreeSet<Event> personEvents = new TreeSet<>(new EventComparator());
-                personEvents.add(event);
-                sortedEventsByPerson.put(person.getPersonID(), personEvents);
-            }
-            else {
-                TreeSet<Event> sortedEvents = sortedEventsByPerson.get(person.getPersonID());
-                assert sortedEvents != null;
-                sortedEvents.add(event);
-            }
-        }
-        return sortedEventsByPerson;
-    }
-
-    private static class EventComparator implements Comparator<Event> {
-        @Override
-        public int compare(Event event1, Event event2) {
-            // Compare events by year
-            return Integer.compare(event1.getYear(), event2.getYear());
-        }
-    }
-}
\ No newline at end of file
+}
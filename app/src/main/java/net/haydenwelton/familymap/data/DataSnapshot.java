@@ -0,0 +1,392 @@
+package net.haydenwelton.familymap.data;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import model.Event;
+import model.Person;
+import model.User;
+
+/**
+ * One consistent state of the DataCache: the user, persons, events, their indexes and the last filter result.
+ * A snapshot is never modified after it is published; DataCache replaces it with a new one whenever the data
+ * or the filter changes. Code that makes several reads which have to agree with each other (a filtered event
+ * list and the positions in it, a cursor and the columns behind it) should take one snapshot and read from it.
+ */
+public final class DataSnapshot {
+
+    static final DataSnapshot EMPTY = new DataSnapshot(null, null, null, null, null, null, null, null, null, null,
+            null, null, null, null, null, null, null, null);
+
+    // Orders one person's events: births first and deaths last, the rest by year with unknown years after known
+    // ones. Ties are broken by type and then ID, so the order is total and missing values never throw.
+    private static final Comparator<Event> CHRONOLOGICAL = (a, b) -> {
+        int order = Integer.compare(lifeStage(a), lifeStage(b));
+        if (order != 0) return order;
+        order = compareNullsLast(a.getYear(), b.getYear());
+        if (order != 0) return order;
+        order = compareNullsLast(a.getEventType() == null ? null : a.getEventType().toLowerCase(Locale.ROOT),
+                b.getEventType() == null ? null : b.getEventType().toLowerCase(Locale.ROOT));
+        if (order != 0) return order;
+        return compareNullsLast(a.getEventID(), b.getEventID());
+    };
+
+    private final User user;
+
+    // Person data, in the order the server sent it. A person's position in persons is their ordinal.
+    private final Person[] persons;
+    private final List<Person> personList;
+    private final HashMap<String, Person> personMap;
+    private final HashMap<String, Integer> personOrdinals;
+
+    // Walks ancestors without recursion
+    private final LineageTraversal lineageTraversal;
+
+    // Parents, spouse and children of every person
+    private final FamilyIndex familyIndex;
+
+    // Every person's folded "first last" name, and its trigrams, by ordinal
+    private final SearchKeys nameKeys;
+    private final TrigramIndex nameIndex;
+
+    // Soundex codes of every person's name words
+    private final PhoneticIndex phoneticIndex;
+
+    // Event data, grouped by person ordinal and sorted chronologically within each person.
+    // The events of the person with ordinal p are events[personEventStart[p]] up to events[personEventStart[p + 1]];
+    // events whose person is unknown are kept at the end, after personEventStart[persons.length].
+    private final Event[] events;
+    private final int[] personEventStart;
+
+    // The same events stored column by column, for code that walks many events
+    private final EventColumns eventColumns;
+
+    // Event lookup index: eventID to position in events
+    private final HashMap<String, Integer> eventIndex;
+
+    // The events' searchable values and the events carrying each of them
+    private final EventTermIndex eventTermIndex;
+
+    // Completions for the search box, from the names and the event types, cities and countries
+    private final SuggestionTrie suggestions;
+
+    // Membership bitsets used to filter, or null until the first filter of this data
+    private final FilterSets filterSets;
+
+    // Result of the last filter; every person and event until the first one
+    private final FilterResult filtered;
+
+    private DataSnapshot(User user, Person[] persons, List<Person> personList, HashMap<String, Person> personMap,
+                         HashMap<String, Integer> personOrdinals, LineageTraversal lineageTraversal,
+                         FamilyIndex familyIndex, SearchKeys nameKeys, TrigramIndex nameIndex,
+                         PhoneticIndex phoneticIndex, Event[] events, int[] personEventStart,
+                         EventColumns eventColumns, HashMap<String, Integer> eventIndex,
+                         EventTermIndex eventTermIndex, SuggestionTrie suggestions, FilterSets filterSets,
+                         FilterResult filtered) {
+        this.user = user;
+        this.persons = persons;
+        this.personList = personList;
+        this.personMap = personMap;
+        this.personOrdinals = personOrdinals;
+        this.lineageTraversal = lineageTraversal;
+        this.familyIndex = familyIndex;
+        this.nameKeys = nameKeys;
+        this.nameIndex = nameIndex;
+        this.phoneticIndex = phoneticIndex;
+        this.events = events;
+        this.personEventStart = personEventStart;
+        this.eventColumns = eventColumns;
+        this.eventIndex = eventIndex;
+        this.eventTermIndex = eventTermIndex;
+        this.suggestions = suggestions;
+        this.filterSets = filterSets;
+        this.filtered = filtered;
+    }
+
+    // Returns a copy of this snapshot for another user. The filter bitsets depend on the user, so they are dropped.
+    DataSnapshot withUser(User user) {
+        return new DataSnapshot(user, persons, personList, personMap, personOrdinals, lineageTraversal, familyIndex,
+                nameKeys, nameIndex, phoneticIndex, events, personEventStart, eventColumns, eventIndex, eventTermIndex,
+                suggestions, null, filtered);
+    }
+
+    // Returns a copy of this snapshot with new person data, indexed by ID and ordinal.
+    DataSnapshot withPersons(Person[] persons) {
+        // The event layout depends on person ordinals, so rebuild it, along with the suggestions and the
+        // unfiltered result. Before any events are loaded the layout is empty rather than missing, so every
+        // published snapshot can be read.
+        return personsOnly(persons).withEvents(events == null ? new Event[0] : events);
+    }
+
+    // Returns a copy of this snapshot with new person and event data, laid out once.
+    DataSnapshot withData(Person[] persons, Event[] events) {
+        return personsOnly(persons).withEvents(events);
+    }
+
+    // Indexes the persons, leaving the event structures for withEvents to fill in. Never published as is.
+    private DataSnapshot personsOnly(Person[] persons) {
+        HashMap<String, Person> personMap = new HashMap<>(persons.length * 4 / 3 + 1);
+        HashMap<String, Integer> personOrdinals = new HashMap<>(persons.length * 4 / 3 + 1);
+        for (int i = 0; i < persons.length; i++) {
+            personMap.put(persons[i].getPersonID(), persons[i]);
+            personOrdinals.put(persons[i].getPersonID(), i);
+        }
+        SearchKeys nameKeys = SearchKeys.ofNames(persons);
+        return new DataSnapshot(user, persons,
+                Collections.unmodifiableList(Arrays.asList(persons)), personMap, personOrdinals,
+                new LineageTraversal(persons, personOrdinals), new FamilyIndex(persons, personOrdinals),
+                nameKeys, new TrigramIndex(nameKeys), new PhoneticIndex(nameKeys), null, null, null, null, null,
+                null, null, null);
+    }
+
+    // Returns a copy of this snapshot with new event data. Groups the events by person ordinal, sorts each person's
+    // events chronologically and indexes them by ID. Until the first filter every person and every event is visible.
+    DataSnapshot withEvents(Event[] serverEvents) {
+        int personCount = this.persons == null ? 0 : this.persons.length;
+
+        // Count the events of each person; unknown persons share the slot after the last ordinal.
+        int[] owners = new int[serverEvents.length];
+        int[] start = new int[personCount + 2];
+        for (int i = 0; i < serverEvents.length; i++) {
+            Integer ordinal = this.personOrdinals == null ? null :
+                    this.personOrdinals.get(serverEvents[i].getPersonID());
+            owners[i] = ordinal == null ? personCount : ordinal;
+            start[owners[i] + 1]++;
+        }
+        for (int p = 0; p <= personCount; p++) {
+            start[p + 1] += start[p];
+        }
+
+        // Place every event in its person's range, then sort each range.
+        Event[] grouped = new Event[serverEvents.length];
+        int[] groupedOwners = new int[serverEvents.length];
+        int[] next = Arrays.copyOf(start, personCount + 1);
+        for (int i = 0; i < serverEvents.length; i++) {
+            int position = next[owners[i]]++;
+            grouped[position] = serverEvents[i];
+            groupedOwners[position] = owners[i] == personCount ? -1 : owners[i];
+        }
+        for (int p = 0; p < personCount; p++) {
+            if (start[p + 1] - start[p] > 1) {
+                Arrays.sort(grouped, start[p], start[p + 1], CHRONOLOGICAL);
+            }
+        }
+
+        // Index every event by its ID so lookups don't have to scan the whole array.
+        HashMap<String, Integer> index = new HashMap<>(grouped.length * 4 / 3 + 1);
+        int[] positions = new int[grouped.length];
+        for (int i = 0; i < grouped.length; i++) {
+            index.put(grouped[i].getEventID(), i);
+            positions[i] = i;
+        }
+
+        BitSet everyone = new BitSet(personCount);
+        everyone.set(0, personCount);
+        FilterResult unfiltered = new FilterResult(everyone, this.persons == null ? new Person[0] : this.persons,
+                grouped.clone(), positions, true);
+
+        EventColumns columns = new EventColumns(grouped, groupedOwners);
+        return new DataSnapshot(user, persons, personList, personMap, personOrdinals, lineageTraversal, familyIndex,
+                nameKeys, nameIndex, phoneticIndex, grouped, start, columns, index, new EventTermIndex(columns),
+                SuggestionTrie.of(persons, columns), null, unfiltered);
+    }
+
+    // Returns a copy of this snapshot showing the given filter result.
+    DataSnapshot withFilter(FilterSets filterSets, FilterResult filtered) {
+        return new DataSnapshot(user, persons, personList, personMap, personOrdinals, lineageTraversal, familyIndex,
+                nameKeys, nameIndex, phoneticIndex, events, personEventStart, eventColumns, eventIndex, eventTermIndex,
+                suggestions, filterSets, filtered);
+    }
+
+    FamilyIndex getFamilyIndex() {
+        return familyIndex;
+    }
+
+    SearchKeys getNameKeys() {
+        return nameKeys;
+    }
+
+    TrigramIndex getNameIndex() {
+        return nameIndex;
+    }
+
+    PhoneticIndex getPhoneticIndex() {
+        return phoneticIndex;
+    }
+
+    EventTermIndex getEventTermIndex() {
+        return eventTermIndex;
+    }
+
+    SuggestionTrie getSuggestions() {
+        return suggestions;
+    }
+
+    // The cached events in DataCache event order; not to be modified.
+    Event[] getEventArray() {
+        return events;
+    }
+
+    // Whether the event at the position in DataCache event order is in the filtered view.
+    boolean isEventVisible(int position) {
+        return filtered.getPositions()[position] >= 0;
+    }
+
+    // Returns the person's ordinal, or -1 if they are not in the person data.
+    int getPersonOrdinal(String personID) {
+        Integer ordinal = personOrdinals == null || personID == null ? null : personOrdinals.get(personID);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    // The person's events are at positions getPersonEventStart(ordinal) up to getPersonEventStart(ordinal + 1).
+    int getPersonEventStart(int ordinal) {
+        return personEventStart[ordinal];
+    }
+
+    Person getPerson(int ordinal) {
+        return persons[ordinal];
+    }
+
+    // Returns the membership bitsets for this data, building them if this snapshot doesn't have them yet.
+    FilterSets getFilterSets() {
+        return filterSets != null ? filterSets : new FilterSets(persons, personOrdinals, user.getPersonID());
+    }
+
+    // Collects the events of the selected persons by copying each person's range of events.
+    FilterResult matchEventsToPersons(BitSet selected) {
+        int total = 0;
+        for (int p = selected.nextSetBit(0); p >= 0; p = selected.nextSetBit(p + 1)) {
+            total += personEventStart[p + 1] - personEventStart[p];
+        }
+
+        Event[] matched = new Event[total];
+        int[] positions = new int[events.length];
+        Arrays.fill(positions, -1);
+        int next = 0;
+        for (int p = selected.nextSetBit(0); p >= 0; p = selected.nextSetBit(p + 1)) {
+            int from = personEventStart[p];
+            int count = personEventStart[p + 1] - from;
+            System.arraycopy(events, from, matched, next, count);
+            for (int i = 0; i < count; i++) {
+                positions[from + i] = next + i;
+            }
+            next += count;
+        }
+
+        Person[] selectedPersons = new Person[selected.cardinality()];
+        int nextPerson = 0;
+        for (int p = selected.nextSetBit(0); p >= 0; p = selected.nextSetBit(p + 1)) {
+            selectedPersons[nextPerson++] = persons[p];
+        }
+
+        return new FilterResult(selected, selectedPersons, matched, positions, false);
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    // Returns a copy of all persons. Use getPersonList() to read them without copying.
+    public Person[] getPersons() {
+        return persons.clone();
+    }
+
+    // Returns a read-only view of all persons.
+    public List<Person> getPersonList() {
+        return personList;
+    }
+
+    // Returns a copy of the persons that passed the last filter.
+    public Person[] getFilteredPersons() {
+        return filtered.getPersonList().toArray(new Person[0]);
+    }
+
+    // Returns a read-only view of the persons that passed the last filter.
+    public List<Person> getFilteredPersonList() {
+        return filtered.getPersonList();
+    }
+
+    public HashMap<String, Person> getPersonMap() {
+        return personMap;
+    }
+
+    public Person getPersonByID(String id) {
+        return personMap.get(id);
+    }
+
+    // Returns a copy of the filtered events. Use getEventList() to read them without copying.
+    public Event[] getEvents() {
+        return filtered.getEvents().clone();
+    }
+
+    // Returns a read-only view of the filtered events.
+    public List<Event> getEventList() {
+        return filtered.getEventList();
+    }
+
+    public Event getEventByID(String id) {
+        Integer position = eventIndex.get(id);
+        return position == null ? null : events[position];
+    }
+
+    // Returns the position of the event in the filtered view (getEvents()), or -1 if it is filtered out.
+    public int getFilteredEventPosition(String id) {
+        Integer position = eventIndex.get(id);
+        return position == null ? -1 : filtered.getPositions()[position];
+    }
+
+    // Returns the person's events in chronological order, or an empty list if the person is filtered out.
+    public List<Event> getPersonEvents(String personID) {
+        Integer ordinal = personOrdinals == null ? null : personOrdinals.get(personID);
+        if (ordinal == null || !filtered.getPersons().get(ordinal)) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(events)
+                .subList(personEventStart[ordinal], personEventStart[ordinal + 1]));
+    }
+
+    public EventColumns getEventColumns() {
+        return eventColumns;
+    }
+
+    // Returns a cursor over the filtered view (the same events as getEvents(), in the same order).
+    public EventCursor getFilteredEventCursor() {
+        return new EventCursor(eventColumns, events, personEventStart, filtered.getPersons(),
+                filtered.includesUnknownPersons());
+    }
+
+    // Returns a cursor over the person's events in chronological order; it is empty if the person is filtered out.
+    public EventCursor getPersonEventCursor(String personID) {
+        Integer ordinal = personOrdinals == null ? null : personOrdinals.get(personID);
+        if (ordinal == null || !filtered.getPersons().get(ordinal)) {
+            return new EventCursor(eventColumns, events, 0, 0);
+        }
+        return new EventCursor(eventColumns, events, personEventStart[ordinal], personEventStart[ordinal + 1]);
+    }
+
+    // Visits the person and each of their ancestors exactly once, however deep the tree or even if its
+    // records form a cycle. When filteredOnly is true, persons hidden by the last filter are skipped.
+    public void walkLineage(String personID, boolean filteredOnly, LineageTraversal.Visitor visitor) {
+        Integer ordinal = personOrdinals == null ? null : personOrdinals.get(personID);
+        if (ordinal == null) return;
+        lineageTraversal.walk(ordinal, filteredOnly ? filtered.getPersons() : null, visitor);
+    }
+
+    // 0 for a birth, 2 for a death and 1 for anything in between
+    private static int lifeStage(Event event) {
+        if ("birth".equalsIgnoreCase(event.getEventType())) return 0;
+        if ("death".equalsIgnoreCase(event.getEventType())) return 2;
+        return 1;
+    }
+
+    private static <T extends Comparable<T>> int compareNullsLast(T a, T b) {
+        if (a == null) return b == null ? 0 : 1;
+        if (b == null) return -1;
+        return a.compareTo(b);
+    }
+}
@@ -0,0 +1,174 @@
+package net.haydenwelton.familymap.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import model.Event;
+
+/**
+ * A read-only, column-per-field copy of the cached events. Coordinates and years are primitive arrays
+ * and the event type, city and country are ids into small dictionaries of distinct strings, so code that
+ * walks every event (markers, lines, search) touches a few dense arrays instead of one object per field.
+ * Positions are the same as DataCache's event positions.
+ */
+public final class EventColumns {
+
+    // The year of an event the server sent without one. It is below every real year, and searches skip it.
+    public static final int NO_YEAR = Integer.MIN_VALUE;
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final int[] years;
+    private final int[] types;
+    private final int[] cities;
+    private final int[] countries;
+    private final int[] persons;
+
+    // Dictionaries of distinct values, indexed by id
+    private final String[] typeNames;
+    private final String[] cityNames;
+    private final String[] countryNames;
+
+    private final int minYear;
+    private final int maxYear;
+
+    // personOrdinals[i] is the ordinal of the person events[i] belongs to, or -1 if unknown.
+    public EventColumns(Event[] events, int[] personOrdinals) {
+        int size = events.length;
+        latitudes = new double[size];
+        longitudes = new double[size];
+        years = new int[size];
+        types = new int[size];
+        cities = new int[size];
+        countries = new int[size];
+        persons = personOrdinals.clone();
+
+        HashMap<String, Integer> typeIds = new HashMap<>();
+        HashMap<String, Integer> cityIds = new HashMap<>();
+        HashMap<String, Integer> countryIds = new HashMap<>();
+        ArrayList<String> typeList = new ArrayList<>();
+        ArrayList<String> cityList = new ArrayList<>();
+        ArrayList<String> countryList = new ArrayList<>();
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            Event event = events[i];
+            latitudes[i] = event.getLatitude() == null ? Double.NaN : event.getLatitude();
+            longitudes[i] = event.getLongitude() == null ? Double.NaN : event.getLongitude();
+            years[i] = event.getYear() == null ? NO_YEAR : event.getYear();
+            types[i] = encode(event.getEventType(), typeIds, typeList);
+            cities[i] = encode(event.getCity(), cityIds, cityList);
+            countries[i] = encode(event.getCountry(), countryIds, countryList);
+            if (years[i] != NO_YEAR) {
+                min = Math.min(min, years[i]);
+                max = Math.max(max, years[i]);
+            }
+        }
+        minYear = min > max ? 0 : min;
+        maxYear = min > max ? 0 : max;
+
+        typeNames = typeList.toArray(new String[0]);
+        cityNames = cityList.toArray(new String[0]);
+        countryNames = countryList.toArray(new String[0]);
+    }
+
+    public int size() {
+        return years.length;
+    }
+
+    public double getLatitude(int position) {
+        return latitudes[position];
+    }
+
+    public double getLongitude(int position) {
+        return longitudes[position];
+    }
+
+    // Returns the event's year, or NO_YEAR if it has none.
+    public int getYear(int position) {
+        return years[position];
+    }
+
+    public int getEventTypeId(int position) {
+        return types[position];
+    }
+
+    public String getEventType(int position) {
+        return typeNames[types[position]];
+    }
+
+    public int getCityId(int position) {
+        return cities[position];
+    }
+
+    public String getCity(int position) {
+        return cityNames[cities[position]];
+    }
+
+    public int getCountryId(int position) {
+        return countries[position];
+    }
+
+    public String getCountry(int position) {
+        return countryNames[countries[position]];
+    }
+
+    public int getPersonOrdinal(int position) {
+        return persons[position];
+    }
+
+    public int getEventTypeCount() {
+        return typeNames.length;
+    }
+
+    public String getEventTypeName(int id) {
+        return typeNames[id];
+    }
+
+    public int getCityCount() {
+        return cityNames.length;
+    }
+
+    public String getCityName(int id) {
+        return cityNames[id];
+    }
+
+    public int getCountryCount() {
+        return countryNames.length;
+    }
+
+    public String getCountryName(int id) {
+        return countryNames[id];
+    }
+
+    // The earliest and latest known years, or 0 if no event has one
+    public int getMinYear() {
+        return minYear;
+    }
+
+    public int getMaxYear() {
+        return maxYear;
+    }
+
+    // Approximate heap retained by the columns and dictionaries.
+    public long retainedBytes() {
+        long bytes = size() * (8L + 8L + 4L * 5);
+        for (String[] dictionary : new String[][] { typeNames, cityNames, countryNames }) {
+            for (String name : dictionary) {
+                bytes += 4 + (name == null ? 0 : 40 + 2L * name.length());
+            }
+        }
+        return bytes;
+    }
+
+    private static int encode(String value, HashMap<String, Integer> ids, ArrayList<String> names) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = names.size();
+            ids.put(value, id);
+            names.add(value);
+        }
+        return id;
+    }
+}
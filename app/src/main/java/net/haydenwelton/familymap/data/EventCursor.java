@@ -0,0 +1,130 @@
+package net.haydenwelton.familymap.data;
+
+import java.util.BitSet;
+
+import model.Event;
+
+/**
+ * Iterates a set of cached events in DataCache order without allocating, reading each field from the
+ * EventColumns. Call next() before reading the first event; a cursor can only be used once.
+ */
+public final class EventCursor {
+
+    private final EventColumns columns;
+    private final Event[] events;
+    private final int[] personEventStart;
+
+    // Persons whose ranges are still to be visited, and the next ordinal to look from
+    private BitSet persons;
+    private int nextPerson;
+
+    // Whether events of unknown persons are still to be visited
+    private boolean includeUnknown;
+
+    // The current position and the end of the current range
+    private int position;
+    private int end;
+
+    // A cursor over the ranges of the given persons, followed by the unknown persons' events if asked.
+    EventCursor(EventColumns columns, Event[] events, int[] personEventStart, BitSet persons,
+                boolean includeUnknown) {
+        this.columns = columns;
+        this.events = events;
+        this.personEventStart = personEventStart;
+        this.persons = persons;
+        this.includeUnknown = includeUnknown;
+        this.position = -1;
+        this.end = 0;
+    }
+
+    // A cursor over positions from (inclusive) to to (exclusive).
+    EventCursor(EventColumns columns, Event[] events, int from, int to) {
+        this.columns = columns;
+        this.events = events;
+        this.personEventStart = null;
+        this.position = from - 1;
+        this.end = to;
+    }
+
+    // Moves to the next event, returning false once there are none left.
+    public boolean next() {
+        position++;
+        while (position >= end) {
+            if (!nextRange()) {
+                position = end;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public Event getEvent() {
+        return events[position];
+    }
+
+    public double getLatitude() {
+        return columns.getLatitude(position);
+    }
+
+    public double getLongitude() {
+        return columns.getLongitude(position);
+    }
+
+    // The year, or EventColumns.NO_YEAR
+    public int getYear() {
+        return columns.getYear(position);
+    }
+
+    public int getEventTypeId() {
+        return columns.getEventTypeId(position);
+    }
+
+    public String getEventType() {
+        return columns.getEventType(position);
+    }
+
+    public int getCityId() {
+        return columns.getCityId(position);
+    }
+
+    public String getCity() {
+        return columns.getCity(position);
+    }
+
+    public int getCountryId() {
+        return columns.getCountryId(position);
+    }
+
+    public String getCountry() {
+        return columns.getCountry(position);
+    }
+
+    public int getPersonOrdinal() {
+        return columns.getPersonOrdinal(position);
+    }
+
+    private boolean nextRange() {
+        if (persons != null) {
+            int personCount = personEventStart.length - 2;
+            int person = persons.nextSetBit(nextPerson);
+            if (person >= 0 && person < personCount) {
+                position = personEventStart[person];
+                end = personEventStart[person + 1];
+                nextPerson = person + 1;
+                return true;
+            }
+            persons = null;
+        }
+        if (includeUnknown) {
+            includeUnknown = false;
+            position = personEventStart[personEventStart.length - 2];
+            end = events.length;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,250 @@
+package net.haydenwelton.familymap.data;
+
+import net.haydenwelton.familymap.model.SearchResult;
+
+import java.util.Arrays;
+
+/**
+ * The searchable values of the cached events as one list of terms: every distinct event type, city, country and
+ * year. Each term has a trigram entry, so a query finds the terms containing it without checking them all, and
+ * a posting list of the ascending positions of the events that carry it.
+ */
+final class EventTermIndex {
+
+    private final EventColumns columns;
+
+    // Terms are the event types, then the cities, then the countries, then the years, each in dictionary order
+    private final int cityOffset;
+    private final int countryOffset;
+    private final int yearOffset;
+    private final String[] terms;
+    private final int[] years;
+
+    // The year term of the event at each position, or -1 for an event without a year
+    private final int[] yearTerms;
+
+    // The events carrying term t are events[termStart[t]] up to events[termStart[t + 1]]
+    private final int[] termStart;
+    private final int[] events;
+
+    // The folded terms, and their trigrams
+    private final SearchKeys keys;
+    private final TrigramIndex trigrams;
+
+    EventTermIndex(EventColumns columns) {
+        this.columns = columns;
+        int size = columns.size();
+
+        years = distinctYears(columns);
+        cityOffset = columns.getEventTypeCount();
+        countryOffset = cityOffset + columns.getCityCount();
+        yearOffset = countryOffset + columns.getCountryCount();
+        terms = new String[yearOffset + years.length];
+        for (int id = 0; id < columns.getEventTypeCount(); id++) {
+            terms[id] = columns.getEventTypeName(id);
+        }
+        for (int id = 0; id < columns.getCityCount(); id++) {
+            terms[cityOffset + id] = columns.getCityName(id);
+        }
+        for (int id = 0; id < columns.getCountryCount(); id++) {
+            terms[countryOffset + id] = columns.getCountryName(id);
+        }
+        for (int i = 0; i < years.length; i++) {
+            terms[yearOffset + i] = String.valueOf(years[i]);
+        }
+
+        // Every event carries exactly one term of each kind, except that events without a year have no year term
+        yearTerms = new int[size];
+        termStart = new int[terms.length + 1];
+        for (int position = 0; position < size; position++) {
+            int year = columns.getYear(position);
+            yearTerms[position] = year == EventColumns.NO_YEAR ? -1 : yearOffset + Arrays.binarySearch(years, year);
+            termStart[columns.getEventTypeId(position) + 1]++;
+            termStart[cityOffset + columns.getCityId(position) + 1]++;
+            termStart[countryOffset + columns.getCountryId(position) + 1]++;
+            if (yearTerms[position] >= 0) {
+                termStart[yearTerms[position] + 1]++;
+            }
+        }
+        for (int t = 0; t < terms.length; t++) {
+            termStart[t + 1] += termStart[t];
+        }
+        events = new int[termStart[terms.length]];
+        int[] next = Arrays.copyOf(termStart, terms.length);
+        for (int position = 0; position < size; position++) {
+            events[next[columns.getEventTypeId(position)]++] = position;
+            events[next[cityOffset + columns.getCityId(position)]++] = position;
+            events[next[countryOffset + columns.getCountryId(position)]++] = position;
+            if (yearTerms[position] >= 0) {
+                events[next[yearTerms[position]]++] = position;
+            }
+        }
+
+        keys = SearchKeys.of(terms);
+        trigrams = new TrigramIndex(keys);
+    }
+
+    // Returns which terms contain the query, ignoring case and accents.
+    boolean[] matchTerms(String query) {
+        char[] folded = SearchKeys.fold(query);
+        boolean[] matches = new boolean[terms.length];
+        if (TrigramIndex.canSearch(folded)) {
+            for (int term : trigrams.candidates(folded)) {
+                matches[term] = keys.contains(term, folded);
+            }
+        }
+        else {
+            for (int term = 0; term < terms.length; term++) {
+                matches[term] = keys.contains(term, folded);
+            }
+        }
+        return matches;
+    }
+
+    // Returns which event types contain the value, ignoring case and accents; terms of other kinds are left unmatched.
+    boolean[] matchTypes(String value) {
+        return matchRange(0, cityOffset, value);
+    }
+
+    boolean[] matchCities(String value) {
+        return matchRange(cityOffset, countryOffset, value);
+    }
+
+    boolean[] matchCountries(String value) {
+        return matchRange(countryOffset, yearOffset, value);
+    }
+
+    // Returns which year terms lie from fromYear to toYear inclusive. Year terms are in year order, so a range
+    // is one run of terms found by binary search, and its events one run of the posting lists.
+    boolean[] matchYears(int fromYear, int toYear) {
+        boolean[] matches = new boolean[terms.length];
+        if (fromYear > toYear) return matches;
+        int from = Arrays.binarySearch(years, fromYear);
+        int to = Arrays.binarySearch(years, toYear);
+        from = from >= 0 ? from : -from - 1;
+        to = to >= 0 ? to + 1 : -to - 1;
+        if (from < to) {
+            Arrays.fill(matches, yearOffset + from, yearOffset + to, true);
+        }
+        return matches;
+    }
+
+    // Returns how well each term matches the query, as SearchKeys.rank does.
+    int[] rankTerms(String query) {
+        char[] folded = SearchKeys.fold(query);
+        boolean[] matches = matchTerms(query);
+        int[] ranks = new int[terms.length];
+        for (int term = 0; term < terms.length; term++) {
+            ranks[term] = matches[term] ? keys.rank(term, folded, RankedSearch.NO_MATCH) : RankedSearch.NO_MATCH;
+        }
+        return ranks;
+    }
+
+    // The best rank among the terms of the event at the position.
+    int rank(int[] termRanks, int position) {
+        int rank = Math.min(termRanks[columns.getEventTypeId(position)],
+                termRanks[cityOffset + columns.getCityId(position)]);
+        rank = Math.min(rank, termRanks[countryOffset + columns.getCountryId(position)]);
+        return yearTerms[position] < 0 ? rank : Math.min(rank, termRanks[yearTerms[position]]);
+    }
+
+    // The term the event at the position ranked best on; the type, city, country and year in that order on ties.
+    int bestTerm(int[] termRanks, int position) {
+        int best = columns.getEventTypeId(position);
+        int city = cityOffset + columns.getCityId(position);
+        int country = countryOffset + columns.getCountryId(position);
+        if (termRanks[city] < termRanks[best]) best = city;
+        if (termRanks[country] < termRanks[best]) best = country;
+        if (yearTerms[position] >= 0 && termRanks[yearTerms[position]] < termRanks[best]) best = yearTerms[position];
+        return best;
+    }
+
+    // The field of the event the term is a value of, as a SearchResult field.
+    int fieldOf(int term) {
+        if (term < cityOffset) return SearchResult.EVENT_TYPE;
+        if (term < countryOffset) return SearchResult.CITY;
+        if (term < yearOffset) return SearchResult.COUNTRY;
+        return SearchResult.YEAR;
+    }
+
+    // Where the folded query matches the term, as SearchKeys.matchStart finds it, or -1 when the term doesn't
+    // contain it or folding changed the term's length so the position in the key is not one in the term.
+    int matchStart(int term, char[] query, int rank) {
+        if (keys.length(term) != terms[term].length()) return -1;
+        return keys.matchStart(term, query, rank);
+    }
+
+    // Returns how many (event, term) pairs the matched terms cover; an upper bound on the matching events.
+    long countPostings(boolean[] matches) {
+        long count = 0;
+        for (int term = 0; term < matches.length; term++) {
+            if (matches[term]) {
+                count += termStart[term + 1] - termStart[term];
+            }
+        }
+        return count;
+    }
+
+    // Returns the ascending, distinct positions of the events carrying any of the matched terms.
+    int[] findEvents(boolean[] matches) {
+        int[] found = new int[(int) countPostings(matches)];
+        int size = 0;
+        for (int term = 0; term < matches.length; term++) {
+            if (matches[term]) {
+                int count = termStart[term + 1] - termStart[term];
+                System.arraycopy(events, termStart[term], found, size, count);
+                size += count;
+            }
+        }
+        Arrays.sort(found, 0, size);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || found[i] != found[distinct - 1]) {
+                found[distinct++] = found[i];
+            }
+        }
+        return Arrays.copyOf(found, distinct);
+    }
+
+    // Whether the event at the position carries one of the matched terms.
+    boolean matches(boolean[] matches, int position) {
+        return matches[columns.getEventTypeId(position)] ||
+                matches[cityOffset + columns.getCityId(position)] ||
+                matches[countryOffset + columns.getCountryId(position)] ||
+                yearTerms[position] >= 0 && matches[yearTerms[position]];
+    }
+
+    // Approximate heap retained by the index, not counting the columns.
+    long retainedBytes() {
+        return termStart.length * 4L + events.length * 4L + yearTerms.length * 4L + years.length * 4L +
+                keys.retainedBytes() + trigrams.retainedBytes();
+    }
+
+    private boolean[] matchRange(int from, int to, String value) {
+        char[] folded = SearchKeys.fold(value);
+        boolean[] matches = new boolean[terms.length];
+        for (int term = from; term < to; term++) {
+            matches[term] = keys.contains(term, folded);
+        }
+        return matches;
+    }
+
+    // The distinct known years, ascending
+    private static int[] distinctYears(EventColumns columns) {
+        int[] sorted = new int[columns.size()];
+        int size = 0;
+        for (int position = 0; position < columns.size(); position++) {
+            if (columns.getYear(position) != EventColumns.NO_YEAR) {
+                sorted[size++] = columns.getYear(position);
+            }
+        }
+        Arrays.sort(sorted, 0, size);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+}
@@ -0,0 +1,86 @@
+package net.haydenwelton.familymap.data;
+
+import java.util.HashMap;
+
+import model.Person;
+
+/**
+ * Direct links between persons by ordinal: each person's father, mother and spouse, and each person's children
+ * stored contiguously, so a person's relatives are found without scanning everyone. Built with the person data.
+ */
+final class FamilyIndex {
+
+    private final int[] fathers;
+    private final int[] mothers;
+    private final int[] spouses;
+
+    // The children of the person with ordinal p are children[childStart[p]] up to children[childStart[p + 1]],
+    // in ordinal order
+    private final int[] childStart;
+    private final int[] children;
+
+    FamilyIndex(Person[] persons, HashMap<String, Integer> ordinals) {
+        int count = persons.length;
+        fathers = new int[count];
+        mothers = new int[count];
+        spouses = new int[count];
+        childStart = new int[count + 1];
+        for (int p = 0; p < count; p++) {
+            fathers[p] = ordinal(persons[p].getFatherID(), ordinals);
+            mothers[p] = ordinal(persons[p].getMotherID(), ordinals);
+            spouses[p] = ordinal(persons[p].getSpouseID(), ordinals);
+            if (fathers[p] >= 0) {
+                childStart[fathers[p] + 1]++;
+            }
+            if (mothers[p] >= 0 && mothers[p] != fathers[p]) {
+                childStart[mothers[p] + 1]++;
+            }
+        }
+        for (int p = 0; p < count; p++) {
+            childStart[p + 1] += childStart[p];
+        }
+
+        children = new int[childStart[count]];
+        int[] next = new int[count];
+        System.arraycopy(childStart, 0, next, 0, count);
+        for (int p = 0; p < count; p++) {
+            if (fathers[p] >= 0) {
+                children[next[fathers[p]]++] = p;
+            }
+            if (mothers[p] >= 0 && mothers[p] != fathers[p]) {
+                children[next[mothers[p]]++] = p;
+            }
+        }
+    }
+
+    // Each of these returns an ordinal, or -1 if the relative is unknown.
+
+    int getFather(int person) {
+        return fathers[person];
+    }
+
+    int getMother(int person) {
+        return mothers[person];
+    }
+
+    int getSpouse(int person) {
+        return spouses[person];
+    }
+
+    int getChildStart(int person) {
+        return childStart[person];
+    }
+
+    int getChildEnd(int person) {
+        return childStart[person + 1];
+    }
+
+    int getChild(int index) {
+        return children[index];
+    }
+
+    private static int ordinal(String personID, HashMap<String, Integer> ordinals) {
+        Integer ordinal = personID == null ? null : ordinals.get(personID);
+        return ordinal == null ? -1 : ordinal;
+    }
+}
@@ -0,0 +1,59 @@
+package net.haydenwelton.familymap.data;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers filter results by switch combination so that toggling back to a previous setting
+ * doesn't filter again. Results are evicted least recently used first once together they retain
+ * more than the byte budget; the most recent result is always kept.
+ */
+final class FilterCache {
+
+    // There are only 16 combinations of the four switches
+    static final int COMBINATIONS = 16;
+
+    private final long budgetBytes;
+    private final LinkedHashMap<Integer, FilterResult> results =
+            new LinkedHashMap<>(COMBINATIONS, 0.75f, true);
+    private long retainedBytes;
+
+    FilterCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    // Packs the four switches into a combination key between 0 and 15.
+    static int key(boolean motherSide, boolean fatherSide, boolean female, boolean male) {
+        return (motherSide ? 1 : 0) | (fatherSide ? 2 : 0) | (female ? 4 : 0) | (male ? 8 : 0);
+    }
+
+    FilterResult get(int key) {
+        return results.get(key);
+    }
+
+    void put(int key, FilterResult result) {
+        FilterResult previous = results.put(key, result);
+        if (previous != null) {
+            retainedBytes -= previous.retainedBytes();
+        }
+        retainedBytes += result.retainedBytes();
+
+        // Evict the least recently used results until we are back under budget.
+        Iterator<Map.Entry<Integer, FilterResult>> eldest = results.entrySet().iterator();
+        while (retainedBytes > budgetBytes && results.size() > 1) {
+            Map.Entry<Integer, FilterResult> entry = eldest.next();
+            retainedBytes -= entry.getValue().retainedBytes();
+            eldest.remove();
+        }
+    }
+
+    int size() {
+        return results.size();
+    }
+
+    void clear() {
+        results.clear();
+        retainedBytes = 0;
+    }
+}
@@ -0,0 +1,70 @@
+package net.haydenwelton.familymap.data;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import model.Event;
+import model.Person;
+
+/**
+ * The outcome of filtering the cached data with one combination of the filter switches.
+ * Instances are never modified after construction, so they can be shared and cached.
+ */
+final class FilterResult {
+
+    // The persons that passed the filter, by ordinal
+    private final BitSet persons;
+
+    // The same persons in ordinal order, as a read-only view
+    private final List<Person> personList;
+
+    // The events of those persons, in DataCache event order, and a read-only view of them
+    private final Event[] events;
+    private final List<Event> eventList;
+
+    // For every position in the DataCache events, its position in events (or -1 if filtered out)
+    private final int[] positions;
+
+    // Whether events of persons missing from the person data are included (only before the first filter)
+    private final boolean unknownPersons;
+
+    FilterResult(BitSet persons, Person[] personArray, Event[] events, int[] positions, boolean unknownPersons) {
+        this.persons = persons;
+        this.personList = Collections.unmodifiableList(Arrays.asList(personArray));
+        this.events = events;
+        this.eventList = Collections.unmodifiableList(Arrays.asList(events));
+        this.positions = positions;
+        this.unknownPersons = unknownPersons;
+    }
+
+    BitSet getPersons() {
+        return persons;
+    }
+
+    List<Person> getPersonList() {
+        return personList;
+    }
+
+    Event[] getEvents() {
+        return events;
+    }
+
+    List<Event> getEventList() {
+        return eventList;
+    }
+
+    int[] getPositions() {
+        return positions;
+    }
+
+    boolean includesUnknownPersons() {
+        return unknownPersons;
+    }
+
+    // Approximate heap retained by this result, not counting the shared Person and Event objects.
+    long retainedBytes() {
+        return persons.size() / 8 + personList.size() * 4L + events.length * 4L + positions.length * 4L + 128;
+    }
+}
@@ -0,0 +1,77 @@
+package net.haydenwelton.familymap.data;
+
+import java.util.BitSet;
+import java.util.HashMap;
+
+import model.Person;
+
+/**
+ * Membership bitsets over person ordinals, computed once per data load so that every combination
+ * of the filter switches is a handful of word-wise AND/OR operations instead of a tree walk.
+ */
+final class FilterSets {
+
+    private final BitSet root = new BitSet();
+    private final BitSet spouse = new BitSet();
+    private final BitSet motherSide = new BitSet();
+    private final BitSet fatherSide = new BitSet();
+    private final BitSet male = new BitSet();
+    private final BitSet female = new BitSet();
+
+    FilterSets(Person[] persons, HashMap<String, Integer> ordinals, String rootID) {
+        for (int i = 0; i < persons.length; i++) {
+            String gender = persons[i].getGender();
+            if ("m".equalsIgnoreCase(gender)) {
+                male.set(i);
+            }
+            else if ("f".equalsIgnoreCase(gender)) {
+                female.set(i);
+            }
+        }
+
+        Integer rootOrdinal = ordinals.get(rootID);
+        if (rootOrdinal == null) return;
+        Person rootPerson = persons[rootOrdinal];
+        root.set(rootOrdinal);
+
+        Integer spouseOrdinal = ordinals.get(rootPerson.getSpouseID());
+        if (spouseOrdinal != null) {
+            spouse.set(spouseOrdinal);
+        }
+
+        LineageTraversal traversal = new LineageTraversal(persons, ordinals);
+        markLineage(traversal, ordinals, rootPerson.getMotherID(), motherSide);
+        markLineage(traversal, ordinals, rootPerson.getFatherID(), fatherSide);
+    }
+
+    // Returns the persons that pass the given filter switches.
+    BitSet select(boolean motherSide, boolean fatherSide, boolean female, boolean male) {
+        BitSet selected = (BitSet) root.clone();
+        selected.or(spouse);
+        if (motherSide) {
+            selected.or(this.motherSide);
+        }
+        if (fatherSide) {
+            selected.or(this.fatherSide);
+        }
+
+        BitSet genders = new BitSet();
+        if (male) {
+            genders.or(this.male);
+        }
+        if (female) {
+            genders.or(this.female);
+        }
+        selected.and(genders);
+        return selected;
+    }
+
+    // Marks the given person and all of their ancestors.
+    private static void markLineage(LineageTraversal traversal, HashMap<String, Integer> ordinals,
+                                    String personID, BitSet lineage) {
+        Integer ordinal = personID == null ? null : ordinals.get(personID);
+        if (ordinal == null) return;
+        traversal.walk(ordinal, null, (person, mother, father, generation) ->
+                lineage.set(ordinals.get(person.getPersonID())));
+    }
+}
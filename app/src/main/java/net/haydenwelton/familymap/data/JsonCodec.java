@@ -0,0 +1,357 @@
+package net.haydenwelton.familymap.data;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import model.Event;
+import model.Person;
+import requests.LoginRequest;
+import requests.RegisterRequest;
+import responses.ClearResponse;
+import responses.EventResponse;
+import responses.LoginResponse;
+import responses.PersonResponse;
+import responses.RegisterResponse;
+
+/**
+ * The one Gson the app talks to the server with. Every request and response type has a hand-written adapter
+ * that reads and writes its fields by name, so Gson never builds a reflective adapter or touches a field
+ * through reflection. The JSON is what the reflective adapters would read and write: fields in declaration
+ * order, nulls left out and unknown fields skipped.
+ */
+public final class JsonCodec {
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Person.class, new PersonAdapter().nullSafe())
+            .registerTypeAdapter(Event.class, new EventAdapter().nullSafe())
+            .registerTypeAdapter(PersonResponse.class, new PersonResponseAdapter().nullSafe())
+            .registerTypeAdapter(EventResponse.class, new EventResponseAdapter().nullSafe())
+            .registerTypeAdapter(LoginResponse.class, new LoginResponseAdapter().nullSafe())
+            .registerTypeAdapter(RegisterResponse.class, new RegisterResponseAdapter().nullSafe())
+            .registerTypeAdapter(ClearResponse.class, new ClearResponseAdapter().nullSafe())
+            .registerTypeAdapter(LoginRequest.class, new LoginRequestAdapter().nullSafe())
+            .registerTypeAdapter(RegisterRequest.class, new RegisterRequestAdapter().nullSafe())
+            .create();
+
+    private static volatile boolean warm;
+
+    private JsonCodec() {}
+
+    public static Gson gson() {
+        return GSON;
+    }
+
+    // Encodes and decodes a small example of every type once, so the classes are loaded and the adapters
+    // cached before the first real request. Call it off the main thread while the user is still typing.
+    public static void warmUp() {
+        if (warm) return;
+        Person person = new Person("p", "u", "First", "Last", "f", "f", "m", "s");
+        Event event = new Event("e", "u", "p", 1.5f, -1.5f, "Country", "City", "Birth", 1900);
+        GSON.fromJson(GSON.toJson(new PersonResponse(new Person[] { person }, null, true)), PersonResponse.class);
+        GSON.fromJson(GSON.toJson(new EventResponse(new Event[] { event }, null, true)), EventResponse.class);
+        GSON.fromJson(GSON.toJson(new LoginResponse("t", "u", "p", true, null)), LoginResponse.class);
+        GSON.fromJson(GSON.toJson(new RegisterResponse("t", "u", "p", true, null)), RegisterResponse.class);
+        GSON.fromJson(GSON.toJson(new ClearResponse("m", true)), ClearResponse.class);
+        GSON.fromJson(GSON.toJson(new LoginRequest("u", "p")), LoginRequest.class);
+        GSON.fromJson(GSON.toJson(new RegisterRequest("u", "p", "e", "f", "l", "m")), RegisterRequest.class);
+        warm = true;
+    }
+
+    private static final class PersonAdapter extends TypeAdapter<Person> {
+        @Override
+        public void write(JsonWriter out, Person person) throws IOException {
+            writePerson(out, person);
+        }
+
+        @Override
+        public Person read(JsonReader in) throws IOException {
+            return RecordDecoder.readPerson(in);
+        }
+    }
+
+    private static final class EventAdapter extends TypeAdapter<Event> {
+        @Override
+        public void write(JsonWriter out, Event event) throws IOException {
+            writeEvent(out, event);
+        }
+
+        @Override
+        public Event read(JsonReader in) throws IOException {
+            return RecordDecoder.readEvent(in);
+        }
+    }
+
+    private static final class PersonResponseAdapter extends TypeAdapter<PersonResponse> {
+        @Override
+        public void write(JsonWriter out, PersonResponse response) throws IOException {
+            out.beginObject();
+            if (response.getData() != null) {
+                out.name("data").beginArray();
+                for (Person person : response.getData()) {
+                    writePerson(out, person);
+                }
+                out.endArray();
+            }
+            out.name("success").value(response.getSuccess());
+            out.name("message").value(response.getMessage());
+            out.endObject();
+        }
+
+        @Override
+        public PersonResponse read(JsonReader in) throws IOException {
+            return RecordDecoder.readPersons(in);
+        }
+    }
+
+    private static final class EventResponseAdapter extends TypeAdapter<EventResponse> {
+        @Override
+        public void write(JsonWriter out, EventResponse response) throws IOException {
+            out.beginObject();
+            if (response.getData() != null) {
+                out.name("data").beginArray();
+                for (Event event : response.getData()) {
+                    writeEvent(out, event);
+                }
+                out.endArray();
+            }
+            out.name("success").value(response.getSuccess());
+            out.name("message").value(response.getMessage());
+            out.endObject();
+        }
+
+        @Override
+        public EventResponse read(JsonReader in) throws IOException {
+            return RecordDecoder.readEvents(in);
+        }
+    }
+
+    private static final class LoginResponseAdapter extends TypeAdapter<LoginResponse> {
+        @Override
+        public void write(JsonWriter out, LoginResponse response) throws IOException {
+            writeAuthResponse(out, response.getAuthtoken(), response.getUsername(), response.getPersonID(),
+                    response.getSuccess(), response.getMessage());
+        }
+
+        @Override
+        public LoginResponse read(JsonReader in) throws IOException {
+            AuthResponse response = AuthResponse.read(in);
+            return new LoginResponse(response.authtoken, response.username, response.personID, response.success,
+                    response.message);
+        }
+    }
+
+    private static final class RegisterResponseAdapter extends TypeAdapter<RegisterResponse> {
+        @Override
+        public void write(JsonWriter out, RegisterResponse response) throws IOException {
+            writeAuthResponse(out, response.getAuthtoken(), response.getUsername(), response.getPersonID(),
+                    response.getSuccess(), response.getMessage());
+        }
+
+        @Override
+        public RegisterResponse read(JsonReader in) throws IOException {
+            AuthResponse response = AuthResponse.read(in);
+            return new RegisterResponse(response.authtoken, response.username, response.personID, response.success,
+                    response.message);
+        }
+    }
+
+    private static final class ClearResponseAdapter extends TypeAdapter<ClearResponse> {
+        @Override
+        public void write(JsonWriter out, ClearResponse response) throws IOException {
+            out.beginObject();
+            out.name("message").value(response.getMessage());
+            out.name("success").value(response.getSuccess());
+            out.endObject();
+        }
+
+        @Override
+        public ClearResponse read(JsonReader in) throws IOException {
+            String message = null;
+            Boolean success = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "message":
+                        message = RecordDecoder.nextString(in);
+                        break;
+                    case "success":
+                        success = RecordDecoder.nextBoolean(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ClearResponse(message, success);
+        }
+    }
+
+    private static final class LoginRequestAdapter extends TypeAdapter<LoginRequest> {
+        @Override
+        public void write(JsonWriter out, LoginRequest request) throws IOException {
+            out.beginObject();
+            out.name("username").value(request.getUsername());
+            out.name("password").value(request.getPassword());
+            out.endObject();
+        }
+
+        @Override
+        public LoginRequest read(JsonReader in) throws IOException {
+            String username = null;
+            String password = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "username":
+                        username = RecordDecoder.nextString(in);
+                        break;
+                    case "password":
+                        password = RecordDecoder.nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new LoginRequest(username, password);
+        }
+    }
+
+    private static final class RegisterRequestAdapter extends TypeAdapter<RegisterRequest> {
+        @Override
+        public void write(JsonWriter out, RegisterRequest request) throws IOException {
+            out.beginObject();
+            out.name("username").value(request.getUsername());
+            out.name("password").value(request.getPassword());
+            out.name("email").value(request.getEmail());
+            out.name("firstName").value(request.getFirstName());
+            out.name("lastName").value(request.getLastName());
+            out.name("gender").value(request.getGender());
+            out.endObject();
+        }
+
+        @Override
+        public RegisterRequest read(JsonReader in) throws IOException {
+            String username = null;
+            String password = null;
+            String email = null;
+            String firstName = null;
+            String lastName = null;
+            String gender = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "username":
+                        username = RecordDecoder.nextString(in);
+                        break;
+                    case "password":
+                        password = RecordDecoder.nextString(in);
+                        break;
+                    case "email":
+                        email = RecordDecoder.nextString(in);
+                        break;
+                    case "firstName":
+                        firstName = RecordDecoder.nextString(in);
+                        break;
+                    case "lastName":
+                        lastName = RecordDecoder.nextString(in);
+                        break;
+                    case "gender":
+                        gender = RecordDecoder.nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new RegisterRequest(username, password, email, firstName, lastName, gender);
+        }
+    }
+
+    // The fields login and register responses have in common
+    private static final class AuthResponse {
+        private String authtoken;
+        private String username;
+        private String personID;
+        private Boolean success;
+        private String message;
+
+        private static AuthResponse read(JsonReader in) throws IOException {
+            AuthResponse response = new AuthResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "authtoken":
+                        response.authtoken = RecordDecoder.nextString(in);
+                        break;
+                    case "username":
+                        response.username = RecordDecoder.nextString(in);
+                        break;
+                    case "personID":
+                        response.personID = RecordDecoder.nextString(in);
+                        break;
+                    case "success":
+                        response.success = RecordDecoder.nextBoolean(in);
+                        break;
+                    case "message":
+                        response.message = RecordDecoder.nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+    }
+
+    private static void writeAuthResponse(JsonWriter out, String authtoken, String username, String personID,
+                                          Boolean success, String message) throws IOException {
+        out.beginObject();
+        out.name("authtoken").value(authtoken);
+        out.name("username").value(username);
+        out.name("personID").value(personID);
+        out.name("success").value(success);
+        out.name("message").value(message);
+        out.endObject();
+    }
+
+    private static void writePerson(JsonWriter out, Person person) throws IOException {
+        if (person == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("personID").value(person.getPersonID());
+        out.name("associatedUsername").value(person.getAssociatedUsername());
+        out.name("firstName").value(person.getFirstName());
+        out.name("lastName").value(person.getLastName());
+        out.name("gender").value(person.getGender());
+        out.name("fatherID").value(person.getFatherID());
+        out.name("motherID").value(person.getMotherID());
+        out.name("spouseID").value(person.getSpouseID());
+        out.endObject();
+    }
+
+    private static void writeEvent(JsonWriter out, Event event) throws IOException {
+        if (event == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("eventID").value(event.getEventID());
+        out.name("associatedUsername").value(event.getAssociatedUsername());
+        out.name("personID").value(event.getPersonID());
+        out.name("latitude").value(event.getLatitude());
+        out.name("longitude").value(event.getLongitude());
+        out.name("country").value(event.getCountry());
+        out.name("city").value(event.getCity());
+        out.name("eventType").value(event.getEventType());
+        out.name("year").value(event.getYear());
+        out.endObject();
+    }
+}
@@ -0,0 +1,80 @@
+package net.haydenwelton.familymap.data;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import model.Person;
+
+/**
+ * Walks a person and their ancestors through mother and father IDs with an explicit work stack,
+ * so very deep pedigrees can't overflow the call stack, and a visited bitset over person ordinals,
+ * so a record that points back at its own descendants can't loop forever.
+ */
+public final class LineageTraversal {
+
+    public interface Visitor {
+        // Called once per person reached. mother and father are null if unknown or not allowed.
+        void visit(Person person, Person mother, Person father, int generation);
+    }
+
+    private final Person[] persons;
+    private final HashMap<String, Integer> ordinals;
+
+    LineageTraversal(Person[] persons, HashMap<String, Integer> ordinals) {
+        this.persons = persons;
+        this.ordinals = ordinals;
+    }
+
+    // Visits the person with the given ordinal and each ancestor reachable from them exactly once,
+    // along with how many generations above the starting person they were reached.
+    // When allowed is not null, persons outside it are neither visited nor reported as parents.
+    void walk(int start, BitSet allowed, Visitor visitor) {
+        if (allowed != null && !allowed.get(start)) return;
+
+        BitSet visited = new BitSet(persons.length);
+        int[] stack = new int[32];
+        int[] generations = new int[32];
+        int size = 0;
+
+        stack[size] = start;
+        generations[size++] = 0;
+        visited.set(start);
+
+        while (size > 0) {
+            int ordinal = stack[--size];
+            int generation = generations[size];
+            Person person = persons[ordinal];
+            int mother = parent(person.getMotherID(), allowed);
+            int father = parent(person.getFatherID(), allowed);
+
+            visitor.visit(person, mother < 0 ? null : persons[mother],
+                    father < 0 ? null : persons[father], generation);
+
+            // Push the father first so the mother's side is walked first, as the recursion did.
+            if (size + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+                generations = Arrays.copyOf(generations, generations.length * 2);
+            }
+            if (father >= 0 && !visited.get(father)) {
+                visited.set(father);
+                stack[size] = father;
+                generations[size++] = generation + 1;
+            }
+            if (mother >= 0 && !visited.get(mother)) {
+                visited.set(mother);
+                stack[size] = mother;
+                generations[size++] = generation + 1;
+            }
+        }
+    }
+
+    // Returns the ordinal of the parent with the given ID, or -1 if unknown or not allowed.
+    private int parent(String personID, BitSet allowed) {
+        Integer ordinal = personID == null ? null : ordinals.get(personID);
+        if (ordinal == null || allowed != null && !allowed.get(ordinal)) {
+            return -1;
+        }
+        return ordinal;
+    }
+}
@@ -0,0 +1,72 @@
+package net.haydenwelton.familymap.data;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Picks the values that pass a test out of a numbered range, value(0) to value(count - 1), keeping their order.
+ * Large ranges are split in halves across a ForkJoinPool down to CHUNK values each, and the halves' matches are
+ * joined left then right, so the result is the same as a single pass from the first value to the last.
+ */
+// Tasks are never serialized; RecursiveTask is only Serializable by inheritance
+@SuppressWarnings("serial")
+final class ParallelMatch extends RecursiveTask<int[]> {
+
+    // Ranges shorter than this are matched on the calling thread; splitting them costs more than it saves
+    static final int THRESHOLD = 32_768;
+    static final int CHUNK = 8_192;
+
+    private final int from;
+    private final int to;
+    private final IntUnaryOperator value;
+    private final IntPredicate test;
+
+    private ParallelMatch(int from, int to, IntUnaryOperator value, IntPredicate test) {
+        this.from = from;
+        this.to = to;
+        this.value = value;
+        this.test = test;
+    }
+
+    // Returns the values that pass the test, in order. With no pool, or a small range, runs on this thread.
+    static int[] match(int count, IntUnaryOperator value, IntPredicate test, ForkJoinPool pool) {
+        if (pool == null || pool.getParallelism() < 2 || count < THRESHOLD) {
+            return matchRange(0, count, value, test);
+        }
+        return pool.invoke(new ParallelMatch(0, count, value, test));
+    }
+
+    @Override
+    protected int[] compute() {
+        if (to - from <= CHUNK) {
+            return matchRange(from, to, value, test);
+        }
+        int middle = (from + to) >>> 1;
+        ParallelMatch left = new ParallelMatch(from, middle, value, test);
+        left.fork();
+        int[] right = new ParallelMatch(middle, to, value, test).compute();
+        int[] matched = left.join();
+
+        int[] joined = Arrays.copyOf(matched, matched.length + right.length);
+        System.arraycopy(right, 0, joined, matched.length, right.length);
+        return joined;
+    }
+
+    private static int[] matchRange(int from, int to, IntUnaryOperator value, IntPredicate test) {
+        int[] matched = new int[Math.min(64, to - from)];
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            int candidate = value.applyAsInt(i);
+            if (test.test(candidate)) {
+                if (size == matched.length) {
+                    matched = Arrays.copyOf(matched, size * 2);
+                }
+                matched[size++] = candidate;
+            }
+        }
+        return size == matched.length ? matched : Arrays.copyOf(matched, size);
+    }
+}
@@ -0,0 +1,157 @@
+package net.haydenwelton.familymap.data;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The American Soundex code of every word of every person's name, so spellings that sound alike (Smith and Smyth,
+ * Meyer and Maier) are found together. Codes are hashed into buckets, each holding its postings as (code, ordinal)
+ * pairs in ordinal order, so the persons with a code are one bucket read with no scan of the names. Words are
+ * read from the folded name keys: a-z letters count, spaces and hyphens end a word and anything else is skipped,
+ * so O'Brien is one word.
+ */
+final class PhoneticIndex {
+
+    // Letter codes for a to z: 0 for vowels and y, which separate repeated codes; -1 for h and w, which don't
+    private static final int[] DIGITS = {
+            0, 1, 2, 3, 0, 1, 2, -1, 0, 2, 2, 4, 5, 5, 0, 1, 2, 6, 2, 3, 0, 1, -1, 2, 0, 2 };
+
+    private final int mask;
+
+    // The postings in bucket b are codes[i] and persons[i] for i from bucketStart[b] up to bucketStart[b + 1]
+    private final int[] bucketStart;
+    private final int[] codes;
+    private final int[] persons;
+
+    PhoneticIndex(SearchKeys names) {
+        int count = names.size();
+        int[][] personCodes = new int[count][];
+        int postings = 0;
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            personCodes[ordinal] = codes(names, ordinal);
+            postings += personCodes[ordinal].length;
+        }
+
+        // About two postings per bucket, and never fewer than 256 buckets
+        int buckets = Integer.highestOneBit(Math.max(256, postings / 2));
+        mask = buckets - 1;
+        bucketStart = new int[buckets + 1];
+        for (int[] personCode : personCodes) {
+            for (int code : personCode) {
+                bucketStart[bucket(code) + 1]++;
+            }
+        }
+        for (int b = 0; b < buckets; b++) {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+
+        codes = new int[postings];
+        persons = new int[postings];
+        int[] next = Arrays.copyOf(bucketStart, buckets);
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            for (int code : personCodes[ordinal]) {
+                int posting = next[bucket(code)]++;
+                codes[posting] = code;
+                persons[posting] = ordinal;
+            }
+        }
+    }
+
+    // Returns the ascending ordinals of the persons with a name word for every word of the query.
+    int[] find(String query) {
+        int[] queryCodes = codes(SearchKeys.of(new String[] { query }), 0);
+        if (queryCodes.length == 0) return new int[0];
+        int[] found = find(queryCodes[0]);
+        for (int i = 1; i < queryCodes.length && found.length > 0; i++) {
+            found = intersect(found, find(queryCodes[i]));
+        }
+        return found;
+    }
+
+    // Returns the ascending ordinals of the persons with a name word of the code.
+    int[] find(int code) {
+        int bucket = bucket(code);
+        int[] found = new int[bucketStart[bucket + 1] - bucketStart[bucket]];
+        int size = 0;
+        for (int i = bucketStart[bucket]; i < bucketStart[bucket + 1]; i++) {
+            if (codes[i] == code) {
+                found[size++] = persons[i];
+            }
+        }
+        return Arrays.copyOf(found, size);
+    }
+
+    // Approximate heap retained by the index.
+    long retainedBytes() {
+        return bucketStart.length * 4L + codes.length * 4L + persons.length * 4L;
+    }
+
+    // The distinct Soundex codes of the words of a key, in the order they first appear.
+    static int[] codes(SearchKeys keys, int record) {
+        int[] found = new int[4];
+        int size = 0;
+        int length = keys.length(record);
+        int code = -1;
+        int last = 0;
+        int digits = 0;
+        for (int i = 0; i <= length; i++) {
+            char ch = i < length ? keys.charAt(record, i) : ' ';
+            if (ch >= 'a' && ch <= 'z') {
+                int digit = DIGITS[ch - 'a'];
+                if (code < 0) {
+                    // The first letter is kept as it is and its code only stops a repeat
+                    code = (ch - 'a') * 1000;
+                    last = digit;
+                }
+                else if (digit == 0) {
+                    last = 0;
+                }
+                else if (digit > 0 && digit != last && digits < 3) {
+                    code += digit * (digits == 0 ? 100 : digits == 1 ? 10 : 1);
+                    digits++;
+                    last = digit;
+                }
+            }
+            else if ((ch == ' ' || ch == '-' || Character.isWhitespace(ch)) && code >= 0) {
+                boolean seen = false;
+                for (int j = 0; j < size && !seen; j++) {
+                    seen = found[j] == code;
+                }
+                if (!seen) {
+                    if (size == found.length) {
+                        found = Arrays.copyOf(found, size * 2);
+                    }
+                    found[size++] = code;
+                }
+                code = -1;
+                digits = 0;
+            }
+        }
+        return Arrays.copyOf(found, size);
+    }
+
+    // Writes a code the usual way, a capital letter and three digits.
+    static String format(int code) {
+        return String.format(Locale.ROOT, "%c%03d", (char) ('A' + code / 1000), code % 1000);
+    }
+
+    private int bucket(int code) {
+        int hash = code * 0x9E3779B1;
+        return (hash ^ hash >>> 16) & mask;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] both = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                both[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(both, size);
+    }
+}
@@ -0,0 +1,233 @@
+package net.haydenwelton.familymap.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * How a SearchQuery is run against one snapshot. Each clause becomes a step that knows how many events it can
+ * let through: type, city and country clauses count the postings of their dictionary ids, year clauses the run of
+ * year postings between the two years, and name clauses the events of the persons the name index finds. Steps run
+ * most selective first: the first one's events are read from its index and the others only check those, or,
+ * when even the first lets through a large share of the events, every event is checked.
+ */
+public final class QueryPlan {
+
+    // The first step's events are read from its index when they are at most 1/SCAN_RATIO of all events
+    private static final int SCAN_RATIO = 8;
+
+    private abstract static class Step {
+        final SearchQuery.Clause clause;
+        final long estimate;
+        final String detail;
+
+        Step(SearchQuery.Clause clause, long estimate, String detail) {
+            this.clause = clause;
+            this.estimate = estimate;
+            this.detail = detail;
+        }
+
+        // The ascending positions of every event that passes, filtered out or not
+        abstract int[] positions();
+
+        abstract boolean test(int position);
+    }
+
+    private final DataSnapshot snapshot;
+    private final List<Step> steps;
+    private final boolean matchesPersons;
+    private final boolean readsIndex;
+
+    private QueryPlan(DataSnapshot snapshot, List<Step> steps, boolean matchesPersons) {
+        this.snapshot = snapshot;
+        this.steps = steps;
+        this.matchesPersons = matchesPersons;
+        this.readsIndex = !steps.isEmpty() &&
+                steps.get(0).estimate <= snapshot.getEventColumns().size() / SCAN_RATIO;
+    }
+
+    // Works out the steps for the query and their order.
+    public static QueryPlan compile(DataSnapshot snapshot, SearchQuery query) {
+        EventTermIndex terms = snapshot.getEventTermIndex();
+        List<Step> steps = new ArrayList<>();
+        boolean matchesPersons = !query.getClauses().isEmpty();
+        for (SearchQuery.Clause clause : query.getClauses()) {
+            switch (clause.getField()) {
+                case TYPE:
+                    steps.add(termStep(clause, terms, terms.matchTypes(clause.getValue()), "type"));
+                    break;
+                case CITY:
+                    steps.add(termStep(clause, terms, terms.matchCities(clause.getValue()), "city"));
+                    break;
+                case COUNTRY:
+                    steps.add(termStep(clause, terms, terms.matchCountries(clause.getValue()), "country"));
+                    break;
+                case YEAR:
+                    steps.add(termStep(clause, terms, terms.matchYears(clause.getFromYear(), clause.getToYear()),
+                            "year"));
+                    break;
+                case NAME:
+                    steps.add(nameStep(clause, snapshot));
+                    break;
+                default:
+                    steps.add(anyStep(clause, termStep(clause, terms, terms.matchTerms(clause.getValue()), "term"),
+                            nameStep(clause, snapshot)));
+                    break;
+            }
+            // Only names can be checked against a person
+            SearchQuery.Field field = clause.getField();
+            matchesPersons &= field == SearchQuery.Field.NAME || field == SearchQuery.Field.ANY;
+        }
+        // A stable sort, so equally selective steps run in the order they were written
+        steps.sort((a, b) -> Long.compare(a.estimate, b.estimate));
+        return new QueryPlan(snapshot, steps, matchesPersons);
+    }
+
+    // Returns the ordinals of the persons whose names match every clause, in ordinal order; none unless
+    // every clause is about names.
+    public int[] findPersons() {
+        if (!matchesPersons) return new int[0];
+        int[] ordinals = null;
+        for (Step step : steps) {
+            String value = step.clause.getValue();
+            ordinals = ordinals == null ? DataProcessor.findPersons(snapshot, value, null) :
+                    DataProcessor.refinePersons(snapshot, ordinals, value, null);
+        }
+        return ordinals;
+    }
+
+    // Returns the ascending positions of the filtered events that pass every step.
+    public int[] findEvents() {
+        if (steps.isEmpty()) return new int[0];
+        int[] candidates;
+        int first;
+        if (readsIndex) {
+            candidates = steps.get(0).positions();
+            first = 1;
+        }
+        else {
+            candidates = null;
+            first = 0;
+        }
+
+        int count = candidates == null ? snapshot.getEventColumns().size() : candidates.length;
+        int[] found = new int[Math.min(count, 64)];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            int position = candidates == null ? i : candidates[i];
+            if (!snapshot.isEventVisible(position) || !passes(position, first)) continue;
+            if (size == found.length) {
+                found = Arrays.copyOf(found, size * 2);
+            }
+            found[size++] = position;
+        }
+        return Arrays.copyOf(found, size);
+    }
+
+    // Describes the steps in the order they run, one per line.
+    public String explain() {
+        StringBuilder text = new StringBuilder();
+        int events = snapshot.getEventColumns().size();
+        if (steps.isEmpty()) {
+            return "no clauses: nothing matches\n";
+        }
+        text.append(String.format(Locale.ROOT, "%s %,d events, then check the other clauses%n",
+                readsIndex ? "read the first clause's index instead of" : "check each of", events));
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            text.append(String.format(Locale.ROOT, "%d. %-24s ~%,d events (%s)%s%n", i + 1, step.clause,
+                    step.estimate, step.detail, i == 0 && readsIndex ? " <- index" : ""));
+        }
+        text.append(matchesPersons ? "persons: names matching every clause\n" :
+                "persons: none, some clauses only apply to events\n");
+        return text.toString();
+    }
+
+    private boolean passes(int position, int first) {
+        for (int i = first; i < steps.size(); i++) {
+            if (!steps.get(i).test(position)) return false;
+        }
+        return true;
+    }
+
+    private static Step termStep(SearchQuery.Clause clause, EventTermIndex terms, boolean[] matches, String kind) {
+        int matched = 0;
+        for (boolean match : matches) {
+            if (match) matched++;
+        }
+        String detail = String.format(Locale.ROOT, "%d %s id%s", matched, kind, matched == 1 ? "" : "s");
+        return new Step(clause, terms.countPostings(matches), detail) {
+            @Override
+            int[] positions() {
+                return terms.findEvents(matches);
+            }
+
+            @Override
+            boolean test(int position) {
+                return terms.matches(matches, position);
+            }
+        };
+    }
+
+    private static Step nameStep(SearchQuery.Clause clause, DataSnapshot snapshot) {
+        int[] ordinals = DataProcessor.findPersons(snapshot, clause.getValue(), null);
+        BitSet persons = new BitSet();
+        long estimate = 0;
+        for (int ordinal : ordinals) {
+            persons.set(ordinal);
+            estimate += snapshot.getPersonEventStart(ordinal + 1) - snapshot.getPersonEventStart(ordinal);
+        }
+        EventColumns columns = snapshot.getEventColumns();
+        String detail = String.format(Locale.ROOT, "%,d person%s", ordinals.length, ordinals.length == 1 ? "" : "s");
+        return new Step(clause, estimate, detail) {
+            @Override
+            int[] positions() {
+                // Each person's events are one run of positions, in ordinal order
+                int[] positions = new int[(int) estimate];
+                int size = 0;
+                for (int ordinal : ordinals) {
+                    int end = snapshot.getPersonEventStart(ordinal + 1);
+                    for (int p = snapshot.getPersonEventStart(ordinal); p < end; p++) {
+                        positions[size++] = p;
+                    }
+                }
+                return positions;
+            }
+
+            @Override
+            boolean test(int position) {
+                int ordinal = columns.getPersonOrdinal(position);
+                return ordinal >= 0 && persons.get(ordinal);
+            }
+        };
+    }
+
+    // Matches events through either of its steps
+    private static Step anyStep(SearchQuery.Clause clause, Step terms, Step names) {
+        return new Step(clause, terms.estimate + names.estimate, terms.detail + " or " + names.detail) {
+            @Override
+            int[] positions() {
+                int[] a = terms.positions();
+                int[] b = names.positions();
+                int[] union = new int[a.length + b.length];
+                int i = 0;
+                int j = 0;
+                int size = 0;
+                while (i < a.length || j < b.length) {
+                    int next = j == b.length || (i < a.length && a[i] <= b[j]) ? a[i] : b[j];
+                    if (i < a.length && a[i] == next) i++;
+                    if (j < b.length && b[j] == next) j++;
+                    union[size++] = next;
+                }
+                return Arrays.copyOf(union, size);
+            }
+
+            @Override
+            boolean test(int position) {
+                return terms.test(position) || names.test(position);
+            }
+        };
+    }
+}
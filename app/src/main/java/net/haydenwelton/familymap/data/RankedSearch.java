@@ -0,0 +1,170 @@
+package net.haydenwelton.familymap.data;
+
+import net.haydenwelton.familymap.model.SearchResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The matches of one query, handed out best first, a page at a time. Persons come before events. Within each,
+ * a match is exact (the query is a whole name, the full name or a whole event field), then prefix (the full
+ * name or a field starts with the query), then word start (the query starts a later word), then any other
+ * substring; ties keep the order of the plain search. Each page is picked with a heap bounded by the page size,
+ * and only the matches on it are turned into SearchResults.
+ */
+public final class RankedSearch {
+
+    static final int EXACT = 0;
+    static final int PREFIX = 1;
+    static final int WORD_START = 2;
+    static final int SUBSTRING = 3;
+    static final int NO_MATCH = 4;
+
+    // Events are ranked after every person by adding this to their rank
+    private static final int EVENT_RANKS = NO_MATCH;
+
+    private final DataSnapshot snapshot;
+    private final String query;
+    private final int[] persons;
+    private final int[] events;
+
+    // The folded query and the rank of every event search term, worked out when first needed
+    private char[] foldedQuery;
+    private int[] termRanks;
+
+    // Keys are rank << 32 | index into persons or events; everything up to lastKey has been handed out
+    private long lastKey = -1;
+    private int returned;
+
+    RankedSearch(DataSnapshot snapshot, String query, int[] persons, int[] events) {
+        this.snapshot = snapshot;
+        this.query = query;
+        this.persons = persons;
+        this.events = events;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    // How many persons and events match altogether
+    public int size() {
+        return persons.length + events.length;
+    }
+
+    // Whether some matches have not been handed out yet
+    public synchronized boolean hasMore() {
+        return returned < size();
+    }
+
+    // Returns up to count of the best matches not handed out yet, best first.
+    public synchronized List<SearchResult> nextPage(int count) {
+        int limit = Math.min(count, size() - returned);
+        List<SearchResult> page = new ArrayList<>(Math.max(0, limit));
+        if (limit <= 0) return page;
+
+        long[] heap = new long[limit];
+        int heapSize = 0;
+        for (int i = 0; i < persons.length; i++) {
+            // Once the page is full, a later person only gets on it by ranking better than the worst entry
+            int below = NO_MATCH;
+            if (heapSize == limit) {
+                below = rankOf(heap[0]);
+                if (below == EXACT) break;
+            }
+            int rank = rankPerson(persons[i], below);
+            if (rank < below) {
+                heapSize = offer(heap, heapSize, key(rank, i));
+            }
+        }
+
+        // Events can only get on a page that persons have not filled
+        if (heapSize < limit || rankOf(heap[0]) >= EVENT_RANKS) {
+            for (int i = 0; i < events.length; i++) {
+                int below = NO_MATCH;
+                if (heapSize == limit) {
+                    below = rankOf(heap[0]) - EVENT_RANKS;
+                    if (below == EXACT) break;
+                }
+                int rank = rankEvent(events[i]);
+                if (rank < below) {
+                    heapSize = offer(heap, heapSize, key(EVENT_RANKS + rank, i));
+                }
+            }
+        }
+
+        // Each result records where the query matched, found from the rank it was given, so the list can
+        // highlight it without searching the text again
+        Arrays.sort(heap, 0, heapSize);
+        for (int i = 0; i < heapSize; i++) {
+            int index = (int) heap[i];
+            int rank = rankOf(heap[i]);
+            if (rank < EVENT_RANKS) {
+                page.add(DataProcessor.personResult(snapshot, persons[index], foldedQuery, rank));
+            }
+            else {
+                page.add(DataProcessor.eventResult(snapshot, events[index], termRanks, foldedQuery));
+            }
+        }
+        if (heapSize > 0) {
+            lastKey = heap[heapSize - 1];
+        }
+        returned += heapSize;
+        return page;
+    }
+
+    // Adds the key to the max-heap unless it is full of better keys, returning the new heap size.
+    // Keys already handed out are never added.
+    private int offer(long[] heap, int size, long key) {
+        if (key <= lastKey) return size;
+        if (size < heap.length) {
+            int child = size;
+            while (child > 0 && heap[(child - 1) / 2] < key) {
+                heap[child] = heap[(child - 1) / 2];
+                child = (child - 1) / 2;
+            }
+            heap[child] = key;
+            return size + 1;
+        }
+        if (key < heap[0]) {
+            int parent = 0;
+            while (true) {
+                int child = 2 * parent + 1;
+                if (child >= size) break;
+                if (child + 1 < size && heap[child + 1] > heap[child]) child++;
+                if (heap[child] <= key) break;
+                heap[parent] = heap[child];
+                parent = child;
+            }
+            heap[parent] = key;
+        }
+        return size;
+    }
+
+    private int rankPerson(int ordinal, int below) {
+        if (foldedQuery == null) {
+            foldedQuery = SearchKeys.fold(query);
+        }
+        // Every match contains the query, so it is at worst a substring
+        return Math.min(SUBSTRING, snapshot.getNameKeys().rank(ordinal, foldedQuery, below));
+    }
+
+    private int rankEvent(int position) {
+        if (termRanks == null) {
+            if (foldedQuery == null) {
+                foldedQuery = SearchKeys.fold(query);
+            }
+            termRanks = snapshot.getEventTermIndex().rankTerms(query);
+        }
+        return Math.min(SUBSTRING, snapshot.getEventTermIndex().rank(termRanks, position));
+    }
+
+    private static long key(int rank, int index) {
+        return (long) rank << 32 | index;
+    }
+
+    private static int rankOf(long key) {
+        return (int) (key >>> 32);
+    }
+}
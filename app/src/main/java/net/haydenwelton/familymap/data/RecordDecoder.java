@@ -0,0 +1,293 @@
+package net.haydenwelton.familymap.data;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import model.Event;
+import model.Person;
+import responses.EventResponse;
+import responses.PersonResponse;
+
+/**
+ * Reads /person and /event responses one record at a time with a JsonReader, into the arrays DataCache keeps.
+ * Gson would collect the records in a list, copy it to an array and give every record its own copy of every
+ * string. Here each record is built as it is read and appended to the array, and strings that repeat from
+ * record to record (usernames, genders, common names, event types, cities, countries and the person IDs of a
+ * person's events) are kept once through a small cache of recent strings, so the decoded data is about the size
+ * of what the cache goes on to hold.
+ */
+public final class RecordDecoder {
+
+    // Recently read strings by hash; a string equal to the one in its slot is replaced by it
+    private static final int SHARED_SLOTS = 1 << 12;
+
+    // Reads single records, where there is nothing to share strings with
+    private static final RecordDecoder UNSHARED = new RecordDecoder(false);
+
+    private final String[] shared;
+
+    private RecordDecoder(boolean share) {
+        shared = share ? new String[SHARED_SLOTS] : null;
+    }
+
+    // Reads a PersonResponse, as Gson would from the same JSON.
+    public static PersonResponse readPersons(Reader reader) throws IOException {
+        return readPersons(lenient(reader));
+    }
+
+    // Reads an EventResponse, as Gson would from the same JSON.
+    public static EventResponse readEvents(Reader reader) throws IOException {
+        return readEvents(lenient(reader));
+    }
+
+    public static PersonResponse readPersons(JsonReader json) throws IOException {
+        RecordDecoder decoder = new RecordDecoder(true);
+        Person[] data = null;
+        String message = null;
+        Boolean success = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "data":
+                    data = decoder.readPersonArray(json);
+                    break;
+                case "message":
+                    message = nextString(json);
+                    break;
+                case "success":
+                    success = nextBoolean(json);
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        return new PersonResponse(data, message, success);
+    }
+
+    public static EventResponse readEvents(JsonReader json) throws IOException {
+        RecordDecoder decoder = new RecordDecoder(true);
+        Event[] data = null;
+        String message = null;
+        Boolean success = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "data":
+                    data = decoder.readEventArray(json);
+                    break;
+                case "message":
+                    message = nextString(json);
+                    break;
+                case "success":
+                    success = nextBoolean(json);
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        return new EventResponse(data, message, success);
+    }
+
+    // Reads one person, or null.
+    public static Person readPerson(JsonReader json) throws IOException {
+        return UNSHARED.nextPerson(json);
+    }
+
+    // Reads one event, or null.
+    public static Event readEvent(JsonReader json) throws IOException {
+        return UNSHARED.nextEvent(json);
+    }
+
+    private Person[] readPersonArray(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        Person[] persons = new Person[1024];
+        int size = 0;
+        json.beginArray();
+        while (json.hasNext()) {
+            if (size == persons.length) {
+                persons = Arrays.copyOf(persons, size * 2);
+            }
+            persons[size++] = nextPerson(json);
+        }
+        json.endArray();
+        return Arrays.copyOf(persons, size);
+    }
+
+    private Person nextPerson(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        String personID = null;
+        String username = null;
+        String firstName = null;
+        String lastName = null;
+        String gender = null;
+        String fatherID = null;
+        String motherID = null;
+        String spouseID = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "personID":
+                    personID = nextString(json);
+                    break;
+                case "associatedUsername":
+                    username = nextString(json, true);
+                    break;
+                case "firstName":
+                    firstName = nextString(json, true);
+                    break;
+                case "lastName":
+                    lastName = nextString(json, true);
+                    break;
+                case "gender":
+                    gender = nextString(json, true);
+                    break;
+                case "fatherID":
+                    fatherID = nextString(json);
+                    break;
+                case "motherID":
+                    motherID = nextString(json);
+                    break;
+                case "spouseID":
+                    spouseID = nextString(json);
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        return new Person(personID, username, firstName, lastName, gender, fatherID, motherID, spouseID);
+    }
+
+    private Event[] readEventArray(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        Event[] events = new Event[1024];
+        int size = 0;
+        json.beginArray();
+        while (json.hasNext()) {
+            if (size == events.length) {
+                events = Arrays.copyOf(events, size * 2);
+            }
+            events[size++] = nextEvent(json);
+        }
+        json.endArray();
+        return Arrays.copyOf(events, size);
+    }
+
+    private Event nextEvent(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        String eventID = null;
+        String username = null;
+        String personID = null;
+        Float latitude = null;
+        Float longitude = null;
+        String country = null;
+        String city = null;
+        String eventType = null;
+        Integer year = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "eventID":
+                    eventID = nextString(json);
+                    break;
+                case "associatedUsername":
+                    username = nextString(json, true);
+                    break;
+                case "personID":
+                    // A person's events usually arrive together, so their IDs are still in the cache
+                    personID = nextString(json, true);
+                    break;
+                case "latitude":
+                    latitude = nextFloat(json);
+                    break;
+                case "longitude":
+                    longitude = nextFloat(json);
+                    break;
+                case "country":
+                    country = nextString(json, true);
+                    break;
+                case "city":
+                    city = nextString(json, true);
+                    break;
+                case "eventType":
+                    eventType = nextString(json, true);
+                    break;
+                case "year":
+                    year = nextInteger(json);
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        return new Event(eventID, username, personID, latitude, longitude, country, city, eventType, year);
+    }
+
+    // Reads a string or null. Strings that tend to repeat are shared with an equal one read recently.
+    private String nextString(JsonReader json, boolean share) throws IOException {
+        String value = nextString(json);
+        if (value == null || !share || shared == null) return value;
+        int hash = value.hashCode();
+        int slot = (hash ^ hash >>> 16) & (SHARED_SLOTS - 1);
+        String recent = shared[slot];
+        if (value.equals(recent)) return recent;
+        shared[slot] = value;
+        return value;
+    }
+
+    static String nextString(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        return json.nextString();
+    }
+
+    private static JsonReader lenient(Reader reader) {
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(true);
+        return json;
+    }
+
+    private static Float nextFloat(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        return (float) json.nextDouble();
+    }
+
+    private static Integer nextInteger(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        return json.nextInt();
+    }
+
+    static Boolean nextBoolean(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        return json.nextBoolean();
+    }
+}
@@ -0,0 +1,175 @@
+package net.haydenwelton.familymap.data;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+
+import model.Person;
+
+/**
+ * The searchable text of many records, folded once when the data is loaded: accents are stripped (José becomes
+ * jose) and case is folded the way String.regionMatches(true, ...) compares characters. All keys share one char
+ * array, key r running from start[r] to start[r + 1], so matching a folded query is a plain scan of chars with
+ * nothing allocated. Name keys are the first name, a space and the last name.
+ */
+final class SearchKeys implements TrigramIndex.Documents {
+
+    private final char[] chars;
+    private final int[] start;
+
+    // For name keys, the length of the folded first name; null for other keys
+    private final int[] firstLengths;
+
+    private SearchKeys(char[] chars, int[] start, int[] firstLengths) {
+        this.chars = chars;
+        this.start = start;
+        this.firstLengths = firstLengths;
+    }
+
+    // Keys for the texts, in the same order; a null text gets an empty key.
+    static SearchKeys of(String[] texts) {
+        int[] start = new int[texts.length + 1];
+        char[][] folded = new char[texts.length][];
+        for (int r = 0; r < texts.length; r++) {
+            folded[r] = texts[r] == null ? new char[0] : fold(texts[r]);
+            start[r + 1] = start[r] + folded[r].length;
+        }
+        char[] chars = new char[start[texts.length]];
+        for (int r = 0; r < texts.length; r++) {
+            System.arraycopy(folded[r], 0, chars, start[r], folded[r].length);
+        }
+        return new SearchKeys(chars, start, null);
+    }
+
+    // Name keys for the persons, by ordinal. Missing names are spelled "null", as string concatenation would.
+    static SearchKeys ofNames(Person[] persons) {
+        int[] start = new int[persons.length + 1];
+        int[] firstLengths = new int[persons.length];
+        char[] chars = new char[16 * persons.length];
+        int size = 0;
+        for (int r = 0; r < persons.length; r++) {
+            char[] first = fold(String.valueOf(persons[r].getFirstName()));
+            char[] last = fold(String.valueOf(persons[r].getLastName()));
+            int length = first.length + 1 + last.length;
+            if (size + length > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, size + length));
+            }
+            System.arraycopy(first, 0, chars, size, first.length);
+            chars[size + first.length] = ' ';
+            System.arraycopy(last, 0, chars, size + first.length + 1, last.length);
+            size += length;
+            firstLengths[r] = first.length;
+            start[r + 1] = size;
+        }
+        return new SearchKeys(Arrays.copyOf(chars, size), start, firstLengths);
+    }
+
+    // Folds text the way keys are folded, so a folded query can be matched against them.
+    static char[] fold(String text) {
+        int length = text.length();
+        boolean ascii = true;
+        for (int i = 0; i < length && ascii; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        String decomposed = ascii ? text : Normalizer.normalize(text, Normalizer.Form.NFD);
+
+        char[] folded = new char[decomposed.length()];
+        int size = 0;
+        for (int i = 0; i < folded.length; i++) {
+            char ch = decomposed.charAt(i);
+            // Decomposition leaves an accent as a combining mark after its letter
+            if (!ascii && Character.getType(ch) == Character.NON_SPACING_MARK) continue;
+            folded[size++] = TrigramIndex.fold(ch);
+        }
+        return size == folded.length ? folded : Arrays.copyOf(folded, size);
+    }
+
+    @Override
+    public int size() {
+        return start.length - 1;
+    }
+
+    @Override
+    public int length(int record) {
+        return start[record + 1] - start[record];
+    }
+
+    @Override
+    public char charAt(int record, int index) {
+        return chars[start[record] + index];
+    }
+
+    // Whether the record's key contains the folded query.
+    boolean contains(int record, char[] query) {
+        int length = query.length;
+        if (length == 0) return true;
+        char first = query[0];
+        for (int i = start[record], last = start[record + 1] - length; i <= last; i++) {
+            if (chars[i] == first && matchesAt(i, query)) return true;
+        }
+        return false;
+    }
+
+    // Ranks how the folded query matches the record's key, from RankedSearch.EXACT (the whole key, or for a name
+    // the whole first or last name) to RankedSearch.SUBSTRING, or NO_MATCH. Ranks of below or worse are not told
+    // apart, so the caller only pays for the distinctions it needs; they come back as below.
+    int rank(int record, char[] query, int below) {
+        if (below <= RankedSearch.EXACT) return below;
+        int from = start[record];
+        int end = start[record + 1];
+        int length = query.length;
+        if (length == end - from && matchesAt(from, query)) return RankedSearch.EXACT;
+        if (firstLengths != null) {
+            int lastFrom = from + firstLengths[record] + 1;
+            if (length == firstLengths[record] && matchesAt(from, query)) return RankedSearch.EXACT;
+            if (length == end - lastFrom && matchesAt(lastFrom, query)) return RankedSearch.EXACT;
+        }
+
+        if (below <= RankedSearch.PREFIX) return below;
+        if (length <= end - from && matchesAt(from, query)) return RankedSearch.PREFIX;
+
+        if (below <= RankedSearch.WORD_START) return below;
+        int best = RankedSearch.NO_MATCH;
+        for (int i = from + 1; i + length <= end; i++) {
+            if (matchesAt(i, query)) {
+                if (!Character.isLetterOrDigit(chars[i - 1])) return RankedSearch.WORD_START;
+                best = RankedSearch.SUBSTRING;
+            }
+        }
+        return Math.min(best, below);
+    }
+
+    // Where in the record's key the match that rank() ranked starts: the whole first or last name for EXACT, the
+    // first word start for WORD_START, the first occurrence otherwise. Returns -1 if the key doesn't contain the query.
+    int matchStart(int record, char[] query, int rank) {
+        int from = start[record];
+        int end = start[record + 1];
+        int length = query.length;
+        if (rank == RankedSearch.EXACT && firstLengths != null) {
+            int lastFrom = from + firstLengths[record] + 1;
+            boolean atStart = length == end - from || length == firstLengths[record] && matchesAt(from, query);
+            if (!atStart && length == end - lastFrom && matchesAt(lastFrom, query)) return lastFrom - from;
+        }
+        int first = -1;
+        for (int i = from; i + length <= end; i++) {
+            if (matchesAt(i, query)) {
+                if (rank != RankedSearch.WORD_START || i > from && !Character.isLetterOrDigit(chars[i - 1])) {
+                    return i - from;
+                }
+                if (first < 0) first = i - from;
+            }
+        }
+        return first;
+    }
+
+    // Approximate heap retained by the keys.
+    long retainedBytes() {
+        return chars.length * 2L + start.length * 4L + (firstLengths == null ? 0 : firstLengths.length * 4L);
+    }
+
+    private boolean matchesAt(int offset, char[] query) {
+        for (int j = 0; j < query.length; j++) {
+            if (chars[offset + j] != query[j]) return false;
+        }
+        return true;
+    }
+}
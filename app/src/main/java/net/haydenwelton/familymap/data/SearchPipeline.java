@@ -0,0 +1,132 @@
+package net.haydenwelton.familymap.data;
+
+import net.haydenwelton.familymap.model.SearchResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs searches for a search box on one long-lived worker thread. Each keystroke supersedes the previous one:
+ * it gets the next generation number, and a search only starts once the text has been still for the debounce
+ * delay. A search whose generation is no longer the latest is dropped before it starts and again before its
+ * results are published. Results are ranked best first and published a page at a time: the first page when the
+ * search finishes, and another, appended to what was shown, each time loadMore asks for it. Every publication
+ * is a new list handed over, unmodifiable, to the listener, so nothing else ever sees a list while it is being
+ * filled.
+ */
+public final class SearchPipeline {
+
+    // How many results are added to what is shown at a time
+    public static final int PAGE_SIZE = 100;
+
+    public interface Listener {
+        // Called on the worker thread with the results of the latest query shown so far, best first.
+        void onResults(int generation, String query, List<SearchResult> results);
+    }
+
+    private final long debounceMillis;
+    private final Listener listener;
+    private final SearchSession session = new SearchSession(ForkJoinPool.commonPool());
+    private final AtomicInteger generation = new AtomicInteger();
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The search waiting out the debounce delay; only touched by the thread calling submit
+    private ScheduledFuture<?> pending;
+
+    // Whether queries are names to match by sound rather than text to find
+    private volatile boolean soundsLike;
+
+    // The latest search run and the results published for it; only touched on the worker
+    private RankedSearch ranked;
+    private int rankedGeneration;
+    private List<SearchResult> shown = Collections.emptyList();
+
+    public SearchPipeline(long debounceMillis, Listener listener) {
+        this.debounceMillis = debounceMillis;
+        this.listener = listener;
+    }
+
+    // Searches for the query once typing pauses, superseding any search not yet published.
+    // Returns the generation of this query.
+    public int submit(String query) {
+        int current = generation.incrementAndGet();
+        boolean phonetic = soundsLike;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = worker.schedule(() -> search(current, query, phonetic), debounceMillis, TimeUnit.MILLISECONDS);
+        return current;
+    }
+
+    // Makes later queries find persons whose names sound like them; see DataProcessor.searchSoundsLike.
+    public void setSoundsLike(boolean soundsLike) {
+        this.soundsLike = soundsLike;
+    }
+
+    // Publishes the next page of the latest query's results, if the listener was given the shown results and
+    // there are more. Calls for results that were already extended, or have been superseded, do nothing.
+    public void loadMore(int shownCount) {
+        if (worker.isShutdown()) return;
+        int current = generation.get();
+        worker.execute(() -> {
+            if (ranked == null || rankedGeneration != current || current != generation.get()) return;
+            if (shownCount != shown.size() || !ranked.hasMore()) return;
+            List<SearchResult> results = new ArrayList<>(shown);
+            results.addAll(ranked.nextPage(PAGE_SIZE));
+            publish(current, results);
+        });
+    }
+
+    // Runs tasks on the search worker after the work already queued there, such as working out how published
+    // results differ from the ones shown. Tasks handed over after shutdown are dropped.
+    public Executor getExecutor() {
+        return task -> {
+            try {
+                worker.execute(task);
+            }
+            catch (RejectedExecutionException e) {
+                // Shut down; nothing is shown any more
+            }
+        };
+    }
+
+    // The generation of the latest query; results of any other generation are stale.
+    public int getGeneration() {
+        return generation.get();
+    }
+
+    public void shutdown() {
+        generation.incrementAndGet();
+        worker.shutdownNow();
+    }
+
+    private void search(int searchGeneration, String query, boolean phonetic) {
+        if (searchGeneration != generation.get()) return;
+
+        ranked = phonetic ? DataProcessor.searchSoundsLike(query) : session.rank(query);
+        rankedGeneration = searchGeneration;
+        shown = Collections.emptyList();
+        List<SearchResult> results = ranked.nextPage(PAGE_SIZE);
+
+        if (searchGeneration != generation.get()) return;
+        publish(searchGeneration, results);
+    }
+
+    private void publish(int searchGeneration, List<SearchResult> results) {
+        shown = Collections.unmodifiableList(results);
+        listener.onResults(searchGeneration, ranked.getQuery(), shown);
+    }
+}
@@ -0,0 +1,148 @@
+package net.haydenwelton.familymap.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A search box query made of field clauses, such as {@code type:birth year:1850..1900 country:Ireland
+ * name:o'brien}. Fields are type, city, country and name, which match values containing the given text ignoring
+ * case, and year, which takes a year or a range (1850..1900, 1850.., ..1900). A value with spaces is quoted:
+ * {@code country:"united states"}. Words without a field match any of them. Every clause has to hold.
+ */
+public final class SearchQuery {
+
+    public enum Field { TYPE, YEAR, CITY, COUNTRY, NAME, ANY }
+
+    public static final class Clause {
+        private final Field field;
+        private final String value;
+        private final int fromYear;
+        private final int toYear;
+
+        private Clause(Field field, String value, int fromYear, int toYear) {
+            this.field = field;
+            this.value = value;
+            this.fromYear = fromYear;
+            this.toYear = toYear;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        // The first and last year of a year clause; a clause whose year can't be read has fromYear > toYear
+        public int getFromYear() {
+            return fromYear;
+        }
+
+        public int getToYear() {
+            return toYear;
+        }
+
+        @Override
+        public String toString() {
+            String text = value.indexOf(' ') >= 0 ? "\"" + value + "\"" : value;
+            return field == Field.ANY ? text : field.name().toLowerCase(Locale.ROOT) + ":" + text;
+        }
+    }
+
+    private final List<Clause> clauses;
+
+    private SearchQuery(List<Clause> clauses) {
+        this.clauses = Collections.unmodifiableList(clauses);
+    }
+
+    public List<Clause> getClauses() {
+        return clauses;
+    }
+
+    // Reads a structured query, or returns null if the text has no field clause and is a plain search.
+    // Clauses with nothing after the colon yet are left out.
+    public static SearchQuery parse(String text) {
+        List<Clause> clauses = new ArrayList<>();
+        boolean structured = false;
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                i++;
+                continue;
+            }
+
+            // A word runs to the next space outside quotes
+            StringBuilder word = new StringBuilder();
+            Field field = null;
+            boolean quoted = false;
+            while (i < length && (quoted || !Character.isWhitespace(text.charAt(i)))) {
+                char ch = text.charAt(i++);
+                if (ch == '"') {
+                    quoted = !quoted;
+                }
+                else if (ch == ':' && field == null && !quoted) {
+                    field = field(word.toString());
+                    if (field != null) {
+                        word.setLength(0);
+                    }
+                    else {
+                        word.append(ch);
+                    }
+                }
+                else {
+                    word.append(ch);
+                }
+            }
+
+            structured |= field != null;
+            String value = word.toString().trim();
+            if (value.isEmpty()) continue;
+            if (field == Field.YEAR) {
+                clauses.add(yearClause(value));
+            }
+            else {
+                clauses.add(new Clause(field == null ? Field.ANY : field, value, 0, -1));
+            }
+        }
+        return structured ? new SearchQuery(clauses) : null;
+    }
+
+    private static Field field(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "type":
+                return Field.TYPE;
+            case "year":
+                return Field.YEAR;
+            case "city":
+                return Field.CITY;
+            case "country":
+                return Field.COUNTRY;
+            case "name":
+                return Field.NAME;
+            default:
+                return null;
+        }
+    }
+
+    private static Clause yearClause(String value) {
+        int range = value.indexOf("..");
+        try {
+            if (range < 0) {
+                int year = Integer.parseInt(value);
+                return new Clause(Field.YEAR, value, year, year);
+            }
+            String from = value.substring(0, range).trim();
+            String to = value.substring(range + 2).trim();
+            return new Clause(Field.YEAR, value,
+                    from.isEmpty() ? Integer.MIN_VALUE : Integer.parseInt(from),
+                    to.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(to));
+        }
+        catch (NumberFormatException e) {
+            return new Clause(Field.YEAR, value, 0, -1);
+        }
+    }
+}
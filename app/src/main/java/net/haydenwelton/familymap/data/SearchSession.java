@@ -0,0 +1,130 @@
+package net.haydenwelton.familymap.data;
+
+import net.haydenwelton.familymap.model.SearchResult;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Searches persons and events like DataProcessor.searchPersons and searchEvents, remembering the matches of
+ * recent queries. Anything that contains a query also contains every part of it, so when a new query contains
+ * a remembered one (the user typed another letter, or deleted back to a longer query's prefix and typed again)
+ * only that query's matches are checked, or the index's candidates when those are fewer. Deleting back to a
+ * remembered query reuses its matches as they are.
+ * The memory is dropped whenever the cached data or filter changes.
+ */
+public final class SearchSession {
+
+    // Matches are remembered for up to this many recent queries, and up to about 1/32 of the heap,
+    // least recently used dropped first; the latest query is always kept
+    private static final int MAX_QUERIES = 32;
+    private static final long BUDGET_BYTES = Runtime.getRuntime().maxMemory() / 32;
+
+    private static final class Matches {
+        final int[] persons;
+        final int[] events;
+
+        Matches(int[] persons, int[] events) {
+            this.persons = persons;
+            this.events = events;
+        }
+
+        long retainedBytes() {
+            return persons.length * 4L + events.length * 4L + 64;
+        }
+    }
+
+    private final LinkedHashMap<String, Matches> history = new LinkedHashMap<>(MAX_QUERIES, 0.75f, true);
+    private final ForkJoinPool pool;
+    private long retainedBytes;
+    private DataSnapshot snapshot;
+
+    // A session that searches on the calling thread.
+    public SearchSession() {
+        this(null);
+    }
+
+    // A session that splits large searches across the pool's threads.
+    public SearchSession(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Adds the persons and then the events matching the query to results, in the same order as DataProcessor.
+    public synchronized void search(List<SearchResult> results, String query) {
+        if (query.isEmpty() || query.trim().isEmpty()) return;
+        DataSnapshot current = DataCache.getInstance().getSnapshot();
+        if (current != snapshot) {
+            clear();
+            snapshot = current;
+        }
+
+        Matches matches = find(query);
+        DataProcessor.addPersonResults(results, snapshot, matches.persons);
+        DataProcessor.addEventResults(results, snapshot, matches.events);
+    }
+
+    // Ranks the persons and events matching the query best first, as DataProcessor.searchRanked does.
+    public synchronized RankedSearch rank(String query) {
+        DataSnapshot current = DataCache.getInstance().getSnapshot();
+        if (query.isEmpty() || query.trim().isEmpty()) {
+            return new RankedSearch(current, query, new int[0], new int[0]);
+        }
+        if (current != snapshot) {
+            clear();
+            snapshot = current;
+        }
+
+        // Field clauses don't narrow the way substrings do, so structured queries are run afresh from the indexes
+        SearchQuery structured = SearchQuery.parse(query);
+        if (structured != null) {
+            return DataProcessor.searchStructured(snapshot, query, structured);
+        }
+
+        Matches matches = find(query);
+        return new RankedSearch(snapshot, query, matches.persons, matches.events);
+    }
+
+    public synchronized void clear() {
+        history.clear();
+        retainedBytes = 0;
+        snapshot = null;
+    }
+
+    private Matches find(String query) {
+        // Queries that fold to the same key, differing only in case or accents, share an entry
+        String key = new String(SearchKeys.fold(query));
+        Matches matches = history.get(key);
+        if (matches != null) return matches;
+
+        // Refine the matches of the longest remembered query that this one contains
+        Matches ancestor = null;
+        int ancestorLength = -1;
+        for (Map.Entry<String, Matches> entry : history.entrySet()) {
+            String remembered = entry.getKey();
+            if (remembered.length() > ancestorLength && key.contains(remembered)) {
+                ancestor = entry.getValue();
+                ancestorLength = remembered.length();
+            }
+        }
+        if (ancestor != null) {
+            matches = new Matches(DataProcessor.narrowPersons(snapshot, ancestor.persons, query, pool),
+                    DataProcessor.narrowEvents(snapshot, ancestor.events, query, pool));
+        }
+        else {
+            matches = new Matches(DataProcessor.findPersons(snapshot, query, pool),
+                    DataProcessor.findEvents(snapshot, query, pool));
+        }
+
+        history.put(key, matches);
+        retainedBytes += matches.retainedBytes();
+        Iterator<Matches> eldest = history.values().iterator();
+        while (history.size() > 1 && (history.size() > MAX_QUERIES || retainedBytes > BUDGET_BYTES)) {
+            retainedBytes -= eldest.next().retainedBytes();
+            eldest.remove();
+        }
+        return matches;
+    }
+}
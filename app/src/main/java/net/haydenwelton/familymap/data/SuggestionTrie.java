@@ -0,0 +1,304 @@
+package net.haydenwelton.familymap.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import model.Person;
+
+/**
+ * Completions for the start of a search: the first and last names of the persons and the event types, cities and
+ * countries, each weighted by how many persons or events carry it. Texts are folded the way search keys are and
+ * merged when they fold the same. The folded texts form a compressed prefix trie: a node stands for a prefix
+ * shared by a run of texts in dictionary order, and knows the heaviest text below it, so the heaviest completions
+ * of a prefix are found by walking down to the prefix's node and then best first through the nodes below it,
+ * without looking at the lighter texts at all.
+ */
+public final class SuggestionTrie {
+
+    // The distinct folded texts in dictionary order, text k running from keyStart[k] to keyStart[k + 1]
+    private final char[] keys;
+    private final int[] keyStart;
+
+    // The text shown for each folded text (the first one seen), and its weight
+    private final char[] texts;
+    private final int[] textStart;
+    private final int[] weights;
+
+    // Nodes in breadth-first order, the root first, so the children of node n are the nodes childStart[n] up to
+    // childStart[n + 1], in dictionary order. Node n stands for the first depth[n] chars of the texts from
+    // first[n] on; its own text, if it has one, is text first[n], and best[n] is the heaviest text below it.
+    private final int[] first;
+    private final int[] depth;
+    private final int[] childStart;
+    private final int[] best;
+
+    // Builds the trie from texts and their weights; texts that fold the same are merged and their weights added.
+    // Null and blank texts are left out.
+    public SuggestionTrie(String[] texts, int[] weights) {
+        HashMap<String, Integer> ids = new HashMap<>(texts.length * 4 / 3 + 1);
+        ArrayList<String> folded = new ArrayList<>();
+        ArrayList<String> shown = new ArrayList<>();
+        int[] merged = new int[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            if (texts[i] == null || texts[i].trim().isEmpty()) continue;
+            String key = new String(SearchKeys.fold(texts[i].trim()));
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = folded.size();
+                ids.put(key, id);
+                folded.add(key);
+                shown.add(texts[i].trim());
+            }
+            merged[id] += weights[i];
+        }
+
+        Integer[] order = new Integer[folded.size()];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> folded.get(a).compareTo(folded.get(b)));
+
+        int count = order.length;
+        keyStart = new int[count + 1];
+        textStart = new int[count + 1];
+        this.weights = new int[count];
+        for (int k = 0; k < count; k++) {
+            keyStart[k + 1] = keyStart[k] + folded.get(order[k]).length();
+            textStart[k + 1] = textStart[k] + shown.get(order[k]).length();
+            this.weights[k] = merged[order[k]];
+        }
+        keys = new char[keyStart[count]];
+        this.texts = new char[textStart[count]];
+        for (int k = 0; k < count; k++) {
+            folded.get(order[k]).getChars(0, keyStart[k + 1] - keyStart[k], keys, keyStart[k]);
+            shown.get(order[k]).getChars(0, textStart[k + 1] - textStart[k], this.texts, textStart[k]);
+        }
+
+        // A trie with n texts has at most 2n nodes besides the root: every node without a text of its own
+        // has at least two children
+        int[] first = new int[2 * count + 1];
+        int[] end = new int[2 * count + 1];
+        int[] depth = new int[2 * count + 1];
+        int[] childStart = new int[2 * count + 2];
+        int nodes = 1;
+        end[0] = count;
+        for (int node = 0; node < nodes; node++) {
+            childStart[node] = nodes;
+            int from = first[node];
+            int d = depth[node];
+            if (from < end[node] && length(from) == d) from++;
+
+            // Split the rest by their next char; each run becomes a child as deep as the prefix its texts share
+            while (from < end[node]) {
+                char next = charAt(from, d);
+                int to = from + 1;
+                while (to < end[node] && charAt(to, d) == next) to++;
+                first[nodes] = from;
+                end[nodes] = to;
+                depth[nodes] = commonPrefix(from, to - 1, d + 1);
+                nodes++;
+                from = to;
+            }
+        }
+        childStart[nodes] = nodes;
+
+        int[] best = new int[nodes];
+        for (int node = nodes - 1; node >= 0; node--) {
+            best[node] = first[node] < count && length(first[node]) == depth[node] ? first[node] : -1;
+            for (int child = childStart[node]; child < childStart[node + 1]; child++) {
+                if (best[node] < 0 || heavier(best[child], best[node])) {
+                    best[node] = best[child];
+                }
+            }
+        }
+
+        this.first = Arrays.copyOf(first, nodes);
+        this.depth = Arrays.copyOf(depth, nodes);
+        this.childStart = Arrays.copyOf(childStart, nodes + 1);
+        this.best = best;
+    }
+
+    // The completions of the names of the persons and the event types, cities and countries of the events.
+    // Either may be null when it isn't loaded yet.
+    static SuggestionTrie of(Person[] persons, EventColumns events) {
+        int personTexts = persons == null ? 0 : 2 * persons.length;
+        int types = events == null ? 0 : events.getEventTypeCount();
+        int cities = events == null ? 0 : events.getCityCount();
+        int countries = events == null ? 0 : events.getCountryCount();
+        String[] texts = new String[personTexts + types + cities + countries];
+        int[] weights = new int[texts.length];
+
+        for (int i = 0; i < personTexts / 2; i++) {
+            texts[2 * i] = persons[i].getFirstName();
+            texts[2 * i + 1] = persons[i].getLastName();
+            weights[2 * i] = 1;
+            weights[2 * i + 1] = 1;
+        }
+        if (events != null) {
+            int cityOffset = personTexts + types;
+            int countryOffset = cityOffset + cities;
+            for (int id = 0; id < types; id++) {
+                texts[personTexts + id] = events.getEventTypeName(id);
+            }
+            for (int id = 0; id < cities; id++) {
+                texts[cityOffset + id] = events.getCityName(id);
+            }
+            for (int id = 0; id < countries; id++) {
+                texts[countryOffset + id] = events.getCountryName(id);
+            }
+            for (int position = 0; position < events.size(); position++) {
+                weights[personTexts + events.getEventTypeId(position)]++;
+                weights[cityOffset + events.getCityId(position)]++;
+                weights[countryOffset + events.getCountryId(position)]++;
+            }
+        }
+        return new SuggestionTrie(texts, weights);
+    }
+
+    // Returns up to limit texts starting with the prefix, ignoring case and accents, heaviest first and in
+    // dictionary order among equal weights.
+    public List<String> complete(String prefix, int limit) {
+        int node = find(SearchKeys.fold(prefix));
+        if (node < 0 || limit <= 0) return Collections.emptyList();
+
+        List<String> found = new ArrayList<>(Math.min(limit, 16));
+        Frontier frontier = new Frontier();
+        frontier.push(priority(best[node]), node);
+        while (found.size() < limit && !frontier.isEmpty()) {
+            int item = frontier.pop();
+            if (item < 0) {
+                found.add(text(~item));
+                continue;
+            }
+            // A node's own text waits its turn among its children; texts are pushed as ~text
+            int own = first[item];
+            if (childStart[item] == childStart[item + 1]) {
+                found.add(text(own));
+                continue;
+            }
+            if (length(own) == depth[item]) {
+                frontier.push(priority(own), ~own);
+            }
+            for (int child = childStart[item]; child < childStart[item + 1]; child++) {
+                frontier.push(priority(best[child]), child);
+            }
+        }
+        return found;
+    }
+
+    // The number of distinct folded texts.
+    public int size() {
+        return weights.length;
+    }
+
+    // Approximate heap retained by the trie.
+    public long retainedBytes() {
+        return keys.length * 2L + texts.length * 2L + (keyStart.length + textStart.length + weights.length) * 4L +
+                (first.length + depth.length + childStart.length + best.length) * 4L;
+    }
+
+    // Returns the node standing for the shortest prefix the folded query starts, or -1 if no text starts with it.
+    private int find(char[] query) {
+        if (weights.length == 0) return -1;
+        int node = 0;
+        while (depth[node] < query.length) {
+            int child = child(node, query[depth[node]]);
+            if (child < 0) return -1;
+            int key = first[child];
+            for (int i = depth[node] + 1; i < Math.min(depth[child], query.length); i++) {
+                if (charAt(key, i) != query[i]) return -1;
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    // Binary searches the node's children for the one whose texts have the char after the node's prefix.
+    private int child(int node, char next) {
+        int low = childStart[node];
+        int high = childStart[node + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char ch = charAt(first[middle], depth[node]);
+            if (ch < next) low = middle + 1;
+            else if (ch > next) high = middle - 1;
+            else return middle;
+        }
+        return -1;
+    }
+
+    // Heavier texts first, then the earlier in dictionary order
+    private long priority(int key) {
+        return (long) (Integer.MAX_VALUE - weights[key]) << 32 | key;
+    }
+
+    private boolean heavier(int a, int b) {
+        return priority(a) < priority(b);
+    }
+
+    private int commonPrefix(int a, int b, int from) {
+        int length = Math.min(length(a), length(b));
+        int i = from;
+        while (i < length && charAt(a, i) == charAt(b, i)) i++;
+        return i;
+    }
+
+    private int length(int key) {
+        return keyStart[key + 1] - keyStart[key];
+    }
+
+    private char charAt(int key, int index) {
+        return keys[keyStart[key] + index];
+    }
+
+    private String text(int key) {
+        return new String(texts, textStart[key], textStart[key + 1] - textStart[key]);
+    }
+
+    // A binary min-heap of trie items by priority
+    private static final class Frontier {
+        private long[] priorities = new long[32];
+        private int[] items = new int[32];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(long priority, int item) {
+            if (size == items.length) {
+                priorities = Arrays.copyOf(priorities, size * 2);
+                items = Arrays.copyOf(items, size * 2);
+            }
+            int i = size++;
+            while (i > 0 && priorities[(i - 1) / 2] > priority) {
+                priorities[i] = priorities[(i - 1) / 2];
+                items[i] = items[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            priorities[i] = priority;
+            items[i] = item;
+        }
+
+        int pop() {
+            int top = items[0];
+            long priority = priorities[--size];
+            int item = items[size];
+            int i = 0;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && priorities[child + 1] < priorities[child]) child++;
+                if (priorities[child] >= priority) break;
+                priorities[i] = priorities[child];
+                items[i] = items[child];
+                i = child;
+            }
+            priorities[i] = priority;
+            items[i] = item;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package net.haydenwelton.familymap.data;
+
+import java.util.Arrays;
+
+/**
+ * An inverted index from character trigrams to the documents (persons, search terms) containing them. Documents
+ * and queries are SearchKeys-folded text, so trigrams are compared exactly.
+ * Trigrams are hashed into a fixed number of buckets, each holding the ascending, distinct ids of the documents
+ * that contain a trigram in that bucket. A substring query of three or more characters intersects the buckets
+ * of its trigrams; the survivors are candidates only, since two trigrams may share a bucket, and callers verify
+ * them with the real comparison.
+ */
+final class TrigramIndex {
+
+    // The text of the indexed documents, read one character at a time so nothing is concatenated
+    interface Documents {
+        int size();
+
+        int length(int document);
+
+        char charAt(int document, int index);
+    }
+
+    static final int GRAM = 3;
+
+    private final int mask;
+
+    // The documents in bucket b are documents[bucketStart[b]] up to documents[bucketStart[b + 1]]
+    private final int[] bucketStart;
+    private final int[] documents;
+
+    TrigramIndex(Documents source) {
+        int count = source.size();
+        long trigrams = 0;
+        for (int d = 0; d < count; d++) {
+            trigrams += Math.max(0, source.length(d) - GRAM + 1);
+        }
+        // About four trigram occurrences per bucket, and never fewer than 1024 buckets
+        int buckets = Integer.highestOneBit((int) Math.min(1 << 22, Math.max(1024, trigrams / 4)));
+        mask = buckets - 1;
+
+        // Count, then fill, skipping a document already added to the bucket
+        bucketStart = new int[buckets + 1];
+        int[] last = new int[buckets];
+        Arrays.fill(last, -1);
+        for (int d = 0; d < count; d++) {
+            int length = source.length(d);
+            for (int i = 0; i + GRAM <= length; i++) {
+                int bucket = bucket(source.charAt(d, i), source.charAt(d, i + 1), source.charAt(d, i + 2));
+                if (last[bucket] != d) {
+                    last[bucket] = d;
+                    bucketStart[bucket + 1]++;
+                }
+            }
+        }
+        for (int b = 0; b < buckets; b++) {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+
+        documents = new int[bucketStart[buckets]];
+        int[] next = Arrays.copyOf(bucketStart, buckets);
+        Arrays.fill(last, -1);
+        for (int d = 0; d < count; d++) {
+            int length = source.length(d);
+            for (int i = 0; i + GRAM <= length; i++) {
+                int bucket = bucket(source.charAt(d, i), source.charAt(d, i + 1), source.charAt(d, i + 2));
+                if (last[bucket] != d) {
+                    last[bucket] = d;
+                    documents[next[bucket]++] = d;
+                }
+            }
+        }
+    }
+
+    // Whether the folded query is long enough to be looked up; shorter queries have to be checked against every
+    // document.
+    static boolean canSearch(char[] query) {
+        return query.length >= GRAM;
+    }
+
+    // Returns at least as many documents as candidates would: the size of the query's smallest bucket.
+    int maxCandidates(char[] query) {
+        int smallest = Integer.MAX_VALUE;
+        for (int i = 0; i + GRAM <= query.length; i++) {
+            smallest = Math.min(smallest, bucketSize(bucket(query[i], query[i + 1], query[i + 2])));
+        }
+        return smallest;
+    }
+
+    // Returns the ascending ids of the documents that may contain the folded query.
+    int[] candidates(char[] query) {
+        int grams = query.length - GRAM + 1;
+        int[] buckets = new int[grams];
+        for (int i = 0; i < grams; i++) {
+            buckets[i] = bucket(query[i], query[i + 1], query[i + 2]);
+        }
+
+        // Intersect the smallest bucket with the others, smallest first
+        Arrays.sort(buckets);
+        int distinct = 0;
+        for (int i = 0; i < grams; i++) {
+            if (i == 0 || buckets[i] != buckets[i - 1]) {
+                buckets[distinct++] = buckets[i];
+            }
+        }
+        long[] bySize = new long[distinct];
+        for (int i = 0; i < distinct; i++) {
+            bySize[i] = (long) bucketSize(buckets[i]) << 32 | buckets[i];
+        }
+        Arrays.sort(bySize);
+
+        int first = (int) bySize[0];
+        int[] result = Arrays.copyOfRange(documents, bucketStart[first], bucketStart[first + 1]);
+        int size = result.length;
+        for (int i = 1; i < distinct && size > 0; i++) {
+            size = intersect(result, size, (int) bySize[i]);
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    // Approximate heap retained by the index.
+    long retainedBytes() {
+        return bucketStart.length * 4L + documents.length * 4L;
+    }
+
+    // Keeps the first size entries of result that also appear in the bucket, returning how many are left.
+    private int intersect(int[] result, int size, int bucket) {
+        int kept = 0;
+        int j = bucketStart[bucket];
+        int end = bucketStart[bucket + 1];
+        for (int i = 0; i < size && j < end; i++) {
+            while (j < end && documents[j] < result[i]) {
+                j++;
+            }
+            if (j < end && documents[j] == result[i]) {
+                result[kept++] = result[i];
+            }
+        }
+        return kept;
+    }
+
+    private int bucketSize(int bucket) {
+        return bucketStart[bucket + 1] - bucketStart[bucket];
+    }
+
+    private int bucket(char a, char b, char c) {
+        int hash = (a * 31 + b) * 31 + c;
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return hash & mask;
+    }
+
+    // Folds case the way String.regionMatches(true, ...) compares characters.
+    static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
@@ -8,28 +8,81 @@ import model.Person;
 public class SearchResult {
     public enum Type { PERSON, EVENT }
 
+    // The field a query matched in: the person's name, or the event's type, city, country or year
+    public static final int NAME = 1;
+    public static final int EVENT_TYPE = 2;
+    public static final int CITY = 3;
+    public static final int COUNTRY = 4;
+    public static final int YEAR = 5;
+
+    // A match packs its field, then its start and length in the main info, 24 bits each, into one long
+    public static final long NO_MATCH = 0;
+
     private final Type type;
     private final String id;
-    private final String mainInfo;
     private final String subInfo;
     private final String gender;
+    private final long match;
+
+    // The event's line is only formatted when it is first shown
+    private final Event event;
+    private String mainInfo;
 
     public SearchResult(Person person) {
+        this(person, -1, 0);
+    }
+
+    // A person whose name matched the query at matchStart, or nowhere to highlight if matchStart is negative
+    public SearchResult(Person person, int matchStart, int matchLength) {
         this.type = Type.PERSON;
         this.id = person.getPersonID();
         this.mainInfo = person.getFirstName() + " " + person.getLastName();
         this.subInfo = null;
         this.gender = person.getGender();
+        this.event = null;
+        this.match = matchStart < 0 ? NO_MATCH : packMatch(NAME, matchStart, matchLength);
     }
 
     public SearchResult(Event event, String firstName, String lastName) {
+        this(event, firstName, lastName, 0, -1, 0);
+    }
+
+    // An event whose field matched the query at matchStart within the field, or nowhere to highlight if
+    // matchStart is negative. The match is moved to where the field is in the main info, so the main info of a
+    // matched event is formatted straight away.
+    public SearchResult(Event event, String firstName, String lastName, int field, int matchStart, int matchLength) {
         this.type = Type.EVENT;
         this.id = event.getEventID();
-        this.mainInfo = event.getEventType().toUpperCase(Locale.ROOT) + ": " +
-                event.getCity() + ", " + event.getCountry() + " (" +
-                event.getYear() + ")";
+        this.event = event;
         this.subInfo = firstName + " " + lastName;
         this.gender = null;
+        if (matchStart < 0) {
+            this.match = NO_MATCH;
+            return;
+        }
+        String eventType = String.valueOf(event.getEventType());
+        String shownType = eventType.toUpperCase(Locale.ROOT);
+        String city = String.valueOf(event.getCity());
+        String country = String.valueOf(event.getCountry());
+        this.mainInfo = format(shownType, city, country, event.getYear());
+
+        int fieldStart;
+        if (field == EVENT_TYPE) {
+            // Upper-casing can change the type's length, and then the match no longer lines up with it
+            fieldStart = shownType.length() == eventType.length() ? 0 : -1;
+        }
+        else if (field == CITY) {
+            fieldStart = shownType.length() + ": ".length();
+        }
+        else if (field == COUNTRY) {
+            fieldStart = shownType.length() + ": ".length() + city.length() + ", ".length();
+        }
+        else {
+            fieldStart = shownType.length() + ": ".length() + city.length() + ", ".length() + country.length() +
+                    " (".length();
+        }
+        boolean inside = fieldStart >= 0 && fieldStart + matchStart + matchLength <= mainInfo.length();
+        this.match = inside ? packMatch(field, fieldStart + matchStart, matchLength) : NO_MATCH;
     }
 
     public Type getType() {
@@ -40,10 +93,29 @@ public class SearchResult {
         return id;
     }
 
+    // An id for the list that stays the same for the same person or event across searches and data reloads:
+    // a 64-bit FNV-1a hash of the type and ID.
+    public long getStableId() {
+        long hash = 0xcbf29ce484222325L ^ type.ordinal();
+        for (int i = 0; i < id.length(); i++) {
+            hash = (hash ^ id.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
     public String getMainInfo() {
+        if (mainInfo == null) {
+            mainInfo = format(String.valueOf(event.getEventType()).toUpperCase(Locale.ROOT), event.getCity(),
+                    event.getCountry(), event.getYear());
+        }
         return mainInfo;
     }
 
+    // An event's line: missing values are shown as "null", as they always have been
+    private static String format(String shownType, String city, String country, Integer year) {
+        return shownType + ": " + city + ", " + country + " (" + year + ")";
+    }
+
     public String getSubInfo() {
         return subInfo;
     }
@@ -51,4 +123,25 @@ public class SearchResult {
     public String getGender() {
         return gender;
     }
+
+    // Where the query matched, to be read with matchField, matchStart and matchLength; NO_MATCH if nowhere.
+    public long getMatch() {
+        return match;
+    }
+
+    public static long packMatch(int field, int start, int length) {
+        return (long) field << 48 | (long) (start & 0xFFFFFF) << 24 | length & 0xFFFFFF;
+    }
+
+    public static int matchField(long match) {
+        return (int) (match >>> 48);
+    }
+
+    public static int matchStart(long match) {
+        return (int) (match >>> 24) & 0xFFFFFF;
+    }
+
+    public static int matchLength(long match) {
+        return (int) match & 0xFFFFFF;
+    }
 }
@@ -0,0 +1,14 @@
+package net.haydenwelton.familymap;
+
+import org.junit.Assume;
+
+// Timing comparisons only mean something on a quiet machine, so they are skipped unless asked for with
+// ./gradlew test -Pbenchmarks=true. They print what they measure; the rest of the suite stays quiet.
+public final class Benchmarks {
+
+    private Benchmarks() {}
+
+    public static void assumeEnabled() {
+        Assume.assumeTrue("benchmarks are off", Boolean.getBoolean("benchmarks"));
+    }
+}
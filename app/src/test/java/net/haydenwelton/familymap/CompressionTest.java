@@ -0,0 +1,217 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import net.haydenwelton.familymap.data.DataCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import model.AuthToken;
+import requests.LoginRequest;
+import requests.RegisterRequest;
+import responses.ClearResponse;
+import responses.EventResponse;
+import responses.LoginResponse;
+import responses.PersonResponse;
+import responses.RegisterResponse;
+
+public class CompressionTest {
+    // What the stub server answers with: gzip, zlib-wrapped deflate, bare deflate or nothing at all
+    private static final String[] ENCODINGS = { "gzip", "deflate", "raw-deflate", "identity" };
+
+    private final Gson gson = new Gson();
+    private SyntheticData data;
+    private HttpServer server;
+    private String port;
+    private final Map<String, Map<String, byte[]>> bodies = new HashMap<>();
+
+    private volatile String encoding = "gzip";
+    private volatile String acceptEncoding;
+    private volatile String requestEncoding;
+    private volatile String requestJson;
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    @Before
+    public void startServer() throws IOException {
+        data = SyntheticData.generate(20_000, 4);
+        serve("/user/login", new LoginResponse("token", SyntheticData.USERNAME, "p0", true, null));
+        serve("/user/register", new RegisterResponse("token", SyntheticData.USERNAME, "p0", true, null));
+        serve("/person/", new PersonResponse(data.getPersons(), null, true));
+        serve("/event/", new EventResponse(data.getEvents(), null, true));
+        serve("/clear/", new ClearResponse("Clear succeeded.", true));
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        for (String path : bodies.keySet()) {
+            server.createContext(path, exchange -> respond(exchange, bodies.get(path)));
+        }
+        server.start();
+        port = String.valueOf(server.getAddress().getPort());
+        DataCache.getInstance().setAuthToken(new AuthToken("token", SyntheticData.USERNAME));
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void everyCallDecodesEveryEncoding() {
+        ServerProxy proxy = new ServerProxy();
+        for (String served : ENCODINGS) {
+            encoding = served;
+            assertTrue(served, proxy.login(new LoginRequest("user", "password"), "localhost", port).getSuccess());
+            assertAccepted();
+            assertTrue(served, proxy.register(new RegisterRequest("user", "password", "email@gmail.com", "First",
+                    "Last", "f"), "localhost", port).getSuccess());
+            assertAccepted();
+
+            PersonResponse persons = proxy.people("localhost", port);
+            assertAccepted();
+            assertEquals(served, gson.toJson(data.getPersons()), gson.toJson(persons.getData()));
+            EventResponse events = proxy.events("localhost", port);
+            assertAccepted();
+            assertEquals(served, gson.toJson(data.getEvents()), gson.toJson(events.getData()));
+
+            assertEquals(served, "Clear succeeded.", proxy.clear("localhost", port).getMessage());
+            assertAccepted();
+        }
+    }
+
+    @Test
+    public void largeRequestBodiesAreCompressed() {
+        ServerProxy proxy = new ServerProxy();
+        proxy.login(new LoginRequest("user", "password"), "localhost", port);
+        assertNull(requestEncoding);
+        assertEquals(gson.toJson(new LoginRequest("user", "password")), requestJson);
+
+        char[] longName = new char[ServerProxy.COMPRESS_BODY_AT];
+        Arrays.fill(longName, 'a');
+        RegisterRequest large = new RegisterRequest("user", "password", "email@gmail.com", new String(longName),
+                "Last", "f");
+        assertTrue(proxy.register(large, "localhost", port).getSuccess());
+        assertEquals("gzip", requestEncoding);
+        assertEquals(gson.toJson(large), requestJson);
+    }
+
+    @Test
+    public void compressedEventsAreUnderAQuarterOfTheBytes() {
+        ServerProxy proxy = new ServerProxy();
+        long identityBytes = bodies.get("/event/").get("identity").length;
+        for (String served : ENCODINGS) {
+            encoding = served;
+            bytesSent.set(0);
+            assertEquals(data.getEvents().length, proxy.events("localhost", port).getData().length);
+            if (!served.equals("identity")) {
+                assertTrue(served, bytesSent.get() * 4 < identityBytes);
+            }
+        }
+    }
+
+    @Test
+    public void bytesAndDecodeTime() {
+        Benchmarks.assumeEnabled();
+        ServerProxy proxy = new ServerProxy();
+        proxy.events("localhost", port);
+
+        long identityBytes = bodies.get("/event/").get("identity").length;
+        for (String served : ENCODINGS) {
+            encoding = served;
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                bytesSent.set(0);
+                long start = System.nanoTime();
+                assertEquals(data.getEvents().length, proxy.events("localhost", port).getData().length);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%-11s %6.2f MB of events on the wire (%4.1f%%), downloaded and decoded in %6.1f ms%n",
+                    served, bytesSent.get() / 1e6, 100.0 * bytesSent.get() / identityBytes, best / 1e6);
+        }
+    }
+
+    private void assertAccepted() {
+        assertTrue(acceptEncoding, acceptEncoding != null && acceptEncoding.contains("gzip")
+                && acceptEncoding.contains("deflate"));
+    }
+
+    // Compresses the response to path every way the server can send it
+    private void serve(String path, Object response) throws IOException {
+        byte[] json = gson.toJson(response).getBytes(StandardCharsets.UTF_8);
+        Map<String, byte[]> encoded = new HashMap<>();
+        encoded.put("identity", json);
+
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(json);
+        }
+        encoded.put("gzip", gzip.toByteArray());
+
+        ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(zlib)) {
+            out.write(json);
+        }
+        encoded.put("deflate", zlib.toByteArray());
+
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (OutputStream out = new DeflaterOutputStream(raw, deflater)) {
+            out.write(json);
+        }
+        deflater.end();
+        encoded.put("raw-deflate", raw.toByteArray());
+        bodies.put(path, encoded);
+    }
+
+    private void respond(HttpExchange exchange, Map<String, byte[]> encoded) throws IOException {
+        acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        requestEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        try (InputStream in = "gzip".equals(requestEncoding) ? new GZIPInputStream(exchange.getRequestBody())
+                : exchange.getRequestBody()) {
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                request.write(buffer, 0, n);
+            }
+            requestJson = request.toString("UTF-8");
+        }
+
+        // Only compress the way the client said it could read
+        String served = encoding;
+        String header = served.equals("raw-deflate") ? "deflate" : served;
+        if (acceptEncoding == null || !acceptEncoding.contains(header)) {
+            served = "identity";
+            header = null;
+        }
+        byte[] body = encoded.get(served);
+        if (header != null && !header.equals("identity")) {
+            exchange.getResponseHeaders().set("Content-Encoding", header);
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        bytesSent.addAndGet(body.length);
+    }
+}
@@ -0,0 +1,235 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.SharedPreferences;
+
+import com.github.ivanshafran.sharedpreferencesmock.SPMockBuilder;
+
+import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.data.DataSnapshot;
+import net.haydenwelton.familymap.data.EventCursor;
+import net.haydenwelton.familymap.model.SearchResult;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import model.AuthToken;
+import model.Event;
+import model.Person;
+import model.User;
+
+public class ConcurrentSnapshotTest {
+    private static final int PERSONS = 20_000;
+    private static final int EVENTS_PER_PERSON = 3;
+    private static final int WRITERS = 2;
+    private static final int READERS = 4;
+    private static final int SEARCHERS = 2;
+    private static final int FILTERS_PER_WRITER = 400;
+
+    @Test
+    public void snapshotIsUnchangedByLaterFilters() {
+        SyntheticData.generate(1_000, 2).load();
+        DataCache dataCache = DataCache.getInstance();
+        DataSnapshot before = dataCache.getSnapshot();
+        List<Event> events = before.getEventList();
+
+        DataCache.getFilteredInstance(combination(0));
+        assertEquals(0, dataCache.getEventList().size());
+        assertSame(events, before.getEventList());
+        assertEquals(2_000, before.getEventList().size());
+    }
+
+    @Test
+    public void personsWithoutEventsCanBeRead() {
+        SyntheticData data = SyntheticData.generate(1_000, 2);
+        Person root = data.getRoot();
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.invalidate();
+        dataCache.setUser(new User(SyntheticData.USERNAME, "password", "email@gmail.com", root.getFirstName(),
+                root.getLastName(), root.getGender(), root.getPersonID()));
+        dataCache.setAuthToken(new AuthToken("token", SyntheticData.USERNAME));
+        dataCache.setPersons(data.getPersons());
+
+        // Until the events arrive every person is visible and none of them has events
+        assertEquals(1_000, dataCache.getFilteredPersons().length);
+        assertEquals(0, dataCache.getEvents().length);
+        assertEquals(0, dataCache.getPersonEvents(root.getPersonID()).size());
+        assertNull(dataCache.getEventByID("e0"));
+        assertFalse(dataCache.getFilteredEventCursor().next());
+        assertFalse(DataProcessor.searchRanked(root.getFirstName()).nextPage(10).isEmpty());
+        assertEquals(0, DataCache.getFilteredInstance(combination(15)).getEventList().size());
+
+        dataCache.setEvents(data.getEvents());
+        assertEquals(2_000, dataCache.getEventList().size());
+    }
+
+    @Test
+    public void newDataIsPublishedWhole() throws Exception {
+        SyntheticData small = SyntheticData.generate(1_000, 2);
+        SyntheticData large = SyntheticData.generate(1_500, 2);
+        small.load();
+        DataCache dataCache = DataCache.getInstance();
+
+        // Persons set without their events would be seen with the other download's events
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicInteger reads = new AtomicInteger();
+        executor.execute(guard(failure, () -> {
+            while (running.get()) {
+                DataSnapshot snapshot = dataCache.getSnapshot();
+                assertEquals(snapshot.getPersonList().size() * 2, snapshot.getEventList().size());
+                reads.incrementAndGet();
+            }
+        }, null));
+        for (int i = 0; i < 200 && failure.get() == null; i++) {
+            SyntheticData data = i % 2 == 0 ? large : small;
+            dataCache.setData(data.getPersons(), data.getEvents());
+        }
+        running.set(false);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(reads.get() > 0);
+    }
+
+    @Test
+    public void parallelFilteringAndSearchingSeeWholeSnapshots() throws Exception {
+        SyntheticData data = SyntheticData.generate(PERSONS, EVENTS_PER_PERSON);
+        data.load();
+        DataCache dataCache = DataCache.getInstance();
+
+        // Every state a reader may see: unfiltered, or one of the 16 switch combinations
+        SharedPreferences[] combinations = new SharedPreferences[16];
+        Set<Integer> validPersonCounts = new HashSet<>();
+        validPersonCounts.add(PERSONS);
+        for (int i = 0; i < combinations.length; i++) {
+            combinations[i] = combination(i);
+            validPersonCounts.add(DataCache.getFilteredInstance(combinations[i]).getFilteredPersonList().size());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS + SEARCHERS);
+        CountDownLatch writersDone = new CountDownLatch(WRITERS);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicInteger reads = new AtomicInteger();
+        AtomicInteger searches = new AtomicInteger();
+
+        for (int w = 0; w < WRITERS; w++) {
+            int seed = w;
+            executor.execute(guard(failure, () -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < FILTERS_PER_WRITER && failure.get() == null; i++) {
+                    DataCache.getFilteredInstance(combinations[random.nextInt(combinations.length)]);
+                    // Now and then reload the events, which makes everything visible again
+                    if (random.nextInt(50) == 0) {
+                        dataCache.setEvents(data.getEvents());
+                    }
+                }
+            }, writersDone));
+        }
+        for (int r = 0; r < READERS; r++) {
+            executor.execute(guard(failure, () -> {
+                while (running.get()) {
+                    checkSnapshot(dataCache.getSnapshot(), validPersonCounts);
+                    reads.incrementAndGet();
+                }
+            }, null));
+        }
+        for (int s = 0; s < SEARCHERS; s++) {
+            executor.execute(guard(failure, () -> {
+                while (running.get()) {
+                    // Every person has exactly one birth, so a search sees one filtered person set in full
+                    List<SearchResult> results = new ArrayList<>();
+                    DataProcessor.searchEvents(results, "birth");
+                    assertTrue("search saw " + results.size() + " births",
+                            validPersonCounts.contains(results.size()));
+                    searches.incrementAndGet();
+                }
+            }, null));
+        }
+
+        assertTrue(writersDone.await(5, TimeUnit.MINUTES));
+        running.set(false);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        System.out.printf("%,d filters with %,d snapshot checks and %,d searches in parallel%n",
+                WRITERS * FILTERS_PER_WRITER, reads.get(), searches.get());
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(reads.get() > 0 && searches.get() > 0);
+    }
+
+    // Checks that the parts of the snapshot read here all describe the same filter
+    private static void checkSnapshot(DataSnapshot snapshot, Set<Integer> validPersonCounts) {
+        List<Person> persons = snapshot.getFilteredPersonList();
+        List<Event> events = snapshot.getEventList();
+        assertTrue("saw " + persons.size() + " persons", validPersonCounts.contains(persons.size()));
+        assertEquals(persons.size() * EVENTS_PER_PERSON, events.size());
+
+        Set<String> personIDs = new HashSet<>();
+        for (Person person : persons) {
+            personIDs.add(person.getPersonID());
+        }
+        EventCursor cursor = snapshot.getFilteredEventCursor();
+        for (int i = 0; i < events.size(); i += 97) {
+            Event event = events.get(i);
+            assertTrue(personIDs.contains(event.getPersonID()));
+            assertEquals(i, snapshot.getFilteredEventPosition(event.getEventID()));
+            assertEquals(EVENTS_PER_PERSON, snapshot.getPersonEvents(event.getPersonID()).size());
+        }
+        int cursorCount = 0;
+        while (cursor.next()) {
+            cursorCount++;
+        }
+        assertEquals(events.size(), cursorCount);
+    }
+
+    private static Runnable guard(AtomicReference<Throwable> failure, Runnable task, CountDownLatch done) {
+        return () -> {
+            try {
+                task.run();
+            }
+            catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+            finally {
+                if (done != null) {
+                    done.countDown();
+                }
+            }
+        };
+    }
+
+    // The filter switches for the given combination, one bit per switch
+    private static SharedPreferences combination(int bits) {
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("mother_side", (bits & 1) != 0).commit();
+        prefs.edit().putBoolean("father_side", (bits & 2) != 0).commit();
+        prefs.edit().putBoolean("female", (bits & 4) != 0).commit();
+        prefs.edit().putBoolean("male", (bits & 8) != 0).commit();
+        return prefs;
+    }
+}
@@ -0,0 +1,201 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpServer;
+
+import net.haydenwelton.familymap.data.DataCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.AuthToken;
+import model.Person;
+import requests.LoginRequest;
+import responses.EventResponse;
+import responses.LoginResponse;
+import responses.PersonResponse;
+
+public class DataDownloadTest {
+    private static final int PERSONS = 5_000;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private ExecutorService downloads;
+    private String port;
+
+    // Milliseconds every response is held back, as a slow network would
+    private volatile long latency;
+    private volatile boolean failEvents;
+
+    // When set, the person and event responses are each held until both requests have arrived, or two seconds
+    private volatile CountDownLatch bothRequested;
+    private final AtomicInteger metTheOther = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException {
+        SyntheticData data = SyntheticData.generate(PERSONS, 4);
+        Person root = data.getRoot();
+        Gson gson = new Gson();
+        byte[] login = gson.toJson(new LoginResponse("token", SyntheticData.USERNAME, root.getPersonID(), true, null))
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] persons = gson.toJson(new PersonResponse(data.getPersons(), null, true))
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] events = gson.toJson(new EventResponse(data.getEvents(), null, true))
+                .getBytes(StandardCharsets.UTF_8);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/user/login", exchange -> respond(exchange, login, false));
+        server.createContext("/person/", exchange -> respondTogether(exchange, persons, false));
+        server.createContext("/event/", exchange -> respondTogether(exchange, events, failEvents));
+        serverThreads = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverThreads);
+        server.start();
+        port = String.valueOf(server.getAddress().getPort());
+        downloads = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+        downloads.shutdownNow();
+    }
+
+    @Test
+    public void bothDownloadsFillTheCache() {
+        DataCache.getInstance().invalidate();
+        assertTrue(loginConcurrently());
+        assertEquals(PERSONS, DataCache.getInstance().getPersons().length);
+        assertEquals(PERSONS * 4, DataCache.getInstance().getEvents().length);
+
+        // One failed download fails the whole, and leaves the cache as it was
+        failEvents = true;
+        DataCache.getInstance().invalidate();
+        assertFalse(loginConcurrently());
+        assertEquals(0, DataCache.getInstance().getPersonList() == null ? 0 :
+                DataCache.getInstance().getPersonList().size());
+    }
+
+    @Test
+    public void bothDownloadsAreInFlightAtOnce() {
+        bothRequested = new CountDownLatch(2);
+        DataCache.getInstance().invalidate();
+        assertTrue(loginConcurrently());
+        // With one download after the other, the first would have given up waiting for the second
+        assertEquals(2, metTheOther.get());
+        assertEquals(PERSONS, DataCache.getInstance().getPersons().length);
+    }
+
+    @Test
+    public void loginToDataLatency() {
+        Benchmarks.assumeEnabled();
+        // Warm up both paths before timing them
+        latency = 0;
+        loginSequentially();
+        loginConcurrently();
+
+        for (long injected : new long[] { 0, 50, 200 }) {
+            latency = injected;
+            long sequential = Long.MAX_VALUE;
+            long concurrent = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                assertTrue(loginSequentially());
+                sequential = Math.min(sequential, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                assertTrue(loginConcurrently());
+                concurrent = Math.min(concurrent, System.nanoTime() - start);
+            }
+            System.out.printf("%3d ms per response: login to data %7.1f ms one after the other, %7.1f ms at once%n",
+                    injected, sequential / 1e6, concurrent / 1e6);
+            if (injected >= 200) {
+                // The second round trip overlaps the first
+                assertTrue(concurrent < sequential - injected / 2 * 1_000_000);
+            }
+        }
+    }
+
+    // Logs in, then downloads persons and then events, as DataTask used to
+    private boolean loginSequentially() {
+        ServerProxy proxy = login();
+        PersonResponse personResponse = proxy.people("localhost", port);
+        EventResponse eventResponse = proxy.events("localhost", port);
+        return fill(personResponse, eventResponse);
+    }
+
+    // Logs in, then downloads persons and events at once, as DataTask does
+    private boolean loginConcurrently() {
+        ServerProxy proxy = login();
+        AtomicBoolean success = new AtomicBoolean();
+        proxy.peopleAndEvents("localhost", port, downloads,
+                (personResponse, eventResponse) -> success.set(fill(personResponse, eventResponse))).join();
+        return success.get();
+    }
+
+    private ServerProxy login() {
+        ServerProxy proxy = new ServerProxy();
+        LoginResponse response = proxy.login(new LoginRequest(SyntheticData.USERNAME, "password"), "localhost", port);
+        assertTrue(response.getSuccess());
+        DataCache.getInstance().setAuthToken(new AuthToken(response.getAuthtoken(), response.getUsername()));
+        return proxy;
+    }
+
+    private static boolean fill(PersonResponse personResponse, EventResponse eventResponse) {
+        if (!personResponse.getSuccess() || !eventResponse.getSuccess()) return false;
+        DataCache.getInstance().setData(personResponse.getData(), eventResponse.getData());
+        return true;
+    }
+
+    private void respondTogether(com.sun.net.httpserver.HttpExchange exchange, byte[] body, boolean fail)
+            throws IOException {
+        CountDownLatch latch = bothRequested;
+        if (latch != null) {
+            latch.countDown();
+            try {
+                if (latch.await(2, TimeUnit.SECONDS)) {
+                    metTheOther.incrementAndGet();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        respond(exchange, body, fail);
+    }
+
+    private void respond(com.sun.net.httpserver.HttpExchange exchange, byte[] body, boolean fail) throws IOException {
+        try {
+            TimeUnit.MILLISECONDS.sleep(latency);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.getRequestBody().close();
+        if (fail) {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
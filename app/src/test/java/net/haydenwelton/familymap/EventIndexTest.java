@@ -0,0 +1,91 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.SharedPreferences;
+
+import com.github.ivanshafran.sharedpreferencesmock.SPMockBuilder;
+
+import net.haydenwelton.familymap.data.DataCache;
+
+import org.junit.Test;
+
+import model.Event;
+
+public class EventIndexTest {
+    private static final int LOOKUPS = 200_000;
+
+    @Test
+    public void lookupReturnsSameEvent() {
+        SyntheticData data = SyntheticData.generate(1_000, 3);
+        data.load();
+        DataCache dataCache = DataCache.getInstance();
+
+        for (Event event : data.getEvents()) {
+            assertSame(event, dataCache.getEventByID(event.getEventID()));
+        }
+        assertNull(dataCache.getEventByID("missing"));
+    }
+
+    @Test
+    public void filteredPositionsMatchFilteredView() {
+        SyntheticData data = SyntheticData.generate(1_000, 3);
+        data.load();
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("mother_side", true).commit();
+        prefs.edit().putBoolean("female", true).commit();
+        DataCache dataCache = DataCache.getFilteredInstance(prefs);
+
+        Event[] filtered = dataCache.getEvents();
+        for (int i = 0; i < filtered.length; i++) {
+            assertEquals(i, dataCache.getFilteredEventPosition(filtered[i].getEventID()));
+        }
+        int hidden = 0;
+        for (Event event : data.getEvents()) {
+            if (dataCache.getFilteredEventPosition(event.getEventID()) == -1) {
+                hidden++;
+            }
+        }
+        assertEquals(data.getEvents().length - filtered.length, hidden);
+        assertEquals(-1, dataCache.getFilteredEventPosition("missing"));
+    }
+
+    @Test
+    public void lookupTimeIndependentOfSize() {
+        Benchmarks.assumeEnabled();
+        double small = averageLookupNanos(SyntheticData.generate(1_000 / 4, 4));
+        double large = averageLookupNanos(SyntheticData.generate(100_000 / 4, 4));
+        System.out.printf("getEventByID: %.1f ns/lookup at 1k events, %.1f ns/lookup at 100k events%n",
+                small, large);
+
+        // A linear scan would be ~100x slower at 100k; allow generous slack for cache effects.
+        assertTrue(large < small * 10 + 1_000);
+    }
+
+    private static double averageLookupNanos(SyntheticData data) {
+        data.load();
+        DataCache dataCache = DataCache.getInstance();
+        Event[] events = data.getEvents();
+        String[] ids = new String[events.length];
+        for (int i = 0; i < events.length; i++) {
+            ids[i] = events[(int) ((i * 2_654_435_761L) % events.length)].getEventID();
+        }
+
+        int found = 0;
+        for (int warmup = 0; warmup < 3; warmup++) {
+            for (int i = 0; i < LOOKUPS; i++) {
+                found += dataCache.getEventByID(ids[i % ids.length]) != null ? 1 : 0;
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            found += dataCache.getEventByID(ids[i % ids.length]) != null ? 1 : 0;
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals(LOOKUPS * 4, found);
+        return (double) elapsed / LOOKUPS;
+    }
+}
@@ -0,0 +1,138 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.SharedPreferences;
+
+import com.github.ivanshafran.sharedpreferencesmock.SPMockBuilder;
+
+import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.EventColumns;
+import net.haydenwelton.familymap.data.EventCursor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import model.Event;
+import model.Person;
+
+public class EventStoreTest {
+
+    @Test
+    public void columnsMatchEvents() {
+        SyntheticData data = SyntheticData.generate(1_000, 4);
+        data.load();
+        DataCache dataCache = DataCache.getInstance();
+        EventColumns columns = dataCache.getEventColumns();
+
+        EventCursor cursor = dataCache.getFilteredEventCursor();
+        int count = 0;
+        while (cursor.next()) {
+            Event event = cursor.getEvent();
+            assertEquals(event.getLatitude(), cursor.getLatitude(), 0);
+            assertEquals(event.getLongitude(), cursor.getLongitude(), 0);
+            assertEquals((int) event.getYear(), cursor.getYear());
+            assertEquals(event.getEventType(), cursor.getEventType());
+            assertEquals(event.getCity(), cursor.getCity());
+            assertEquals(event.getCountry(), cursor.getCountry());
+            assertEquals(event.getEventType(), columns.getEventTypeName(cursor.getEventTypeId()));
+            count++;
+        }
+        assertEquals(data.getEvents().length, count);
+        assertEquals(count, columns.size());
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void filteredCursorMatchesFilteredEvents() {
+        SyntheticData data = SyntheticData.generate(2_000, 3);
+        data.load();
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("mother_side", true).commit();
+        prefs.edit().putBoolean("female", true).commit();
+        DataCache dataCache = DataCache.getFilteredInstance(prefs);
+
+        Event[] expected = dataCache.getEvents();
+        EventCursor cursor = dataCache.getFilteredEventCursor();
+        for (Event event : expected) {
+            assertTrue(cursor.next());
+            assertSame(event, cursor.getEvent());
+        }
+        assertFalse(cursor.next());
+
+        for (Person person : data.getPersons()) {
+            List<Event> personEvents = dataCache.getPersonEvents(person.getPersonID());
+            EventCursor personCursor = dataCache.getPersonEventCursor(person.getPersonID());
+            for (Event event : personEvents) {
+                assertTrue(personCursor.next());
+                assertSame(event, personCursor.getEvent());
+            }
+            assertFalse(personCursor.next());
+        }
+    }
+
+    @Test
+    public void unknownPersonsAreIncludedUntilFiltered() {
+        SyntheticData data = SyntheticData.generate(100, 2);
+        Event[] events = Arrays.copyOf(data.getEvents(), data.getEvents().length + 1);
+        events[events.length - 1] = new Event("orphan", SyntheticData.USERNAME, "nobody", 1f, 2f,
+                "Ireland", "Cork", "Birth", 1900);
+        data.load();
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.setEvents(events);
+
+        EventCursor cursor = dataCache.getFilteredEventCursor();
+        int count = 0;
+        Event last = null;
+        while (cursor.next()) {
+            last = cursor.getEvent();
+            count++;
+        }
+        assertEquals(events.length, count);
+        assertEquals("orphan", last.getEventID());
+        assertEquals(-1, dataCache.getEventColumns().getPersonOrdinal(dataCache.getEventColumns().size() - 1));
+    }
+
+    @Test
+    public void columnsRetainLessThanEventObjects() {
+        int personCount = 200_000;
+        SyntheticData data = SyntheticData.generate(personCount, 3);
+        int[] owners = new int[data.getEvents().length];
+
+        // Copy every string, as decoding JSON would, so the objects don't share the generator's constants.
+        // Float.valueOf always boxes anew, and years are outside the range Integer.valueOf caches.
+        long before = usedMemory();
+        Event[] decoded = new Event[data.getEvents().length];
+        for (int i = 0; i < decoded.length; i++) {
+            Event event = data.getEvents()[i];
+            decoded[i] = new Event(new String(event.getEventID()), new String(event.getAssociatedUsername()),
+                    new String(event.getPersonID()), Float.valueOf(event.getLatitude()),
+                    Float.valueOf(event.getLongitude()), new String(event.getCountry()),
+                    new String(event.getCity()), new String(event.getEventType()),
+                    Integer.valueOf(event.getYear()));
+        }
+        long objectBytes = usedMemory() - before;
+
+        before = usedMemory();
+        EventColumns columns = new EventColumns(decoded, owners);
+        long columnBytes = usedMemory() - before;
+
+        System.out.printf("%,d events: Event objects %,d KB, columns %,d KB (estimated %,d KB)%n",
+                decoded.length, objectBytes / 1024, columnBytes / 1024, columns.retainedBytes() / 1024);
+        assertEquals(decoded.length, columns.size());
+        assertTrue(columnBytes < objectBytes);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
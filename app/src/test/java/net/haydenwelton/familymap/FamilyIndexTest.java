@@ -0,0 +1,164 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.model.FamilyMember;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import model.AuthToken;
+import model.Event;
+import model.Person;
+import model.User;
+
+public class FamilyIndexTest {
+    private static final int PERSONS = 100_000;
+    private static final int LOOKUPS = 2_000;
+
+    @Test
+    public void extendedFamilyIsFound() {
+        // gf + gm -> dad; mom; dad + mom -> me, sis; dad + other -> half; me + wife -> kid
+        load(new Person[] {
+                person("me", "m", "dad", "mom", "wife"),
+                person("dad", "m", "gf", "gm", "mom"),
+                person("mom", "f", null, null, "dad"),
+                person("gf", "m", null, null, "gm"),
+                person("gm", "f", null, null, "gf"),
+                person("sis", "f", "dad", "mom", null),
+                person("half", "m", "dad", "other", null),
+                person("other", "f", null, null, null),
+                person("wife", "f", null, null, "me"),
+                person("kid", "f", "me", "wife", null)
+        });
+        Person me = DataCache.getInstance().getPersonByID("me");
+
+        assertEquals("Father dad, Mother mom, Spouse wife, Child kid",
+                describe(DataProcessor.findFamily(me)));
+        assertEquals("Father dad, Mother mom, Spouse wife, Child kid, Sibling sis, Sibling half, " +
+                "Grandfather gf, Grandmother gm", describe(DataProcessor.findExtendedFamily(me)));
+
+        Person other = DataCache.getInstance().getPersonByID("other");
+        assertEquals("Child half", describe(DataProcessor.findExtendedFamily(other)));
+    }
+
+    @Test
+    public void indexMatchesScan() {
+        SyntheticData data = SyntheticData.generate(5_000, 1);
+        data.load();
+        for (Person root : roots(data, 500)) {
+            assertEquals(describe(scanFamily(data.getPersons(), root)), describe(DataProcessor.findFamily(root)));
+        }
+    }
+
+    @Test
+    public void indexIsFasterThanScanAt100kPersons() {
+        Benchmarks.assumeEnabled();
+        SyntheticData data = SyntheticData.generate(PERSONS, 1);
+        data.load();
+        Person[] persons = data.getPersons();
+        Person[] roots = roots(data, LOOKUPS);
+
+        // Warm up both paths before timing them
+        for (int i = 0; i < 100; i++) {
+            scanFamily(persons, roots[i]);
+            DataProcessor.findFamily(roots[i]);
+        }
+
+        long start = System.nanoTime();
+        List<List<FamilyMember>> scanned = new ArrayList<>();
+        for (Person root : roots) {
+            scanned.add(scanFamily(persons, root));
+        }
+        long scanTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        List<List<FamilyMember>> indexed = new ArrayList<>();
+        for (Person root : roots) {
+            indexed.add(DataProcessor.findFamily(root));
+        }
+        long indexTime = System.nanoTime() - start;
+
+        System.out.printf("findFamily, %,d persons: scan %.3f ms/call, index %.4f ms/call%n",
+                PERSONS, scanTime / 1e6 / LOOKUPS, indexTime / 1e6 / LOOKUPS);
+        for (int i = 0; i < LOOKUPS; i++) {
+            assertEquals(describe(scanned.get(i)), describe(indexed.get(i)));
+        }
+        assertTrue(indexTime < scanTime);
+    }
+
+    // The user followed by count - 1 persons picked at random
+    private static Person[] roots(SyntheticData data, int count) {
+        Person[] persons = data.getPersons();
+        Random random = new Random(11);
+        Person[] roots = new Person[count];
+        for (int i = 0; i < count; i++) {
+            roots[i] = persons[random.nextInt(persons.length)];
+        }
+        roots[0] = data.getRoot();
+        return roots;
+    }
+
+    // The scan findFamily used to do, with its results put in the same order
+    private static List<FamilyMember> scanFamily(Person[] persons, Person rootPerson) {
+        FamilyMember father = null;
+        FamilyMember mother = null;
+        FamilyMember spouse = null;
+        List<FamilyMember> children = new ArrayList<>();
+        for (Person person : persons) {
+            if (rootPerson.getFatherID() != null && rootPerson.getFatherID().equals(person.getPersonID())) {
+                father = new FamilyMember("Father", person);
+            }
+            else if (rootPerson.getMotherID() != null && rootPerson.getMotherID().equals(person.getPersonID())) {
+                mother = new FamilyMember("Mother", person);
+            }
+            else if (rootPerson.getSpouseID() != null && rootPerson.getSpouseID().equals(person.getPersonID())) {
+                spouse = new FamilyMember("Spouse", person);
+            }
+            else if (rootPerson.getPersonID().equals(person.getFatherID()) ||
+                    rootPerson.getPersonID().equals(person.getMotherID())) {
+                children.add(new FamilyMember("Child", person));
+            }
+        }
+        List<FamilyMember> family = new ArrayList<>();
+        for (FamilyMember member : new FamilyMember[] { father, mother, spouse }) {
+            if (member != null) {
+                family.add(member);
+            }
+        }
+        family.addAll(children);
+        return family;
+    }
+
+    private static String describe(List<FamilyMember> family) {
+        StringBuilder builder = new StringBuilder();
+        for (FamilyMember member : family) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(member.getRelationship()).append(' ').append(member.getPerson().getPersonID());
+        }
+        return builder.toString();
+    }
+
+    private static Person person(String personID, String gender, String fatherID, String motherID,
+                                 String spouseID) {
+        return new Person(personID, "family", "First", "Last", gender, fatherID, motherID, spouseID);
+    }
+
+    private static void load(Person[] persons) {
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.invalidate();
+        dataCache.setUser(new User("family", "password", "email@gmail.com", "First", "Last", "m",
+                persons[0].getPersonID()));
+        dataCache.setAuthToken(new AuthToken("token", "family"));
+        dataCache.setPersons(persons);
+        dataCache.setEvents(new Event[0]);
+    }
+}
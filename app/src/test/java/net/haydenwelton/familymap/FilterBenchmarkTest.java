@@ -0,0 +1,140 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.SharedPreferences;
+
+import com.github.ivanshafran.sharedpreferencesmock.SPMockBuilder;
+
+import net.haydenwelton.familymap.data.DataCache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import model.Event;
+import model.Person;
+
+public class FilterBenchmarkTest {
+    private static final String[] KEYS = { "mother_side", "father_side", "female", "male" };
+
+    @Test
+    public void allCombinationsMatchLegacyFilter() {
+        SyntheticData data = SyntheticData.generate(2_000, 2);
+        data.load();
+        HashMap<String, Person> personMap = DataCache.getInstance().getPersonMap();
+
+        for (int combination = 0; combination < 16; combination++) {
+            DataCache dataCache = DataCache.getFilteredInstance(prefs(combination));
+            List<Event> expected = legacyFilter(data, personMap, combination);
+
+            Event[] actual = dataCache.getEvents();
+            assertEquals(expected.size(), actual.length);
+            HashSet<String> expectedIDs = new HashSet<>();
+            for (Event event : expected) {
+                expectedIDs.add(event.getEventID());
+            }
+            for (Event event : actual) {
+                assertTrue(expectedIDs.contains(event.getEventID()));
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkAgainstLegacyFilter() {
+        // Trees of a million persons need the larger heap build.gradle gives benchmark runs
+        Benchmarks.assumeEnabled();
+        for (int size : new int[] { 10_000, 100_000, 1_000_000 }) {
+            SyntheticData data = SyntheticData.generate(size, 1);
+            data.load();
+            HashMap<String, Person> personMap = DataCache.getInstance().getPersonMap();
+            SharedPreferences[] prefs = new SharedPreferences[16];
+            for (int combination = 0; combination < 16; combination++) {
+                prefs[combination] = prefs(combination);
+            }
+
+            // Warm up both paths before timing them.
+            DataCache.getFilteredInstance(prefs[15]);
+            legacyFilter(data, personMap, 15);
+            // Reloading the events drops cached filter results so every combination is filtered afresh.
+            DataCache.getInstance().setEvents(data.getEvents());
+            System.gc();
+
+            long start = System.nanoTime();
+            int bitsetEvents = 0;
+            for (int combination = 0; combination < 16; combination++) {
+                bitsetEvents += DataCache.getFilteredInstance(prefs[combination]).getEvents().length;
+            }
+            long bitsetNanos = System.nanoTime() - start;
+
+            System.gc();
+            start = System.nanoTime();
+            int legacyEvents = 0;
+            for (int combination = 0; combination < 16; combination++) {
+                legacyEvents += legacyFilter(data, personMap, combination).size();
+            }
+            long legacyNanos = System.nanoTime() - start;
+
+            assertEquals(legacyEvents, bitsetEvents);
+            System.out.printf("filter, %,d persons, all 16 combinations: bitset %.1f ms, legacy %.1f ms%n",
+                    size, bitsetNanos / 1e6, legacyNanos / 1e6);
+        }
+    }
+
+    private static SharedPreferences prefs(int combination) {
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        for (int bit = 0; bit < KEYS.length; bit++) {
+            prefs.edit().putBoolean(KEYS[bit], (combination & (1 << bit)) != 0).commit();
+        }
+        return prefs;
+    }
+
+    // The filter as DataCache implemented it before the bitsets: a recursive walk into a HashMap,
+    // followed by a scan of every event.
+    private static List<Event> legacyFilter(SyntheticData data, HashMap<String, Person> personMap,
+                                            int combination) {
+        boolean motherSide = (combination & 1) != 0;
+        boolean fatherSide = (combination & 2) != 0;
+        boolean female = (combination & 4) != 0;
+        boolean male = (combination & 8) != 0;
+
+        HashMap<String, Person> filteredPersons = new HashMap<>();
+        Person root = data.getRoot();
+        Person spouse = personMap.get(root.getSpouseID());
+        for (Person person : new Person[] { root, spouse }) {
+            if (person != null && (male && person.getGender().equals("m") ||
+                    female && person.getGender().equals("f"))) {
+                filteredPersons.put(person.getPersonID(), person);
+            }
+        }
+        if (motherSide) {
+            addLineage(filteredPersons, personMap, personMap.get(root.getMotherID()), female, male);
+        }
+        if (fatherSide) {
+            addLineage(filteredPersons, personMap, personMap.get(root.getFatherID()), female, male);
+        }
+
+        List<Event> filteredEvents = new ArrayList<>();
+        for (Event event : data.getEvents()) {
+            if (filteredPersons.containsKey(event.getPersonID())) {
+                filteredEvents.add(event);
+            }
+        }
+        return filteredEvents;
+    }
+
+    private static void addLineage(HashMap<String, Person> filteredPersons,
+                                   HashMap<String, Person> personMap, Person person,
+                                   boolean female, boolean male) {
+        if (person == null) return;
+        addLineage(filteredPersons, personMap, personMap.get(person.getMotherID()), female, male);
+        addLineage(filteredPersons, personMap, personMap.get(person.getFatherID()), female, male);
+        if (female && person.getGender().equals("f") || male && person.getGender().equals("m")) {
+            filteredPersons.put(person.getPersonID(), person);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.SharedPreferences;
+
+import com.github.ivanshafran.sharedpreferencesmock.SPMockBuilder;
+
+import net.haydenwelton.familymap.data.DataCache;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import model.Event;
+
+public class FilterCacheTest {
+
+    @Test
+    public void togglingBackGivesSameResult() {
+        SyntheticData.generate(5_000, 2).load();
+        SharedPreferences all = prefs(true, true, true, true);
+        SharedPreferences fathers = prefs(false, true, false, true);
+
+        Event[] first = DataCache.getFilteredInstance(all).getEvents();
+        Event[] other = DataCache.getFilteredInstance(fathers).getEvents();
+        Event[] again = DataCache.getFilteredInstance(all).getEvents();
+
+        assertArrayEquals(first, again);
+        assertTrue(other.length < first.length);
+        assertArrayEquals(other, DataCache.getFilteredInstance(fathers).getEvents());
+    }
+
+    @Test
+    public void newDataInvalidatesCache() {
+        SharedPreferences all = prefs(true, true, true, true);
+        SyntheticData.generate(100, 2).load();
+        assertEquals(200, DataCache.getFilteredInstance(all).getEvents().length);
+
+        SyntheticData.generate(300, 2).load();
+        assertEquals(600, DataCache.getFilteredInstance(all).getEvents().length);
+
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.setEvents(SyntheticData.generate(300, 1).getEvents());
+        assertEquals(300, DataCache.getFilteredInstance(all).getEvents().length);
+    }
+
+    @Test
+    public void repeatedCombinationIsReused() {
+        SyntheticData.generate(5_000, 1).load();
+        SharedPreferences all = prefs(true, true, true, true);
+        SharedPreferences mothers = prefs(true, false, true, false);
+
+        // A combination filtered since the data last changed is served from the cache, not filtered again
+        List<Event> first = DataCache.getFilteredInstance(all).getEventList();
+        DataCache.getFilteredInstance(mothers);
+        assertSame(first, DataCache.getFilteredInstance(all).getEventList());
+    }
+
+    @Test
+    public void repeatedCombinationIsFaster() {
+        Benchmarks.assumeEnabled();
+        SyntheticData.generate(500_000, 1).load();
+        SharedPreferences all = prefs(true, true, true, true);
+        SharedPreferences mothers = prefs(true, false, true, false);
+
+        long start = System.nanoTime();
+        DataCache.getFilteredInstance(all);
+        DataCache.getFilteredInstance(mothers);
+        long firstNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            DataCache.getFilteredInstance(all);
+            DataCache.getFilteredInstance(mothers);
+        }
+        long repeatNanos = (System.nanoTime() - start) / 10;
+
+        System.out.printf("filter, 500,000 persons: first toggle %.2f ms, repeated toggle %.4f ms%n",
+                firstNanos / 1e6, repeatNanos / 1e6);
+        assertTrue(repeatNanos < firstNanos);
+    }
+
+    private static SharedPreferences prefs(boolean motherSide, boolean fatherSide, boolean female,
+                                           boolean male) {
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("mother_side", motherSide).commit();
+        prefs.edit().putBoolean("father_side", fatherSide).commit();
+        prefs.edit().putBoolean("female", female).commit();
+        prefs.edit().putBoolean("male", male).commit();
+        return prefs;
+    }
+}
@@ -0,0 +1,180 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+
+import net.haydenwelton.familymap.data.JsonCodec;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import model.Event;
+import model.Person;
+import requests.LoginRequest;
+import requests.RegisterRequest;
+import responses.ClearResponse;
+import responses.EventResponse;
+import responses.LoginResponse;
+import responses.PersonResponse;
+import responses.RegisterResponse;
+
+public class JsonCodecTest {
+    private final Gson reflective = new Gson();
+    private final Gson codec = JsonCodec.gson();
+
+    @Test
+    public void writesAndReadsWhatReflectionDoes() {
+        SyntheticData data = SyntheticData.generate(500, 4);
+        Person[] persons = Arrays.copyOf(data.getPersons(), 501);
+        Event[] events = Arrays.copyOf(data.getEvents(), 2001);
+        persons[500] = new Person("p", null, "Ann", null, "f", null, null, null);
+        events[2000] = new Event("e", null, "p", null, 1.25f, null, "Cork", "Birth", null);
+        Object[] values = {
+                new PersonResponse(persons, null, true),
+                new PersonResponse(null, "Error: Invalid auth token", false),
+                new EventResponse(events, null, true),
+                new LoginResponse("token", "user", "p0", true, null),
+                new RegisterResponse(null, null, null, false, "Error: Username already taken"),
+                new ClearResponse("Clear succeeded.", true),
+                new LoginRequest("user", "password"),
+                new RegisterRequest("user", "password", "email@gmail.com", "First", "Last", "f"),
+                persons[3],
+                events[7],
+        };
+        for (Object value : values) {
+            String json = reflective.toJson(value);
+            assertEquals(json, codec.toJson(value));
+            assertEquals(json, reflective.toJson(codec.fromJson(json, value.getClass())));
+        }
+
+        // Fields the app doesn't know are skipped, as they would be by reflection
+        LoginResponse login = codec.fromJson("{\"authtoken\":\"t\",\"extra\":[1,{\"a\":null}],\"success\":true}",
+                LoginResponse.class);
+        assertEquals("t", login.getAuthtoken());
+        assertNull(login.getUsername());
+        assertTrue(login.getSuccess());
+        assertNull(codec.fromJson("null", ClearResponse.class));
+    }
+
+    @Test
+    public void decodeThroughput() {
+        Benchmarks.assumeEnabled();
+        SyntheticData data = SyntheticData.generate(20_000, 4);
+        String persons = reflective.toJson(new PersonResponse(data.getPersons(), null, true));
+        String events = reflective.toJson(new EventResponse(data.getEvents(), null, true));
+        String records = reflective.toJson(data.getEvents());
+
+        // Records alone are what the adapters replace
+        long[] recordTimes = bestOf(() -> reflective.fromJson(records, Event[].class),
+                () -> codec.fromJson(records, Event[].class));
+        // Whole responses also share repeated strings, which costs time but keeps the cache small
+        long[] responseTimes = bestOf(() -> {
+            reflective.fromJson(persons, PersonResponse.class);
+            reflective.fromJson(events, EventResponse.class);
+        }, () -> {
+            codec.fromJson(persons, PersonResponse.class);
+            codec.fromJson(events, EventResponse.class);
+        });
+        double recordMegabytes = records.length() / 1e6;
+        double responseMegabytes = (persons.length() + events.length()) / 1e6;
+        System.out.printf("decode events: reflection %6.1f MB/s, hand-written adapters %6.1f MB/s%n",
+                recordMegabytes / (recordTimes[0] / 1e9), recordMegabytes / (recordTimes[1] / 1e9));
+        System.out.printf("decode responses: reflection %6.1f MB/s, hand-written adapters %6.1f MB/s%n",
+                responseMegabytes / (responseTimes[0] / 1e9), responseMegabytes / (responseTimes[1] / 1e9));
+
+        // Once the JIT has compiled both, reading fields by reflection costs little next to the parsing itself,
+        // so the adapters only need to keep up; what they save is the first call
+        assertTrue(recordTimes[1] < recordTimes[0] * 5 / 4);
+    }
+
+    @Test
+    public void firstCallLatency() throws Exception {
+        Benchmarks.assumeEnabled();
+        // Each sample is a new JVM, as a cold start of the app would be
+        List<Long> reflectiveCold = new ArrayList<>();
+        List<Long> codecCold = new ArrayList<>();
+        List<Long> codecWarmed = new ArrayList<>();
+        for (int run = 0; run < 5; run++) {
+            reflectiveCold.add(firstCall("reflective"));
+            codecCold.add(firstCall("codec"));
+            codecWarmed.add(firstCall("warmed"));
+        }
+        System.out.printf("first login and person decode: reflection %5.1f ms, hand-written adapters %5.1f ms, " +
+                        "after warmUp %5.1f ms (medians of 5 new JVMs)%n",
+                median(reflectiveCold) / 1e6, median(codecCold) / 1e6, median(codecWarmed) / 1e6);
+        assertTrue(median(codecCold) < median(reflectiveCold));
+        assertTrue(median(codecWarmed) < median(codecCold));
+    }
+
+    // Returns the best of eight alternating runs of each
+    private static long[] bestOf(Runnable reflective, Runnable codec) {
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+        for (int round = 0; round < 8; round++) {
+            long start = System.nanoTime();
+            reflective.run();
+            best[0] = Math.min(best[0], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            codec.run();
+            best[1] = Math.min(best[1], System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static long firstCall(String mode) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                FirstCall.class.getName(), mode).redirectErrorStream(true).start();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String last = null;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                last = line;
+            }
+            assertEquals(0, process.waitFor());
+            return Long.parseLong(last.trim());
+        }
+    }
+
+    private static long median(List<Long> samples) {
+        List<Long> sorted = new ArrayList<>(samples);
+        sorted.sort(null);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    // Times the first login response and the first page of persons decoded in this JVM, in nanoseconds
+    public static class FirstCall {
+        private static final String LOGIN =
+                "{\"authtoken\":\"token\",\"username\":\"user\",\"personID\":\"p0\",\"success\":true}";
+
+        public static void main(String[] args) throws IOException {
+            StringBuilder persons = new StringBuilder("{\"data\":[");
+            for (int i = 0; i < 100; i++) {
+                persons.append(i == 0 ? "" : ",").append("{\"personID\":\"p").append(i)
+                        .append("\",\"associatedUsername\":\"user\",\"firstName\":\"Ann\",\"lastName\":\"Smith\"," +
+                                "\"gender\":\"f\",\"fatherID\":\"f\",\"motherID\":\"m\"}");
+            }
+            persons.append("],\"success\":true}");
+
+            if (args[0].equals("warmed")) {
+                JsonCodec.warmUp();
+            }
+            long start = System.nanoTime();
+            Gson gson = args[0].equals("reflective") ? new Gson() : JsonCodec.gson();
+            gson.fromJson(LOGIN, LoginResponse.class);
+            gson.fromJson(persons.toString(), PersonResponse.class);
+            System.out.println(System.nanoTime() - start);
+        }
+    }
+}
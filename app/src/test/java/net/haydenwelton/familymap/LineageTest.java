@@ -0,0 +1,152 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.SharedPreferences;
+
+import com.github.ivanshafran.sharedpreferencesmock.SPMockBuilder;
+
+import net.haydenwelton.familymap.data.DataCache;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import model.AuthToken;
+import model.Event;
+import model.Person;
+import model.User;
+
+public class LineageTest {
+    private static final int GENERATIONS = 50_000;
+
+    @Test
+    public void deepChainIsWalkedWithoutOverflow() {
+        load(chain(GENERATIONS, false));
+        DataCache dataCache = DataCache.getInstance();
+
+        HashMap<String, Integer> generations = new HashMap<>();
+        long start = System.nanoTime();
+        dataCache.walkLineage("c0", false, (person, mother, father, generation) ->
+                generations.put(person.getPersonID(), generation));
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("walkLineage, %,d generation chain: %.2f ms%n", GENERATIONS, elapsed / 1e6);
+
+        assertEquals(GENERATIONS, generations.size());
+        for (int i = 0; i < GENERATIONS; i++) {
+            assertEquals(Integer.valueOf(i), generations.get("c" + i));
+        }
+    }
+
+    @Test
+    public void deepChainCanBeFiltered() {
+        load(chain(GENERATIONS, false));
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("father_side", true).commit();
+        prefs.edit().putBoolean("male", true).commit();
+
+        long start = System.nanoTime();
+        DataCache dataCache = DataCache.getFilteredInstance(prefs);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("filter, %,d generation chain: %.2f ms%n", GENERATIONS, elapsed / 1e6);
+
+        assertEquals(GENERATIONS, dataCache.getEvents().length);
+    }
+
+    @Test
+    public void cycleIsVisitedOnce() {
+        load(chain(GENERATIONS, true));
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("father_side", true).commit();
+        prefs.edit().putBoolean("male", true).commit();
+
+        long start = System.nanoTime();
+        DataCache dataCache = DataCache.getFilteredInstance(prefs);
+        int[] visits = new int[GENERATIONS];
+        dataCache.walkLineage("c0", true, (person, mother, father, generation) ->
+                visits[Integer.parseInt(person.getPersonID().substring(1))]++);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("filter and walkLineage, %,d person cycle: %.2f ms%n", GENERATIONS, elapsed / 1e6);
+
+        for (int count : visits) {
+            assertEquals(1, count);
+        }
+        assertEquals(GENERATIONS, dataCache.getEvents().length);
+    }
+
+    @Test
+    public void sharedAncestorIsVisitedOnce() {
+        // c0's parents are cousins: both grandfathers share the same father, g.
+        Person[] persons = {
+                person("c0", "m", "f1", "m1"),
+                person("f1", "m", "gf", null),
+                person("m1", "f", "gm", null),
+                person("gf", "m", "g", null),
+                person("gm", "m", "g", null),
+                person("g", "m", null, null)
+        };
+        load(persons);
+
+        HashMap<String, Integer> visits = new HashMap<>();
+        DataCache.getInstance().walkLineage("c0", false, (person, mother, father, generation) -> {
+            Integer count = visits.get(person.getPersonID());
+            visits.put(person.getPersonID(), count == null ? 1 : count + 1);
+            if (person.getPersonID().equals("gf") || person.getPersonID().equals("gm")) {
+                assertEquals("g", father.getPersonID());
+            }
+        });
+
+        assertEquals(persons.length, visits.size());
+        for (Integer count : visits.values()) {
+            assertEquals(Integer.valueOf(1), count);
+        }
+    }
+
+    @Test
+    public void filteredWalkSkipsHiddenParents() {
+        load(chain(10, false));
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("father_side", true).commit();
+        DataCache dataCache = DataCache.getFilteredInstance(prefs);
+
+        int[] visited = new int[1];
+        dataCache.walkLineage("c0", true, (person, mother, father, generation) -> visited[0]++);
+        assertEquals(0, visited[0]);
+
+        dataCache.walkLineage("c0", false, (person, mother, father, generation) -> {
+            visited[0]++;
+            assertTrue(mother == null);
+        });
+        assertEquals(10, visited[0]);
+    }
+
+    // A single line of fathers, c0 <- c1 <- ... <- c(n-1), optionally closed into a cycle.
+    private static Person[] chain(int length, boolean cyclic) {
+        Person[] persons = new Person[length];
+        for (int i = 0; i < length; i++) {
+            String father = i + 1 < length ? "c" + (i + 1) : cyclic ? "c0" : null;
+            persons[i] = person("c" + i, "m", father, null);
+        }
+        return persons;
+    }
+
+    private static Person person(String personID, String gender, String fatherID, String motherID) {
+        return new Person(personID, "chain", "First", "Last", gender, fatherID, motherID, null);
+    }
+
+    private static void load(Person[] persons) {
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.invalidate();
+        dataCache.setUser(new User("chain", "password", "email@gmail.com", "First", "Last", "m",
+                persons[0].getPersonID()));
+        dataCache.setAuthToken(new AuthToken("token", "chain"));
+        dataCache.setPersons(persons);
+        Event[] events = new Event[persons.length];
+        for (int i = 0; i < persons.length; i++) {
+            events[i] = new Event("e" + i, "chain", persons[i].getPersonID(), 0f, 0f, "Ireland",
+                    "Cork", "Birth", 2000 - i);
+        }
+        dataCache.setEvents(events);
+    }
+}
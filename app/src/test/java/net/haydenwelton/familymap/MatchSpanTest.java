@@ -0,0 +1,129 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.data.RankedSearch;
+import net.haydenwelton.familymap.model.SearchResult;
+
+import org.junit.Test;
+
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Locale;
+
+import model.AuthToken;
+import model.Event;
+import model.Person;
+import model.User;
+
+public class MatchSpanTest {
+    private static final String[] QUERIES = { "o", "an", "smith", "jo", "wil", "dub", "united", "states", "19",
+            "1850", "bapt", "e", "son", "ia" };
+
+    @Test
+    public void packsFieldStartAndLength() {
+        long match = SearchResult.packMatch(SearchResult.COUNTRY, 123_456, 78);
+        assertEquals(SearchResult.COUNTRY, SearchResult.matchField(match));
+        assertEquals(123_456, SearchResult.matchStart(match));
+        assertEquals(78, SearchResult.matchLength(match));
+        assertNotEquals(SearchResult.NO_MATCH, SearchResult.packMatch(SearchResult.NAME, 0, 0));
+    }
+
+    @Test
+    public void spansCoverTheMatchedText() {
+        SyntheticData.generate(5_000, 4).load();
+        for (String query : QUERIES) {
+            RankedSearch ranked = DataProcessor.searchRanked(query);
+            int checked = 0;
+            while (ranked.hasMore() && checked < 3_000) {
+                for (SearchResult result : ranked.nextPage(500)) {
+                    long match = result.getMatch();
+                    assertNotEquals(query + " " + result.getMainInfo(), SearchResult.NO_MATCH, match);
+                    int start = SearchResult.matchStart(match);
+                    String matched = result.getMainInfo().substring(start, start + SearchResult.matchLength(match));
+                    assertEquals(result.getMainInfo(), query, matched.toLowerCase(Locale.ROOT));
+                    checked++;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void spanFollowsTheRank() {
+        Person[] persons = {
+                new Person("ann", "u", "Mary Ann", "Ann", "f", null, null, null),
+                new Person("jose", "u", "José", "García", "m", null, null, null),
+                new Person("zoe", "u", "Zoë", "Brontë", "f", null, null, null),
+                new Person("decomposed", "u", "Zoe\u0308", "Jones", "f", null, null, null),
+        };
+        Event[] events = {
+                new Event("e1", "u", "ann", 53.3f, -6.3f, "Ireland", "Dublin", "Birth", 1901),
+                new Event("e2", "u", "jose", 40.4f, -3.7f, "España", "Málaga", "Marriage", 1925),
+        };
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.invalidate();
+        dataCache.setUser(new User("u", "password", "email@gmail.com", "Mary Ann", "Ann", "f", "ann"));
+        dataCache.setAuthToken(new AuthToken("token", "u"));
+        dataCache.setPersons(persons);
+        dataCache.setEvents(events);
+
+        // "Ann" is the whole last name, so that is the match shown, not the "Ann" inside the first name
+        SearchResult ann = first("ann");
+        assertEquals(SearchResult.NAME, SearchResult.matchField(ann.getMatch()));
+        assertEquals("Mary Ann ".length(), SearchResult.matchStart(ann.getMatch()));
+
+        // Accented names keep their lengths when folded, so their spans are positions in the name
+        SearchResult garcia = first("garc");
+        assertEquals("José ".length(), SearchResult.matchStart(garcia.getMatch()));
+        assertEquals(4, SearchResult.matchLength(garcia.getMatch()));
+
+        // A name written with a combining accent folds shorter, so it isn't highlighted
+        List<SearchResult> zoes = DataProcessor.searchRanked("zoe").nextPage(10);
+        assertEquals(2, zoes.size());
+        for (SearchResult zoe : zoes) {
+            String name = Normalizer.normalize(zoe.getMainInfo(), Normalizer.Form.NFC);
+            assertEquals(zoe.getMainInfo().length() == name.length(), zoe.getMatch() != SearchResult.NO_MATCH);
+        }
+
+        SearchResult dublin = first("dub");
+        assertEquals(SearchResult.CITY, SearchResult.matchField(dublin.getMatch()));
+        assertEquals("BIRTH: ".length(), SearchResult.matchStart(dublin.getMatch()));
+        SearchResult spain = first("espa");
+        assertEquals(SearchResult.COUNTRY, SearchResult.matchField(spain.getMatch()));
+        assertEquals("MARRIAGE: Málaga, ".length(), SearchResult.matchStart(spain.getMatch()));
+        SearchResult year = first("925");
+        assertEquals(SearchResult.YEAR, SearchResult.matchField(year.getMatch()));
+        assertEquals("MARRIAGE: Málaga, España (1".length(), SearchResult.matchStart(year.getMatch()));
+
+        // Sounds-like matches need not contain the query, and then there is nothing to highlight
+        assertEquals(SearchResult.NO_MATCH, DataProcessor.searchSoundsLike("garsia").nextPage(1).get(0).getMatch());
+    }
+
+    @Test
+    public void spansFollowTheShownEvent() {
+        Event missing = new Event("e1", "u", "ann", 0f, 0f, null, null, null, 1911);
+        SearchResult census = new SearchResult(missing, "Ann", "Smith", SearchResult.YEAR, 2, 2);
+        assertEquals("NULL: null, null (1911)", census.getMainInfo());
+        assertEquals("NULL: null, null (19".length(), SearchResult.matchStart(census.getMatch()));
+
+        // "ß" is shown as "SS", so everything after the type moves along with it
+        Event street = new Event("e2", "u", "ann", 0f, 0f, "Deutschland", "Köln", "Straße", 1900);
+        SearchResult city = new SearchResult(street, "Ann", "Smith", SearchResult.CITY, 0, 3);
+        assertEquals("STRASSE: Köln, Deutschland (1900)", city.getMainInfo());
+        assertEquals("STRASSE: ".length(), SearchResult.matchStart(city.getMatch()));
+        assertEquals("Köl", city.getMainInfo().substring(SearchResult.matchStart(city.getMatch()),
+                SearchResult.matchStart(city.getMatch()) + 3));
+        // and the type itself no longer lines up with the match
+        assertEquals(SearchResult.NO_MATCH,
+                new SearchResult(street, "Ann", "Smith", SearchResult.EVENT_TYPE, 4, 2).getMatch());
+        assertEquals(SearchResult.NO_MATCH,
+                new SearchResult(missing, "Ann", "Smith", SearchResult.YEAR, -1, 0).getMatch());
+    }
+
+    private static SearchResult first(String query) {
+        return DataProcessor.searchRanked(query).nextPage(1).get(0);
+    }
+}
@@ -0,0 +1,134 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.SharedPreferences;
+
+import com.github.ivanshafran.sharedpreferencesmock.SPMockBuilder;
+
+import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.data.SearchSession;
+import net.haydenwelton.familymap.model.SearchResult;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class ParallelSearchTest {
+    // Broad queries that check every person or event, and narrow ones answered from the indexes
+    private static final String[] QUERIES = { "a", "e", "ma", "n s", "19", "1", "mar", "jane walsh",
+            "dublin", "birth", "census", "zzz" };
+
+    private static final int[] THREADS = { 1, 2, 4, 8 };
+
+    @Test
+    public void parallelSearchMatchesSequential() {
+        SyntheticData data = SyntheticData.generate(50_000, 4);
+        data.load();
+        checkAllQueries();
+
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("father_side", true).commit();
+        prefs.edit().putBoolean("male", true).commit();
+        DataCache.getFilteredInstance(prefs);
+        checkAllQueries();
+    }
+
+    @Test
+    public void sessionRefinesInParallel() {
+        SyntheticData data = SyntheticData.generate(50_000, 4);
+        data.load();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SearchSession sequential = new SearchSession();
+            SearchSession parallel = new SearchSession(pool);
+            for (String query : new String[] { "j", "ja", "jan", "jane", "jane w", "jane", "d", "du", "dub" }) {
+                List<SearchResult> expected = new ArrayList<>();
+                sequential.search(expected, query);
+                List<SearchResult> actual = new ArrayList<>();
+                parallel.search(actual, query);
+                assertEquals(query, ids(expected), ids(actual));
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void speedupByThreadCount() {
+        Benchmarks.assumeEnabled();
+        SyntheticData data = SyntheticData.generate(250_000, 4);
+        data.load();
+        List<String> sequential = new ArrayList<>();
+        for (String query : QUERIES) {
+            sequential.add(String.join(",", ids(search(query, null))));
+        }
+
+        System.out.printf("%d available processors, %,d persons, %,d events%n",
+                Runtime.getRuntime().availableProcessors(), data.getPersons().length, data.getEvents().length);
+        double base = 0;
+        for (int threads : THREADS) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                // Warm up, then time every query a few times
+                for (String query : QUERIES) {
+                    search(query, pool);
+                }
+                long total = 0;
+                for (int round = 0; round < 2; round++) {
+                    for (int q = 0; q < QUERIES.length; q++) {
+                        System.gc();
+                        long start = System.nanoTime();
+                        List<SearchResult> results = search(QUERIES[q], pool);
+                        total += System.nanoTime() - start;
+                        assertEquals(QUERIES[q], sequential.get(q), String.join(",", ids(results)));
+                    }
+                }
+                double perQuery = total / 1e6 / (2 * QUERIES.length);
+                if (threads == 1) {
+                    base = perQuery;
+                }
+                System.out.printf("%d thread(s): %8.2f ms/query, speedup %.2fx%n", threads, perQuery, base / perQuery);
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private void checkAllQueries() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String query : QUERIES) {
+                assertEquals(query, ids(search(query, null)), ids(search(query, pool)));
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<SearchResult> search(String query, ForkJoinPool pool) {
+        List<SearchResult> results = new ArrayList<>();
+        if (pool == null) {
+            DataProcessor.searchPersons(results, query);
+            DataProcessor.searchEvents(results, query);
+        }
+        else {
+            DataProcessor.searchParallel(results, query, pool);
+        }
+        return results;
+    }
+
+    private static List<String> ids(List<SearchResult> results) {
+        List<String> ids = new ArrayList<>(results.size());
+        for (SearchResult result : results) {
+            ids.add(result.getType() + ":" + result.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,130 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.SharedPreferences;
+
+import com.github.ivanshafran.sharedpreferencesmock.SPMockBuilder;
+
+import net.haydenwelton.familymap.data.DataCache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import model.Event;
+import model.Person;
+
+public class PersonEventsTest {
+
+    @Test
+    public void eventsAreChronological() {
+        SyntheticData data = SyntheticData.generate(500, 5);
+        data.load();
+        DataCache dataCache = DataCache.getInstance();
+        Event.EventComparator comparator = new Event.EventComparator();
+
+        for (Person person : data.getPersons()) {
+            List<Event> events = dataCache.getPersonEvents(person.getPersonID());
+            assertEquals(5, events.size());
+            assertEquals("Birth", events.get(0).getEventType());
+            assertEquals("Death", events.get(events.size() - 1).getEventType());
+            for (int i = 1; i < events.size(); i++) {
+                assertTrue(comparator.compare(events.get(i - 1), events.get(i)) <= 0);
+            }
+        }
+    }
+
+    @Test
+    public void missingYearsAndRepeatedBirthsAreOrdered() {
+        Person[] persons = { new Person("ann", "u", "Ann", "Smith", "f", null, null, null) };
+        Event[] events = {
+                event("census", "Census", null),
+                event("death", "Death", null),
+                event("birth2", "birth", 1900),
+                event("baptism", "Baptism", null),
+                event("marriage", "Marriage", 1920),
+                event("birth1", "Birth", 1900),
+                event("birth0", "Birth", 1890),
+        };
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.invalidate();
+        dataCache.setData(persons, events);
+
+        List<String> ids = new ArrayList<>();
+        for (Event event : dataCache.getPersonEvents("ann")) {
+            ids.add(event.getEventID());
+        }
+        assertEquals(Arrays.asList("birth0", "birth1", "birth2", "marriage", "baptism", "census", "death"), ids);
+    }
+
+    @Test
+    public void manyEventsSortWithoutContractViolations() {
+        // Long enough that Arrays.sort merges runs, which is where an inconsistent order is noticed
+        Person[] persons = { new Person("ann", "u", "Ann", "Smith", "f", null, null, null) };
+        String[] types = { "Birth", "Death", "Census", "Baptism" };
+        Event[] events = new Event[500];
+        Random random = new Random(7);
+        for (int i = 0; i < events.length; i++) {
+            Integer year = random.nextInt(4) == 0 ? null : 1800 + random.nextInt(100);
+            events[i] = event("e" + i, types[random.nextInt(types.length)], year);
+        }
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.invalidate();
+        dataCache.setData(persons, events);
+
+        List<Event> sorted = dataCache.getPersonEvents("ann");
+        assertEquals(events.length, sorted.size());
+        for (int i = 1; i < sorted.size(); i++) {
+            assertTrue(stage(sorted.get(i - 1)) <= stage(sorted.get(i)));
+            if (stage(sorted.get(i - 1)) == stage(sorted.get(i)) && sorted.get(i - 1).getYear() == null) {
+                assertNull(sorted.get(i).getYear());
+            }
+        }
+    }
+
+    @Test
+    public void eventsMatchFilteredScan() {
+        SyntheticData data = SyntheticData.generate(500, 3);
+        data.load();
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("father_side", true).commit();
+        prefs.edit().putBoolean("male", true).commit();
+        DataCache dataCache = DataCache.getFilteredInstance(prefs);
+        Event[] filteredEvents = dataCache.getEvents();
+
+        int total = 0;
+        for (Person person : data.getPersons()) {
+            List<Event> expected = new ArrayList<>();
+            for (Event event : filteredEvents) {
+                if (event.getPersonID().equals(person.getPersonID())) {
+                    expected.add(event);
+                }
+            }
+            List<Event> actual = dataCache.getPersonEvents(person.getPersonID());
+            assertEquals(expected.size(), actual.size());
+            assertTrue(actual.containsAll(expected));
+            total += actual.size();
+        }
+        assertEquals(filteredEvents.length, total);
+    }
+
+    @Test
+    public void unknownPersonHasNoEvents() {
+        SyntheticData.generate(10, 2).load();
+        assertTrue(DataCache.getInstance().getPersonEvents("missing").isEmpty());
+    }
+
+    private static Event event(String id, String type, Integer year) {
+        return new Event(id, "u", "ann", 0f, 0f, "Ireland", "Cork", type, year);
+    }
+
+    private static int stage(Event event) {
+        return event.getEventType().equals("Birth") ? 0 : event.getEventType().equals("Death") ? 2 : 1;
+    }
+}
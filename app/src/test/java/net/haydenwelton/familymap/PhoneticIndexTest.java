@@ -0,0 +1,174 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.data.RankedSearch;
+import net.haydenwelton.familymap.data.SearchPipeline;
+import net.haydenwelton.familymap.model.SearchResult;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import model.AuthToken;
+import model.Event;
+import model.Person;
+import model.User;
+
+public class PhoneticIndexTest {
+    private static final String[] FIRST_NAMES = { "Catherine", "Katherine", "Kathryn", "John", "Jon", "Sean",
+            "Shaun", "Mary", "Marie", "Ann", "Anne", "Bridget", "Brigid", "Stephen", "Steven", "Zoë" };
+    private static final String[] LAST_NAMES = { "Smith", "Smyth", "Smythe", "Schmidt", "Meyer", "Maier", "Mayer",
+            "Walsh", "Welsh", "O'Brien", "O Brien", "Johnson", "Jonson", "Jansen", "Ashcraft", "Tymczak",
+            "Pfister", "Honeyman", "Müller", "Mueller", "Miller", "Ó Súilleabháin", "Sullivan", "Van der Berg" };
+
+    private static final String[] QUERIES = { "smith", "Smyth", "meyer", "maier", "obrien", "o'brien",
+            "katherine", "catherine smith", "sean sullivan", "muller", "Mueller", "zoe", "van berg", "x", "'" };
+
+    @Test
+    public void soundexCodes() {
+        assertEquals("R163", DataProcessor.soundex("Robert"));
+        assertEquals("R163", DataProcessor.soundex("Rupert"));
+        assertEquals("R150", DataProcessor.soundex("Rubin"));
+        assertEquals("A261", DataProcessor.soundex("Ashcraft"));
+        assertEquals("T522", DataProcessor.soundex("Tymczak"));
+        assertEquals("P236", DataProcessor.soundex("Pfister"));
+        assertEquals("H555", DataProcessor.soundex("Honeyman"));
+        assertEquals("L000", DataProcessor.soundex("Lee"));
+        assertEquals(DataProcessor.soundex("Smith"), DataProcessor.soundex("Smyth"));
+        assertEquals(DataProcessor.soundex("Meyer"), DataProcessor.soundex("Maier"));
+        assertEquals("O165", DataProcessor.soundex("O'Brien"));
+        assertEquals("J500 S530", DataProcessor.soundex("Jane Smith-Smyth"));
+        assertEquals("Z000", DataProcessor.soundex("Zoë"));
+        assertEquals("", DataProcessor.soundex("- '"));
+    }
+
+    @Test
+    public void indexMatchesBruteForce() {
+        load(generate(20_000, 5));
+        Person[] persons = DataCache.getInstance().getPersons();
+        for (String query : QUERIES) {
+            assertEquals(query, bruteForce(persons, query), indexed(query));
+        }
+
+        // Exact spellings rank ahead of the ones that only sound alike
+        List<SearchResult> first = DataProcessor.searchSoundsLike("smyth").nextPage(1);
+        assertTrue(first.get(0).getMainInfo().endsWith("Smyth"));
+    }
+
+    @Test
+    public void lookupBenchmark() {
+        Benchmarks.assumeEnabled();
+        load(generate(250_000, 9));
+        Person[] persons = DataCache.getInstance().getPersons();
+
+        // Warm up both paths before timing them
+        for (String query : QUERIES) {
+            bruteForce(persons, query);
+            indexed(query);
+        }
+
+        long bruteTotal = 0;
+        long indexTotal = 0;
+        for (String query : QUERIES) {
+            System.gc();
+            long start = System.nanoTime();
+            Set<String> expected = bruteForce(persons, query);
+            long bruteTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            RankedSearch ranked = DataProcessor.searchSoundsLike(query);
+            List<SearchResult> page = ranked.nextPage(SearchPipeline.PAGE_SIZE);
+            long indexTime = System.nanoTime() - start;
+
+            System.out.printf("%-18s %,7d persons: brute force %8.2f ms, index %6.2f ms%n",
+                    "\"" + query + "\"", ranked.size(), bruteTime / 1e6, indexTime / 1e6);
+            assertEquals(expected.size(), ranked.size());
+            assertEquals(Math.min(expected.size(), SearchPipeline.PAGE_SIZE), page.size());
+            bruteTotal += bruteTime;
+            indexTotal += indexTime;
+        }
+        System.out.printf("%d queries over %,d persons: brute force %.2f ms/query, index %.2f ms/query%n",
+                QUERIES.length, persons.length, bruteTotal / 1e6 / QUERIES.length, indexTotal / 1e6 / QUERIES.length);
+        assertTrue(indexTotal < bruteTotal);
+    }
+
+    @Test
+    public void pipelineToggle() throws Exception {
+        load(generate(400, 1));
+        List<List<SearchResult>> published = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        SearchPipeline pipeline = new SearchPipeline(0, (generation, query, results) -> {
+            published.add(results);
+            done.countDown();
+        });
+        pipeline.submit("smyth");
+        Thread.sleep(100);
+        pipeline.setSoundsLike(true);
+        pipeline.submit("smyth");
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        pipeline.shutdown();
+
+        Set<String> lastNames = new HashSet<>();
+        for (SearchResult result : published.get(1)) {
+            lastNames.add(result.getMainInfo().substring(result.getMainInfo().indexOf(' ') + 1));
+        }
+        assertTrue(published.get(1).size() > published.get(0).size());
+        assertTrue(lastNames.containsAll(Arrays.asList("Smith", "Smyth", "Smythe")));
+    }
+
+    // Every person whose name words have every code of the query's words, comparing codes one person at a time
+    private static Set<String> bruteForce(Person[] persons, String query) {
+        List<String> queryCodes = Arrays.asList(DataProcessor.soundex(query).split(" "));
+        Set<String> ids = new HashSet<>();
+        if (DataProcessor.soundex(query).isEmpty()) return ids;
+        for (Person person : persons) {
+            List<String> codes = Arrays.asList(
+                    DataProcessor.soundex(person.getFirstName() + " " + person.getLastName()).split(" "));
+            if (codes.containsAll(queryCodes)) {
+                ids.add(person.getPersonID());
+            }
+        }
+        return ids;
+    }
+
+    private static Set<String> indexed(String query) {
+        RankedSearch ranked = DataProcessor.searchSoundsLike(query);
+        Set<String> ids = new HashSet<>();
+        for (SearchResult result : ranked.nextPage(ranked.size())) {
+            ids.add(result.getId());
+        }
+        return ids;
+    }
+
+    private static Person[] generate(int count, long seed) {
+        Random random = new Random(seed);
+        Person[] persons = new Person[count];
+        for (int i = 0; i < count; i++) {
+            persons[i] = new Person("p" + i, "u", FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+                    LAST_NAMES[random.nextInt(LAST_NAMES.length)], i % 2 == 0 ? "m" : "f", null, null, null);
+        }
+        return persons;
+    }
+
+    private static void load(Person[] persons) {
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.invalidate();
+        dataCache.setUser(new User("u", "password", "email@gmail.com", persons[0].getFirstName(),
+                persons[0].getLastName(), persons[0].getGender(), persons[0].getPersonID()));
+        dataCache.setAuthToken(new AuthToken("token", "u"));
+        dataCache.setPersons(persons);
+        dataCache.setEvents(new Event[0]);
+    }
+}
@@ -0,0 +1,190 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.SharedPreferences;
+
+import com.github.ivanshafran.sharedpreferencesmock.SPMockBuilder;
+
+import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.data.RankedSearch;
+import net.haydenwelton.familymap.data.SearchQuery;
+import net.haydenwelton.familymap.model.SearchResult;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import model.Event;
+import model.Person;
+
+public class QueryPlanTest {
+    private static final String[] QUERIES = { "type:birth", "year:1900", "year:1850..1900", "year:..1800",
+            "year:1990..", "year:abc", "country:ireland", "country:\"united states\"", "city:dub year:1950..1960",
+            "type:birth year:1850..1900 country:Ireland name:o'brien", "name:jane name:walsh",
+            "name:o'brien type:death", "type:census city:Cork", "walsh year:1900..1950", "TYPE:Death Country:spain",
+            "type:birth type:death", "name:zzz", "type:", "name:jane walsh" };
+
+    // Multi-clause queries for the benchmark
+    private static final String[] BENCHMARK = { "type:birth year:1850..1900 country:Ireland name:o'brien",
+            "type:census city:Cork", "year:1900..1910 country:france", "name:\"jane walsh\" type:birth",
+            "country:norway year:1700..1750 type:marriage", "type:death year:1950..2050" };
+
+    @Test
+    public void parsesClauses() {
+        assertNull(SearchQuery.parse("o'brien"));
+        assertNull(SearchQuery.parse("time: 10"));
+
+        SearchQuery query = SearchQuery.parse("type:birth  year:1850..1900 country:\"united states\" jane");
+        List<SearchQuery.Clause> clauses = query.getClauses();
+        assertEquals(4, clauses.size());
+        assertEquals(SearchQuery.Field.TYPE, clauses.get(0).getField());
+        assertEquals(1850, clauses.get(1).getFromYear());
+        assertEquals(1900, clauses.get(1).getToYear());
+        assertEquals("united states", clauses.get(2).getValue());
+        assertEquals(SearchQuery.Field.ANY, clauses.get(3).getField());
+
+        SearchQuery open = SearchQuery.parse("year:..1900 year:1850.. year:18x");
+        assertEquals(Integer.MIN_VALUE, open.getClauses().get(0).getFromYear());
+        assertEquals(Integer.MAX_VALUE, open.getClauses().get(1).getToYear());
+        assertTrue(open.getClauses().get(2).getFromYear() > open.getClauses().get(2).getToYear());
+    }
+
+    @Test
+    public void planMatchesNaiveFilter() {
+        SyntheticData.generate(20_000, 4).load();
+        checkAllQueries();
+
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("father_side", true).commit();
+        prefs.edit().putBoolean("male", true).commit();
+        DataCache.getFilteredInstance(prefs);
+        checkAllQueries();
+    }
+
+    @Test
+    public void mostSelectiveClauseRunsFirst() {
+        SyntheticData.generate(20_000, 4).load();
+        String plan = DataProcessor.explainQuery("type:birth year:1850..1900 country:Ireland name:o'brien");
+        System.out.print(plan);
+        String[] lines = plan.split("\n");
+        assertTrue(lines[0].startsWith("read the first clause's index"));
+        assertTrue(lines[1].startsWith("1. year:1850..1900") || lines[1].startsWith("1. name:o'brien"));
+        assertTrue(lines[lines.length - 2].startsWith("4. type:birth"));
+        assertTrue(lines[lines.length - 1].startsWith("persons: none"));
+
+        assertTrue(DataProcessor.explainQuery("jane").startsWith("plain search"));
+        assertTrue(DataProcessor.explainQuery("name:walsh").contains("persons: names matching"));
+    }
+
+    @Test
+    public void multiClauseBenchmark() {
+        SyntheticData data = SyntheticData.generate(250_000, 4);
+        data.load();
+        Event[] events = DataCache.getInstance().getEvents();
+
+        // Warm up both paths before timing them
+        for (String query : BENCHMARK) {
+            naive(events, SearchQuery.parse(query));
+            DataProcessor.searchRanked(query);
+        }
+
+        for (String query : BENCHMARK) {
+            System.gc();
+            long start = System.nanoTime();
+            List<String> expected = naive(events, SearchQuery.parse(query));
+            long scanTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            RankedSearch ranked = DataProcessor.searchRanked(query);
+            long planTime = System.nanoTime() - start;
+
+            System.out.printf("%-60s %,7d events: scan %7.2f ms, plan %7.2f ms%n", query, ranked.size(),
+                    scanTime / 1e6, planTime / 1e6);
+            System.out.print(DataProcessor.explainQuery(query));
+            assertEquals(expected.size(), ranked.size());
+        }
+    }
+
+    private static void checkAllQueries() {
+        Event[] events = DataCache.getInstance().getEvents();
+        for (String query : QUERIES) {
+            SearchQuery parsed = SearchQuery.parse(query);
+            List<String> expected = naivePersons(parsed);
+            expected.addAll(naive(events, parsed));
+
+            RankedSearch ranked = DataProcessor.searchRanked(query);
+            List<String> actual = new ArrayList<>();
+            for (SearchResult result : ranked.nextPage(ranked.size())) {
+                actual.add(result.getId());
+            }
+            assertEquals(query, expected, actual);
+        }
+    }
+
+    // Persons whose full names contain every clause's value, when every clause is about names
+    private static List<String> naivePersons(SearchQuery query) {
+        List<String> ids = new ArrayList<>();
+        for (SearchQuery.Clause clause : query.getClauses()) {
+            if (clause.getField() != SearchQuery.Field.NAME && clause.getField() != SearchQuery.Field.ANY) {
+                return ids;
+            }
+        }
+        if (query.getClauses().isEmpty()) return ids;
+        for (Person person : DataCache.getInstance().getPersons()) {
+            boolean all = true;
+            for (SearchQuery.Clause clause : query.getClauses()) {
+                all &= nameOf(person).contains(clause.getValue().toLowerCase(Locale.ROOT));
+            }
+            if (all) ids.add(person.getPersonID());
+        }
+        return ids;
+    }
+
+    // Filtered events that pass every clause, checked one event object at a time
+    private static List<String> naive(Event[] events, SearchQuery query) {
+        DataCache dataCache = DataCache.getInstance();
+        List<String> ids = new ArrayList<>();
+        if (query.getClauses().isEmpty()) return ids;
+        for (Event event : events) {
+            if (dataCache.getFilteredEventPosition(event.getEventID()) < 0) continue;
+            boolean all = true;
+            for (SearchQuery.Clause clause : query.getClauses()) {
+                all &= passes(event, clause, dataCache);
+            }
+            if (all) ids.add(event.getEventID());
+        }
+        return ids;
+    }
+
+    private static boolean passes(Event event, SearchQuery.Clause clause, DataCache dataCache) {
+        String value = clause.getValue().toLowerCase(Locale.ROOT);
+        String name = nameOf(dataCache.getPersonByID(event.getPersonID()));
+        switch (clause.getField()) {
+            case TYPE:
+                return event.getEventType().toLowerCase(Locale.ROOT).contains(value);
+            case CITY:
+                return event.getCity().toLowerCase(Locale.ROOT).contains(value);
+            case COUNTRY:
+                return event.getCountry().toLowerCase(Locale.ROOT).contains(value);
+            case YEAR:
+                return event.getYear() >= clause.getFromYear() && event.getYear() <= clause.getToYear();
+            case NAME:
+                return name.contains(value);
+            default:
+                return event.getEventType().toLowerCase(Locale.ROOT).contains(value) ||
+                        event.getCity().toLowerCase(Locale.ROOT).contains(value) ||
+                        event.getCountry().toLowerCase(Locale.ROOT).contains(value) ||
+                        String.valueOf(event.getYear()).contains(value) || name.contains(value);
+        }
+    }
+
+    private static String nameOf(Person person) {
+        return (person.getFirstName() + " " + person.getLastName()).toLowerCase(Locale.ROOT);
+    }
+}
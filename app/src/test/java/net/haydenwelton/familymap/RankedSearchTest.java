@@ -0,0 +1,170 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.SharedPreferences;
+
+import com.github.ivanshafran.sharedpreferencesmock.SPMockBuilder;
+
+import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.data.RankedSearch;
+import net.haydenwelton.familymap.model.SearchResult;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import model.Event;
+import model.Person;
+
+public class RankedSearchTest {
+    private static final String[] QUERIES = { "a", "an", "mar", "mary", "jane walsh", "smith", "walsh",
+            "n s", "dublin", "ireland", "1950", "19", "birth", "census", "ca", "zzz" };
+
+    private static final int PAGE = 100;
+
+    @Test
+    public void pagesFollowRankOrder() {
+        SyntheticData.generate(20_000, 4).load();
+        checkAllQueries();
+
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("mother_side", true).commit();
+        prefs.edit().putBoolean("female", true).commit();
+        DataCache.getFilteredInstance(prefs);
+        checkAllQueries();
+    }
+
+    @Test
+    public void exactMatchesComeFirst() {
+        SyntheticData.generate(2_000, 3).load();
+        RankedSearch ranked = DataProcessor.searchRanked("jane walsh");
+        assertTrue(ranked.hasMore());
+        SearchResult first = ranked.nextPage(1).get(0);
+        assertEquals(SearchResult.Type.PERSON, first.getType());
+        assertEquals("jane walsh", first.getMainInfo().toLowerCase());
+
+        // Blank queries match nothing
+        RankedSearch blank = DataProcessor.searchRanked("  ");
+        assertEquals(0, blank.size());
+        assertFalse(blank.hasMore());
+        assertTrue(blank.nextPage(PAGE).isEmpty());
+    }
+
+    @Test
+    public void firstPageOfBroadQueries() {
+        SyntheticData data = SyntheticData.generate(250_000, 4);
+        data.load();
+        String[] broad = { "a", "e", "1", "19", "n" };
+
+        // Warm up both paths before measuring them
+        for (String query : broad) {
+            everything(query);
+            DataProcessor.searchRanked(query).nextPage(PAGE);
+        }
+
+        for (String query : broad) {
+            System.gc();
+            long[] fullBytes = new long[1];
+            long start = System.nanoTime();
+            int[] total = new int[1];
+            fullBytes[0] = allocatedBytes(() -> total[0] = everything(query).size());
+            long fullTime = System.nanoTime() - start;
+
+            System.gc();
+            start = System.nanoTime();
+            long pageBytes = allocatedBytes(() -> DataProcessor.searchRanked(query).nextPage(PAGE));
+            long pageTime = System.nanoTime() - start;
+
+            System.out.printf("%-5s %,9d matches: every result %8.2f ms %,9d KB, first page %8.2f ms %,9d KB%n",
+                    "\"" + query + "\"", total[0], fullTime / 1e6, fullBytes[0] / 1024,
+                    pageTime / 1e6, pageBytes / 1024);
+            assertTrue(pageBytes < fullBytes[0]);
+        }
+    }
+
+    private static void checkAllQueries() {
+        for (String query : QUERIES) {
+            List<SearchResult> expected = naiveRanking(query);
+            RankedSearch ranked = DataProcessor.searchRanked(query);
+            assertEquals(expected.size(), ranked.size());
+
+            // Odd-sized pages, so page boundaries fall inside runs of equal rank
+            List<SearchResult> paged = new ArrayList<>();
+            while (ranked.hasMore()) {
+                List<SearchResult> page = ranked.nextPage(37);
+                assertTrue(page.size() > 0 && page.size() <= 37);
+                paged.addAll(page);
+            }
+            assertTrue(ranked.nextPage(37).isEmpty());
+            assertEquals(query, ids(expected), ids(paged));
+        }
+    }
+
+    // Every result of the plain search, stably sorted by kind and then rank worked out on lower-case strings
+    private static List<SearchResult> naiveRanking(String query) {
+        List<SearchResult> results = everything(query);
+        DataCache dataCache = DataCache.getInstance();
+        String q = query.toLowerCase();
+        results.sort(Comparator.comparingInt(result -> {
+            if (result.getType() == SearchResult.Type.PERSON) {
+                Person person = dataCache.getPersonByID(result.getId());
+                String first = person.getFirstName().toLowerCase();
+                String last = person.getLastName().toLowerCase();
+                if (first.equals(q) || last.equals(q)) return 0;
+                return naiveRank(first + " " + last, q);
+            }
+            Event event = dataCache.getEventByID(result.getId());
+            int rank = Math.min(naiveRank(event.getEventType().toLowerCase(), q),
+                    naiveRank(event.getCity().toLowerCase(), q));
+            rank = Math.min(rank, naiveRank(event.getCountry().toLowerCase(), q));
+            rank = Math.min(rank, naiveRank(String.valueOf(event.getYear()), q));
+            return 4 + rank;
+        }));
+        return results;
+    }
+
+    private static int naiveRank(String text, String query) {
+        if (text.equals(query)) return 0;
+        if (text.startsWith(query)) return 1;
+        boolean found = false;
+        for (int i = 1; i + query.length() <= text.length(); i++) {
+            if (text.startsWith(query, i)) {
+                if (!Character.isLetterOrDigit(text.charAt(i - 1))) return 2;
+                found = true;
+            }
+        }
+        return found ? 3 : 4;
+    }
+
+    private static List<SearchResult> everything(String query) {
+        List<SearchResult> results = new ArrayList<>();
+        DataProcessor.searchPersons(results, query);
+        DataProcessor.searchEvents(results, query);
+        return results;
+    }
+
+    private static List<String> ids(List<SearchResult> results) {
+        List<String> ids = new ArrayList<>(results.size());
+        for (SearchResult result : results) {
+            ids.add(result.getType() + ":" + result.getId());
+        }
+        return ids;
+    }
+
+    // Bytes allocated by the current thread while running the task
+    private static long allocatedBytes(Runnable task) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        task.run();
+        return threads.getThreadAllocatedBytes(id) - before;
+    }
+}
@@ -0,0 +1,276 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import net.haydenwelton.familymap.data.DataCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import model.AuthToken;
+import model.Event;
+import model.Person;
+import responses.EventResponse;
+import responses.PersonResponse;
+
+public class ResponseCacheTest {
+    private static final String[] DATES = { "Wed, 21 Oct 2015 07:28:00 GMT", "Thu, 22 Oct 2015 09:00:00 GMT" };
+
+    private final Gson gson = new Gson();
+    private HttpServer server;
+    private String port;
+    private Path directory;
+
+    private volatile Person[] persons;
+    private volatile Event[] events;
+    // Bumped whenever the data served changes
+    private volatile int personVersion;
+    private volatile int eventVersion;
+    private volatile boolean sendEtags = true;
+    private volatile boolean sendDates = true;
+    private volatile String lastIfNoneMatch;
+    private final AtomicInteger fullTransfers = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException {
+        SyntheticData data = SyntheticData.generate(5_000, 4);
+        persons = data.getPersons();
+        events = data.getEvents();
+        directory = Files.createTempDirectory("responses");
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/person/", exchange -> respond(exchange, "p" + personVersion, personVersion,
+                new PersonResponse(persons, null, true)));
+        server.createContext("/event/", exchange -> respond(exchange, "e" + eventVersion, eventVersion,
+                new EventResponse(events, null, true)));
+        server.start();
+        port = String.valueOf(server.getAddress().getPort());
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.stop(0);
+        deleteContents();
+        Files.delete(directory);
+    }
+
+    @Test
+    public void unchangedDataIsReadFromDisk() {
+        ResponseCache cache = new ResponseCache(directory.toFile());
+        assertTrue(login(cache, "alice"));
+        assertEquals(2, fullTransfers.get());
+        assertEquals(0, notModified.get());
+        String personJson = gson.toJson(DataCache.getInstance().getPersons());
+        String eventJson = gson.toJson(DataCache.getInstance().getEvents());
+
+        // Logging in again asks whether anything changed, and fills the cache from the stored copies
+        assertTrue(login(cache, "alice"));
+        assertEquals(2, fullTransfers.get());
+        assertEquals(2, notModified.get());
+        assertEquals(personJson, gson.toJson(DataCache.getInstance().getPersons()));
+        assertEquals(eventJson, gson.toJson(DataCache.getInstance().getEvents()));
+        assertEquals(5_000, DataCache.getInstance().getPersonList().size());
+
+        // Only what changed is downloaded again
+        Event[] changed = events.clone();
+        changed[0] = new Event("e0", SyntheticData.USERNAME, changed[0].getPersonID(), 1f, 2f, "Iceland",
+                "Reykjavik", "Birth", 1900);
+        events = changed;
+        eventVersion++;
+        assertTrue(login(cache, "alice"));
+        assertEquals(3, fullTransfers.get());
+        assertEquals(3, notModified.get());
+        assertEquals("Reykjavik", DataCache.getInstance().getEventByID("e0").getCity());
+
+        assertTrue(login(cache, "alice"));
+        assertEquals(3, fullTransfers.get());
+        assertEquals("Reykjavik", DataCache.getInstance().getEventByID("e0").getCity());
+    }
+
+    @Test
+    public void copiesAreKeptPerUser() {
+        ResponseCache cache = new ResponseCache(directory.toFile());
+        assertTrue(login(cache, "alice"));
+
+        // The server would answer 304 to the same ETag, but bob has never downloaded anything
+        assertTrue(login(cache, "bob"));
+        assertNull(lastIfNoneMatch);
+        assertEquals(4, fullTransfers.get());
+
+        assertTrue(login(cache, "alice"));
+        assertTrue(login(cache, "bob"));
+        assertEquals(4, fullTransfers.get());
+        assertEquals(4, notModified.get());
+    }
+
+    @Test
+    public void copiesAreKeptPerServer() {
+        ResponseCache cache = new ResponseCache(directory.toFile());
+        assertTrue(login(cache, "localhost", "alice"));
+
+        // Another address is another server as far as the cache knows, even with the same username
+        assertTrue(login(cache, "127.0.0.1", "alice"));
+        assertNull(lastIfNoneMatch);
+        assertEquals(4, fullTransfers.get());
+
+        assertTrue(login(cache, "localhost", "alice"));
+        assertTrue(login(cache, "127.0.0.1", "alice"));
+        assertEquals(4, fullTransfers.get());
+        assertEquals(4, notModified.get());
+    }
+
+    @Test
+    public void lastModifiedAloneIsEnough() {
+        sendEtags = false;
+        ResponseCache cache = new ResponseCache(directory.toFile());
+        assertTrue(login(cache, "alice"));
+        assertTrue(login(cache, "alice"));
+        assertEquals(2, fullTransfers.get());
+        assertEquals(2, notModified.get());
+
+        personVersion++;
+        assertTrue(login(cache, "alice"));
+        assertEquals(3, fullTransfers.get());
+    }
+
+    @Test
+    public void responsesWithoutValidatorsAreNotKept() {
+        sendEtags = false;
+        sendDates = false;
+        ResponseCache cache = new ResponseCache(directory.toFile());
+        assertTrue(login(cache, "alice"));
+        assertTrue(login(cache, "alice"));
+        assertEquals(4, fullTransfers.get());
+        assertEquals(0, notModified.get());
+    }
+
+    @Test
+    public void missingOrBrokenCopiesAreDownloadedAgain() throws IOException {
+        ResponseCache cache = new ResponseCache(directory.toFile());
+        assertTrue(login(cache, "alice"));
+
+        // The system may empty the cache directory at any time
+        deleteContents();
+        assertTrue(login(cache, "alice"));
+        assertEquals(4, fullTransfers.get());
+
+        // A copy that can't be read is downloaded again in the same login, and the new copy is kept
+        overwrite("event.json", "{\"data\":[{\"eventID\"");
+        int before = notModified.get();
+        assertTrue(login(cache, "alice"));
+        assertEquals(5, fullTransfers.get());
+        assertEquals(before + 2, notModified.get());
+        assertEquals(20_000, DataCache.getInstance().getEventList().size());
+        assertTrue(login(cache, "alice"));
+        assertEquals(5, fullTransfers.get());
+        assertEquals(before + 4, notModified.get());
+    }
+
+    @Test
+    public void copiesOfTheWrongShapeAreDownloadedAgain() throws IOException {
+        ResponseCache cache = new ResponseCache(directory.toFile());
+        assertTrue(login(cache, "alice"));
+
+        // Well-formed JSON, but not a response the decoder can read: an array, and a latitude that isn't a number
+        overwrite("person.json", "[]");
+        overwrite("event.json", "{\"data\":[{\"eventID\":\"e\",\"latitude\":\"north\"}],\"success\":true}");
+        assertTrue(login(cache, "alice"));
+        assertEquals(4, fullTransfers.get());
+        assertEquals(2, notModified.get());
+        assertEquals(5_000, DataCache.getInstance().getPersonList().size());
+        assertEquals(20_000, DataCache.getInstance().getEventList().size());
+
+        assertTrue(login(cache, "alice"));
+        assertEquals(4, fullTransfers.get());
+        assertEquals(4, notModified.get());
+    }
+
+    private void overwrite(String fileName, String json) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.filter(file -> file.getFileName().toString().equals(fileName)).forEach(file -> {
+                try {
+                    Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+                }
+                catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            });
+        }
+    }
+
+    private void deleteContents() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.filter(file -> !file.equals(directory)).sorted(Comparator.reverseOrder()).map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    // Downloads the user's persons and events into the DataCache, as DataTask does after a login
+    private boolean login(ResponseCache cache, String username) {
+        return login(cache, "localhost", username);
+    }
+
+    private boolean login(ResponseCache cache, String host, String username) {
+        lastIfNoneMatch = null;
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.invalidate();
+        dataCache.setAuthToken(new AuthToken("token-" + username, username));
+        ServerProxy proxy = new ServerProxy(cache);
+        PersonResponse personResponse = proxy.people(host, port);
+        EventResponse eventResponse = proxy.events(host, port);
+        if (!personResponse.getSuccess() || !eventResponse.getSuccess()) return false;
+        dataCache.setData(personResponse.getData(), eventResponse.getData());
+        return true;
+    }
+
+    private void respond(HttpExchange exchange, String etag, int version, Object response) throws IOException {
+        exchange.getRequestBody().close();
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        if (ifNoneMatch != null) lastIfNoneMatch = ifNoneMatch;
+        String lastModified = DATES[version % DATES.length];
+
+        etag = "\"" + etag + "\"";
+        boolean unchanged = sendEtags ? etag.equals(ifNoneMatch) : sendDates && lastModified.equals(ifModifiedSince);
+        if (sendEtags) exchange.getResponseHeaders().set("ETag", etag);
+        if (sendDates) exchange.getResponseHeaders().set("Last-Modified", lastModified);
+        if (unchanged) {
+            notModified.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        // Sent compressed, so the stored copies have to be the decompressed JSON
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(body)) {
+            out.write(gson.toJson(response).getBytes(StandardCharsets.UTF_8));
+        }
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        exchange.sendResponseHeaders(200, body.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            body.writeTo(out);
+        }
+        fullTransfers.incrementAndGet();
+    }
+}
@@ -0,0 +1,121 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import net.haydenwelton.familymap.adapter.SearchRecyclerAdapter;
+import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.data.SearchPipeline;
+import net.haydenwelton.familymap.model.SearchResult;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+public class SearchAdapterBindTest {
+    private static final String[] KEYSTROKES = { "m", "ma", "mar", "mary", "mary", "mary ", "mary s", "mary sm",
+            "mary smi", "mary sm", "mary s" };
+
+    @Test
+    public void keystrokesRebindOnlyChangedRows() {
+        SyntheticData.generate(20_000, 4).load();
+
+        // Diff on the calling thread; the differ still hands the result to the main looper
+        CountingAdapter adapter = new CountingAdapter();
+        RecyclerView recyclerView = new RecyclerView(RuntimeEnvironment.getApplication());
+        recyclerView.setLayoutManager(new LinearLayoutManager(RuntimeEnvironment.getApplication()));
+        recyclerView.setItemAnimator(null);
+        recyclerView.setAdapter(adapter);
+
+        int diffedBinds = 0;
+        int fullBinds = 0;
+        for (String query : KEYSTROKES) {
+            List<SearchResult> results = DataProcessor.searchRanked(query).nextPage(SearchPipeline.PAGE_SIZE);
+            adapter.binds = 0;
+            adapter.setSearchResults(results);
+            shadowOf(Looper.getMainLooper()).idle();
+            layout(recyclerView);
+            assertEquals(results.size(), adapter.getItemCount());
+
+            // notifyDataSetChanged, as the adapter used to call, rebinds every row on screen
+            int visible = recyclerView.getChildCount();
+            System.out.printf("%-10s %3d results, %2d rows on screen: %2d rebound%n", "\"" + query + "\"",
+                    results.size(), visible, adapter.binds);
+            assertTrue(adapter.binds <= visible);
+            diffedBinds += adapter.binds;
+            fullBinds += visible;
+        }
+        System.out.printf("%d keystrokes: %d rows rebound, %d with notifyDataSetChanged%n", KEYSTROKES.length,
+                diffedBinds, fullBinds);
+        assertTrue(diffedBinds < fullBinds);
+    }
+
+    @Test
+    public void nextPageOnlyBindsNewRows() {
+        SyntheticData.generate(20_000, 4).load();
+        CountingAdapter adapter = new CountingAdapter();
+        RecyclerView recyclerView = new RecyclerView(RuntimeEnvironment.getApplication());
+        recyclerView.setLayoutManager(new LinearLayoutManager(RuntimeEnvironment.getApplication()));
+        recyclerView.setItemAnimator(null);
+        recyclerView.setAdapter(adapter);
+
+        List<SearchResult> results = new ArrayList<>(
+                DataProcessor.searchRanked("a").nextPage(SearchPipeline.PAGE_SIZE));
+        adapter.setSearchResults(new ArrayList<>(results));
+        shadowOf(Looper.getMainLooper()).idle();
+        layout(recyclerView);
+
+        // Appending a page off screen rebinds nothing that is shown
+        results.addAll(DataProcessor.searchRanked("a").nextPage(2 * SearchPipeline.PAGE_SIZE)
+                .subList(SearchPipeline.PAGE_SIZE, 2 * SearchPipeline.PAGE_SIZE));
+        adapter.binds = 0;
+        adapter.setSearchResults(results);
+        shadowOf(Looper.getMainLooper()).idle();
+        layout(recyclerView);
+        assertEquals(2 * SearchPipeline.PAGE_SIZE, adapter.getItemCount());
+        assertEquals(0, adapter.binds);
+
+        // Stable ids tell every row apart
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < adapter.getItemCount(); i++) {
+            ids.add(adapter.getItemId(i));
+        }
+        assertEquals(adapter.getItemCount(), ids.size());
+    }
+
+    private static void layout(RecyclerView recyclerView) {
+        recyclerView.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, 1080, 1920);
+    }
+
+    // Counts the rows bound since binds was last reset
+    private static class CountingAdapter extends SearchRecyclerAdapter {
+        private int binds;
+
+        private CountingAdapter() {
+            super(Runnable::run);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder viewHolder, int position) {
+            binds++;
+            super.onBindViewHolder(viewHolder, position);
+        }
+    }
+}
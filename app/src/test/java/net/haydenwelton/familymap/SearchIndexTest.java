@@ -0,0 +1,168 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.SharedPreferences;
+
+import com.github.ivanshafran.sharedpreferencesmock.SPMockBuilder;
+
+import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.data.EventColumns;
+import net.haydenwelton.familymap.model.SearchResult;
+
+import org.junit.Test;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import model.Event;
+import model.Person;
+
+public class SearchIndexTest {
+    private static final String[] QUERIES = { "a", "ma", "mar", "marg", "MARGARET", "o'b", "o'brien",
+            "n s", "y w", "dub", "dublin", "irel", "1950", "195", "19", "9", "birth", "DEATH", "cens",
+            "galway", "zzz", "q", "ét", "  " };
+
+    // Someone typing "jane walsh", then "dublin", then "1875"
+    private static final String[] TYPING = { "j", "ja", "jan", "jane", "jane ", "jane w", "jane wa",
+            "jane wal", "jane wals", "jane walsh", "d", "du", "dub", "dubl", "dubli", "dublin", "1", "18",
+            "187", "1875" };
+
+    @Test
+    public void indexedSearchMatchesScan() {
+        SyntheticData data = SyntheticData.generate(20_000, 4);
+        data.load();
+        checkAllQueries();
+
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("mother_side", true).commit();
+        prefs.edit().putBoolean("female", true).commit();
+        DataCache.getFilteredInstance(prefs);
+        checkAllQueries();
+    }
+
+    @Test
+    public void eventsWithoutYearsMatchNoYear() {
+        Person[] persons = { new Person("ann", "u", "Ann", "Smith", "f", null, null, null) };
+        Event[] events = {
+                new Event("dated", "u", "ann", 0f, 0f, "Ireland", "Cork", "Birth", 1900),
+                new Event("undated", "u", "ann", 0f, 0f, "Ireland", "Cork", "Census", null),
+        };
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.invalidate();
+        dataCache.setData(persons, events);
+
+        EventColumns columns = dataCache.getEventColumns();
+        assertEquals(EventColumns.NO_YEAR, columns.getYear(1));
+        assertEquals(1900, columns.getMinYear());
+        assertEquals(1900, columns.getMaxYear());
+
+        assertEquals(Collections.singletonList("dated"), search("0"));
+        assertEquals(Collections.singletonList("dated"), ranked("0"));
+        assertEquals(Collections.emptyList(), ranked("year:0..10"));
+        assertEquals(Collections.singletonList("dated"), ranked("year:..1950"));
+        assertEquals(Arrays.asList("dated", "undated"), ranked("cork"));
+    }
+
+    @Test
+    public void keystrokeLatencyAtOneMillionEvents() {
+        Benchmarks.assumeEnabled();
+        SyntheticData data = SyntheticData.generate(250_000, 4);
+        data.load();
+        DataCache dataCache = DataCache.getInstance();
+        Person[] persons = dataCache.getPersons();
+        Event[] events = dataCache.getEvents();
+
+        // Warm up both paths before timing them
+        for (String query : TYPING) {
+            scan(persons, events, query);
+            search(query);
+        }
+
+        long scanTotal = 0;
+        long indexTotal = 0;
+        for (String query : TYPING) {
+            System.gc();
+            long start = System.nanoTime();
+            List<String> expected = scan(persons, events, query);
+            long scanTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<String> actual = search(query);
+            long indexTime = System.nanoTime() - start;
+
+            System.out.printf("%-18s %,9d results: scan %8.2f ms, index %8.2f ms%n",
+                    "\"" + query + "\"", actual.size(), scanTime / 1e6, indexTime / 1e6);
+            assertEquals(expected, actual);
+            scanTotal += scanTime;
+            indexTotal += indexTime;
+        }
+        System.out.printf("%d keystrokes over %,d events: scan %.2f ms/keystroke, index %.2f ms/keystroke%n",
+                TYPING.length, events.length, scanTotal / 1e6 / TYPING.length, indexTotal / 1e6 / TYPING.length);
+        assertTrue(indexTotal < scanTotal);
+    }
+
+    private static void checkAllQueries() {
+        DataCache dataCache = DataCache.getInstance();
+        Person[] persons = dataCache.getPersons();
+        Event[] events = dataCache.getEvents();
+        for (String query : QUERIES) {
+            assertEquals(query, scan(persons, events, query), search(query));
+        }
+    }
+
+    private static List<String> ranked(String query) {
+        List<String> ids = new ArrayList<>();
+        for (SearchResult result : DataProcessor.searchRanked(query).nextPage(100)) {
+            if (result.getType() == SearchResult.Type.EVENT) {
+                ids.add(result.getId());
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private static List<String> search(String query) {
+        List<SearchResult> results = new ArrayList<>();
+        DataProcessor.searchPersons(results, query);
+        DataProcessor.searchEvents(results, query);
+        List<String> ids = new ArrayList<>(results.size());
+        for (SearchResult result : results) {
+            ids.add(result.getId());
+        }
+        return ids;
+    }
+
+    // The search as it was before the index: every person's full name and every event's fields.
+    // Search ignores accents, and the synthetic data has none, so the query's accents are stripped first.
+    private static List<String> scan(Person[] persons, Event[] events, String rawQuery) {
+        List<SearchResult> results = new ArrayList<>();
+        String query = Normalizer.normalize(rawQuery, Normalizer.Form.NFD).replaceAll("\\p{Mn}", "");
+        if (!query.isEmpty() && !query.trim().isEmpty()) {
+            for (Person person : persons) {
+                if (DataProcessor.containsIgnoreCase(person.getFirstName() + " " + person.getLastName(), query)) {
+                    results.add(new SearchResult(person));
+                }
+            }
+            for (Event event : events) {
+                if (DataProcessor.containsIgnoreCase(event.getCountry(), query) ||
+                        DataProcessor.containsIgnoreCase(event.getCity(), query) ||
+                        DataProcessor.containsIgnoreCase(event.getEventType(), query) ||
+                        DataProcessor.containsIgnoreCase(String.valueOf(event.getYear()), query)) {
+                    Person person = DataCache.getInstance().getPersonByID(event.getPersonID());
+                    results.add(new SearchResult(event, person.getFirstName(), person.getLastName()));
+                }
+            }
+        }
+        List<String> ids = new ArrayList<>(results.size());
+        for (SearchResult result : results) {
+            ids.add(result.getId());
+        }
+        return ids;
+    }
+}
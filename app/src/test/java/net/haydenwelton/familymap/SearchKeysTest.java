@@ -0,0 +1,130 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.data.RankedSearch;
+import net.haydenwelton.familymap.model.SearchResult;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import model.AuthToken;
+import model.Event;
+import model.Person;
+import model.User;
+
+public class SearchKeysTest {
+
+    @Test
+    public void accentsAndCaseAreIgnored() {
+        loadAccentedData();
+        assertEquals(Collections.singletonList("jose"), personIds("Jose"));
+        assertEquals(Collections.singletonList("jose"), personIds("JOSÉ"));
+        assertEquals(Collections.singletonList("jose"), personIds("josé garcía"));
+        assertEquals(Collections.singletonList("zoe"), personIds("zoe"));
+        assertEquals(Collections.singletonList("zoe"), personIds("ZOË Brontë"));
+        assertEquals(Collections.singletonList("sean"), personIds("seán ó"));
+        assertTrue(personIds("josef").isEmpty());
+
+        // Event cities, countries and types are folded the same way
+        assertEquals(Collections.singletonList("e1"), eventIds("montreal"));
+        assertEquals(Collections.singletonList("e1"), eventIds("Montréal"));
+        assertEquals(Collections.singletonList("e2"), eventIds("Zurich"));
+        assertEquals(Collections.singletonList("e2"), eventIds("SCHWEIZ"));
+        assertEquals(Collections.singletonList("e3"), eventIds("bapteme"));
+    }
+
+    @Test
+    public void accentedNamesRankLikePlainOnes() {
+        loadAccentedData();
+        RankedSearch ranked = DataProcessor.searchRanked("garcia");
+        List<SearchResult> page = ranked.nextPage(10);
+        assertEquals("jose", page.get(0).getId());
+        assertEquals(SearchResult.Type.PERSON, page.get(0).getType());
+
+        // "Ó Súilleabháin" starts a word of Seán's name, "ill" is only inside it
+        assertEquals("sean", DataProcessor.searchRanked("suil").nextPage(1).get(0).getId());
+    }
+
+    @Test
+    public void matchingDoesNotAllocatePerRecord() {
+        SyntheticData.generate(100_000, 4).load();
+        // Warm up, then measure queries that check every person and every event term
+        for (int i = 0; i < 10; i++) {
+            search("zq");
+        }
+        long bytes = allocatedBytes(() -> {
+            for (int i = 0; i < 100; i++) {
+                search("zq");
+            }
+        });
+        System.out.printf("100 searches checking %,d names: %,d bytes%n",
+                DataCache.getInstance().getPersons().length, bytes);
+        // A few small arrays per search, nothing per person
+        assertTrue(bytes < 100 * 4_096);
+    }
+
+    private static void loadAccentedData() {
+        Person[] persons = {
+                new Person("jose", "u", "José", "García", "m", null, null, "zoe"),
+                new Person("zoe", "u", "Zoë", "Brontë", "f", null, null, "jose"),
+                new Person("sean", "u", "Seán", "Ó Súilleabháin", "m", "jose", "zoe", null),
+                new Person("john", "u", "John", "Smith", "m", null, null, null),
+        };
+        Event[] events = {
+                new Event("e1", "u", "jose", 45.5f, -73.6f, "Canada", "Montréal", "Birth", 1901),
+                new Event("e2", "u", "zoe", 47.4f, 8.5f, "Schweiz", "Zürich", "Birth", 1903),
+                new Event("e3", "u", "sean", 53.3f, -6.3f, "Ireland", "Dublin", "Baptême", 1930),
+                new Event("e4", "u", "john", 51.5f, -0.1f, "England", "London", "Birth", 1850),
+        };
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.invalidate();
+        dataCache.setUser(new User("u", "password", "email@gmail.com", "John", "Smith", "m", "john"));
+        dataCache.setAuthToken(new AuthToken("token", "u"));
+        dataCache.setPersons(persons);
+        dataCache.setEvents(events);
+    }
+
+    private static List<String> personIds(String query) {
+        List<SearchResult> results = new ArrayList<>();
+        DataProcessor.searchPersons(results, query);
+        return ids(results);
+    }
+
+    private static List<String> eventIds(String query) {
+        List<SearchResult> results = new ArrayList<>();
+        DataProcessor.searchEvents(results, query);
+        return ids(results);
+    }
+
+    private static List<String> ids(List<SearchResult> results) {
+        List<String> ids = new ArrayList<>(results.size());
+        for (SearchResult result : results) {
+            ids.add(result.getId());
+        }
+        return ids;
+    }
+
+    private static void search(String query) {
+        List<SearchResult> results = new ArrayList<>();
+        DataProcessor.searchPersons(results, query);
+        DataProcessor.searchEvents(results, query);
+    }
+
+    // Bytes allocated by the current thread while running the task
+    private static long allocatedBytes(Runnable task) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        task.run();
+        return threads.getThreadAllocatedBytes(id) - before;
+    }
+}
@@ -0,0 +1,172 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.data.RankedSearch;
+import net.haydenwelton.familymap.data.SearchPipeline;
+import net.haydenwelton.familymap.model.SearchResult;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class SearchPipelineTest {
+    private static final int KEYSTROKES = 1_000;
+    private static final String KEYS = "abcdefghijklmnoprstuwy' 19";
+
+    private static final class Published {
+        final int generation;
+        final String query;
+        final List<SearchResult> results;
+
+        Published(int generation, String query, List<SearchResult> results) {
+            this.generation = generation;
+            this.query = query;
+            this.results = results;
+        }
+    }
+
+    @Test
+    public void burstOfKeystrokesPublishesOnlyWholeCurrentResults() throws Exception {
+        SyntheticData.generate(5_000, 3).load();
+        int threadsBefore = searchWorkers();
+
+        List<Published> published = new CopyOnWriteArrayList<>();
+        CountDownLatch last = new CountDownLatch(1);
+        String[] lastQuery = new String[1];
+        SearchPipeline pipeline = new SearchPipeline(5, (generation, query, results) -> {
+            published.add(new Published(generation, query, results));
+            if (query.equals(lastQuery[0])) {
+                last.countDown();
+            }
+        });
+
+        // Type and delete at random, sometimes pausing long enough for a search to run
+        Random random = new Random(3);
+        StringBuilder text = new StringBuilder();
+        int lastGeneration = 0;
+        int maxWorkers = 0;
+        for (int i = 0; i < KEYSTROKES; i++) {
+            if (text.length() > 0 && random.nextInt(4) == 0) {
+                text.setLength(text.length() - 1);
+            }
+            else if (text.length() < 8) {
+                text.append(KEYS.charAt(random.nextInt(KEYS.length())));
+            }
+            if (i == KEYSTROKES - 1) {
+                text.setLength(0);
+                text.append("jane w");
+                lastQuery[0] = "jane w";
+            }
+            lastGeneration = pipeline.submit(text.toString().trim());
+            if (random.nextInt(50) == 0) {
+                Thread.sleep(20);
+            }
+            maxWorkers = Math.max(maxWorkers, searchWorkers() - threadsBefore);
+        }
+
+        assertTrue(last.await(30, TimeUnit.SECONDS));
+        pipeline.shutdown();
+
+        System.out.printf("%,d keystrokes: %d searches published, at most %d worker thread(s)%n",
+                KEYSTROKES, published.size(), maxWorkers);
+        assertTrue(maxWorkers <= 1);
+
+        // The final query's results arrive last and match the first page of a fresh search
+        Published latest = published.get(published.size() - 1);
+        assertEquals(lastGeneration, latest.generation);
+        assertEquals(ids(fresh("jane w")), ids(latest.results));
+
+        // Everything published came out in typing order and holds exactly its own query's first page
+        int previous = 0;
+        for (Published result : published) {
+            assertTrue(result.generation > previous);
+            previous = result.generation;
+            assertEquals(result.query, ids(fresh(result.query)), ids(result.results));
+        }
+        assertTrue(published.size() < KEYSTROKES);
+    }
+
+    @Test
+    public void loadMoreAppendsTheNextPage() throws Exception {
+        SyntheticData.generate(5_000, 3).load();
+        List<Published> published = new CopyOnWriteArrayList<>();
+        SearchPipeline pipeline = new SearchPipeline(0, (generation, query, results) ->
+                published.add(new Published(generation, query, results)));
+
+        int generation = pipeline.submit("a");
+        awaitPublications(published, 1);
+        assertEquals(SearchPipeline.PAGE_SIZE, published.get(0).results.size());
+
+        // Asking twice for the same shown count only adds one page
+        pipeline.loadMore(SearchPipeline.PAGE_SIZE);
+        pipeline.loadMore(SearchPipeline.PAGE_SIZE);
+        awaitPublications(published, 2);
+        Thread.sleep(100);
+        assertEquals(2, published.size());
+        assertEquals(generation, published.get(1).generation);
+
+        RankedSearch expected = DataProcessor.searchRanked("a");
+        List<SearchResult> twoPages = new ArrayList<>(expected.nextPage(SearchPipeline.PAGE_SIZE));
+        twoPages.addAll(expected.nextPage(SearchPipeline.PAGE_SIZE));
+        assertEquals(ids(twoPages), ids(published.get(1).results));
+
+        // A newer query makes requests for the older one's pages stale
+        pipeline.submit("jane");
+        awaitPublications(published, 3);
+        pipeline.loadMore(2 * SearchPipeline.PAGE_SIZE);
+        Thread.sleep(100);
+        assertEquals(3, published.size());
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void shutdownStopsTheWorker() throws Exception {
+        SyntheticData.generate(100, 2).load();
+        int threadsBefore = searchWorkers();
+        List<String> published = new CopyOnWriteArrayList<>();
+        SearchPipeline pipeline = new SearchPipeline(50, (generation, query, results) -> published.add(query));
+        pipeline.submit("jane");
+        pipeline.shutdown();
+        Thread.sleep(200);
+        assertTrue(published.isEmpty());
+        assertEquals(threadsBefore, searchWorkers());
+    }
+
+    private static int searchWorkers() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("search-worker") && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void awaitPublications(List<Published> published, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (published.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, published.size());
+    }
+
+    private static List<SearchResult> fresh(String query) {
+        return DataProcessor.searchRanked(query).nextPage(SearchPipeline.PAGE_SIZE);
+    }
+
+    private static List<String> ids(List<SearchResult> results) {
+        List<String> ids = new ArrayList<>(results.size());
+        for (SearchResult result : results) {
+            ids.add(result.getId());
+        }
+        return ids;
+    }
+}
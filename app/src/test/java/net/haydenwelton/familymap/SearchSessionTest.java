@@ -0,0 +1,132 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.SharedPreferences;
+
+import com.github.ivanshafran.sharedpreferencesmock.SPMockBuilder;
+
+import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.data.SearchSession;
+import net.haydenwelton.familymap.model.SearchResult;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SearchSessionTest {
+
+    // Types "smith", deletes back to "sm", types "smyth", clears, types "Dublin" then "1875"
+    private static final String[] TRACE = trace("smith", "<<<", "yth", "<<<<<", "Dublin", "<<<<<<", "1875");
+
+    @Test
+    public void sessionMatchesFreshSearch() {
+        SyntheticData.generate(20_000, 4).load();
+        SearchSession session = new SearchSession();
+        for (String query : TRACE) {
+            assertEquals(query, ids(fresh(query)), ids(session(session, query)));
+        }
+        // Case changes and queries found in the middle of an earlier one also reuse matches
+        for (String query : new String[] { "WALSH", "wal", "alsh", "Jane W", "ane w", "ane wa" }) {
+            assertEquals(query, ids(fresh(query)), ids(session(session, query)));
+        }
+    }
+
+    @Test
+    public void filterChangeIsNotServedFromMemory() {
+        SyntheticData.generate(5_000, 3).load();
+        SearchSession session = new SearchSession();
+        int before = session(session, "birth").size();
+
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("male", true).commit();
+        DataCache.getFilteredInstance(prefs);
+        List<SearchResult> after = session(session, "birth");
+
+        assertEquals(ids(fresh("birth")), ids(after));
+        assertTrue(after.size() < before);
+
+        // Narrowed matches read from the indexes are filtered too
+        for (String query : new String[] { "1", "18", "187", "j", "ja", "jan", "jane" }) {
+            assertEquals(query, ids(fresh(query)), ids(session(session, query)));
+        }
+    }
+
+    @Test
+    public void typingTraceLatency() {
+        Benchmarks.assumeEnabled();
+        SyntheticData.generate(250_000, 4).load();
+        SearchSession session = new SearchSession();
+        for (String query : TRACE) {
+            fresh(query);
+        }
+
+        long freshTotal = 0;
+        long sessionTotal = 0;
+        for (String query : TRACE) {
+            // Most of the time for short queries goes to building results, so keep collections out of it
+            System.gc();
+            long start = System.nanoTime();
+            List<SearchResult> expected = fresh(query);
+            long freshTime = System.nanoTime() - start;
+
+            System.gc();
+            start = System.nanoTime();
+            List<SearchResult> actual = session(session, query);
+            long sessionTime = System.nanoTime() - start;
+
+            System.out.printf("%-10s %,9d results: fresh %8.2f ms, session %8.2f ms%n",
+                    "\"" + query + "\"", actual.size(), freshTime / 1e6, sessionTime / 1e6);
+            assertEquals(expected.size(), actual.size());
+            freshTotal += freshTime;
+            sessionTotal += sessionTime;
+        }
+        System.out.printf("%d keystrokes over 1,000,000 events: fresh %.2f ms/keystroke, session %.2f ms/keystroke%n",
+                TRACE.length, freshTotal / 1e6 / TRACE.length, sessionTotal / 1e6 / TRACE.length);
+        assertTrue(sessionTotal < freshTotal);
+    }
+
+    private static List<SearchResult> fresh(String query) {
+        List<SearchResult> results = new ArrayList<>();
+        DataProcessor.searchPersons(results, query);
+        DataProcessor.searchEvents(results, query);
+        return results;
+    }
+
+    private static List<SearchResult> session(SearchSession session, String query) {
+        List<SearchResult> results = new ArrayList<>();
+        session.search(results, query);
+        return results;
+    }
+
+    private static List<String> ids(List<SearchResult> results) {
+        List<String> ids = new ArrayList<>(results.size());
+        for (SearchResult result : results) {
+            ids.add(result.getId());
+        }
+        return ids;
+    }
+
+    // The search box contents after each keystroke; '<' is a backspace
+    private static String[] trace(String... keys) {
+        List<String> queries = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (String group : keys) {
+            for (char key : group.toCharArray()) {
+                if (key == '<') {
+                    text.setLength(text.length() - 1);
+                }
+                else {
+                    text.append(key);
+                }
+                if (text.length() > 0) {
+                    queries.add(text.toString());
+                }
+            }
+        }
+        return queries.toArray(new String[0]);
+    }
+}
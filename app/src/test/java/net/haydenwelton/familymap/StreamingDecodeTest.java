@@ -0,0 +1,222 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.gson.Gson;
+
+import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.RecordDecoder;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import model.Event;
+import responses.EventResponse;
+import responses.PersonResponse;
+
+public class StreamingDecodeTest {
+    // About 1.2 million events, a little over 200MB of JSON
+    private static final int BENCHMARK_PERSONS = 300_000;
+
+    private final Gson gson = new Gson();
+
+    @Test
+    public void decodesWhatGsonDecodes() throws IOException {
+        SyntheticData data = SyntheticData.generate(2_000, 4);
+        String persons = gson.toJson(new PersonResponse(data.getPersons(), null, true));
+        String events = gson.toJson(new EventResponse(data.getEvents(), null, true));
+
+        assertEquals(persons, gson.toJson(RecordDecoder.readPersons(new StringReader(persons))));
+        assertEquals(events, gson.toJson(RecordDecoder.readEvents(new StringReader(events))));
+
+        // Repeated strings are shared; a slot taken over by another string can leave a few copies
+        Event[] decoded = RecordDecoder.readEvents(new StringReader(events)).getData();
+        assertTrue(decoded[0].getPersonID() == decoded[1].getPersonID());
+        Set<String> countries = new HashSet<>();
+        Set<String> countryCopies = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Event event : decoded) {
+            countries.add(event.getCountry());
+            countryCopies.add(event.getCountry());
+        }
+        assertTrue(countryCopies.size() <= 2 * countries.size());
+    }
+
+    @Test
+    public void readsFailuresAndUnknownFields() throws IOException {
+        PersonResponse failed = RecordDecoder.readPersons(
+                new StringReader("{\"message\":\"Error: Invalid auth token\",\"success\":false}"));
+        assertNull(failed.getData());
+        assertEquals("Error: Invalid auth token", failed.getMessage());
+        assertEquals(false, failed.getSuccess());
+
+        EventResponse events = RecordDecoder.readEvents(new StringReader("{\"extra\":{\"a\":[1,2]},\"data\":[" +
+                "{\"eventID\":\"e\",\"latitude\":1.5,\"year\":null,\"unknown\":true,\"city\":null}],\"success\":true}"));
+        Event event = events.getData()[0];
+        assertEquals("e", event.getEventID());
+        assertEquals(1.5f, event.getLatitude(), 0);
+        assertNull(event.getYear());
+        assertNull(event.getCity());
+        assertTrue(events.getSuccess());
+
+        try {
+            RecordDecoder.readPersons(new StringReader("{\"data\":[{\"personID\":\"p\""));
+            fail("A truncated response should not decode");
+        }
+        catch (IOException expected) {
+            // ServerProxy reports it as a failed download
+        }
+    }
+
+    @Test
+    public void decodesInputThatArrivesInPieces() throws IOException {
+        SyntheticData data = SyntheticData.generate(500, 4);
+        String persons = gson.toJson(new PersonResponse(data.getPersons(), null, true));
+        String events = gson.toJson(new EventResponse(data.getEvents(), null, true));
+
+        // A few characters at a time, so names, strings and numbers are split between reads
+        assertEquals(persons, gson.toJson(RecordDecoder.readPersons(new TrickleReader(persons, 7))));
+        assertEquals(events, gson.toJson(RecordDecoder.readEvents(new TrickleReader(events, 7))));
+    }
+
+    @Test
+    public void largePayloadPeakHeap() throws IOException {
+        Benchmarks.assumeEnabled();
+        File persons = File.createTempFile("persons", ".json");
+        File events = File.createTempFile("events", ".json");
+        persons.deleteOnExit();
+        events.deleteOnExit();
+        writePayload(persons, events);
+        System.out.printf("payload: %.1f MB of persons, %.1f MB of events%n",
+                persons.length() / 1e6, events.length() / 1e6);
+
+        // Warm up both decoders on a slice of the work before measuring
+        DataCache.getInstance().invalidate();
+        for (int round = 0; round < 2; round++) {
+            try (Reader reader = open(persons)) {
+                gson.fromJson(reader, PersonResponse.class);
+            }
+            try (Reader reader = open(persons)) {
+                RecordDecoder.readPersons(reader);
+            }
+        }
+
+        long[] gsonRun = load(persons, events, false);
+        long[] streamingRun = load(persons, events, true);
+        System.out.printf("Gson:      %6d ms, peak heap %5d MB, %5d MB retained by the cache%n",
+                gsonRun[0], gsonRun[1] >> 20, gsonRun[2] >> 20);
+        System.out.printf("streaming: %6d ms, peak heap %5d MB, %5d MB retained by the cache%n",
+                streamingRun[0], streamingRun[1] >> 20, streamingRun[2] >> 20);
+        assertTrue(streamingRun[1] < gsonRun[1]);
+        assertTrue(streamingRun[2] < gsonRun[2]);
+        DataCache.getInstance().invalidate();
+    }
+
+    // Downloads both files into the cache, as DataTask does, and returns the time taken, the peak heap
+    // and the heap still in use afterwards
+    private long[] load(File persons, File events, boolean streaming) throws IOException {
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.invalidate();
+        long base = settledHeap();
+        resetPeaks();
+        long start = System.nanoTime();
+        PersonResponse personResponse;
+        EventResponse eventResponse;
+        try (Reader reader = open(persons)) {
+            personResponse = streaming ? RecordDecoder.readPersons(reader) : gson.fromJson(reader, PersonResponse.class);
+        }
+        try (Reader reader = open(events)) {
+            eventResponse = streaming ? RecordDecoder.readEvents(reader) : gson.fromJson(reader, EventResponse.class);
+        }
+        dataCache.setPersons(personResponse.getData());
+        dataCache.setEvents(eventResponse.getData());
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        personResponse = null;
+        eventResponse = null;
+        long peak = peakHeap() - base;
+        long retained = settledHeap() - base;
+        assertEquals(BENCHMARK_PERSONS * 4, dataCache.getEvents().length);
+        dataCache.invalidate();
+        return new long[] { elapsed, peak, retained };
+    }
+
+    // Writes the benchmark tree, freeing the generated records before anything is measured
+    private void writePayload(File persons, File events) throws IOException {
+        SyntheticData data = SyntheticData.generate(BENCHMARK_PERSONS, 4);
+        try (Writer writer = Files.newBufferedWriter(persons.toPath(), StandardCharsets.UTF_8)) {
+            gson.toJson(new PersonResponse(data.getPersons(), null, true), writer);
+        }
+        try (Writer writer = Files.newBufferedWriter(events.toPath(), StandardCharsets.UTF_8)) {
+            gson.toJson(new EventResponse(data.getEvents(), null, true), writer);
+        }
+    }
+
+    // Hands out at most a few characters per read, like a slow connection
+    private static final class TrickleReader extends Reader {
+        private final String text;
+        private final int most;
+        private int position;
+
+        TrickleReader(String text, int most) {
+            this.text = text;
+            this.most = most;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == text.length()) return -1;
+            int count = Math.min(Math.min(length, most), text.length() - position);
+            text.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static Reader open(File file) throws IOException {
+        return new BufferedReader(Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static long settledHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void resetPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    // The pools peak at different moments, so their sum is an upper bound
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+}
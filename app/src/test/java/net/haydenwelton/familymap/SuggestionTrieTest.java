@@ -0,0 +1,173 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.data.SuggestionTrie;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import model.AuthToken;
+import model.Event;
+import model.Person;
+import model.User;
+
+public class SuggestionTrieTest {
+    private static final String[] SYLLABLES = { "an", "ber", "ca", "dan", "el", "fi", "gor", "ha", "is", "jo",
+            "ka", "li", "mar", "ne", "o", "pe", "qu", "ro", "sa", "ta", "u", "vi", "wen", "xa", "yo", "zu" };
+
+    @Test
+    public void completesNamesAndEventTerms() {
+        Person[] persons = {
+                new Person("jose", "u", "José", "García", "m", null, null, "zoe"),
+                new Person("zoe", "u", "Zoë", "Brontë", "f", null, null, "jose"),
+                new Person("jon", "u", "Jon", "Garcia", "m", "jose", "zoe", null),
+                new Person("john", "u", "John", "Smith", "m", null, null, null),
+        };
+        Event[] events = {
+                new Event("e1", "u", "jose", 53.3f, -6.3f, "Ireland", "Dublin", "Birth", 1901),
+                new Event("e2", "u", "zoe", 53.3f, -6.3f, "Ireland", "Dublin", "Birth", 1903),
+                new Event("e3", "u", "jon", 53.3f, -6.3f, "Ireland", "Dunmore", "Baptism", 1930),
+                new Event("e4", "u", "john", 51.5f, -0.1f, "England", "London", "Birth", 1850),
+        };
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.invalidate();
+        dataCache.setUser(new User("u", "password", "email@gmail.com", "John", "Smith", "m", "john"));
+        dataCache.setAuthToken(new AuthToken("token", "u"));
+        dataCache.setPersons(persons);
+        assertEquals(Arrays.asList("John", "Jon", "José"), DataProcessor.suggest("jo", 10));
+        assertTrue(DataProcessor.suggest("dub", 10).isEmpty());
+
+        dataCache.setEvents(events);
+        // García and Garcia fold the same, so they are one suggestion carried by two persons
+        assertEquals(Collections.singletonList("García"), DataProcessor.suggest("G", 10));
+        assertEquals(Collections.singletonList("García"), DataProcessor.suggest("GARC", 10));
+        assertEquals(Arrays.asList("Dublin", "Dunmore"), DataProcessor.suggest("du", 10));
+        assertEquals(Arrays.asList("Birth", "Baptism", "Brontë"), DataProcessor.suggest("b", 10));
+        assertEquals(Collections.singletonList("Birth"), DataProcessor.suggest("b", 1));
+        assertEquals(Collections.singletonList("Ireland"), DataProcessor.suggest("  ire", 10));
+        assertEquals(Collections.singletonList("Zoë"), DataProcessor.suggest("zoe", 10));
+        assertTrue(DataProcessor.suggest("x", 10).isEmpty());
+        assertTrue(DataProcessor.suggest("", 10).isEmpty());
+    }
+
+    @Test
+    public void matchesBruteForce() {
+        Random random = new Random(3);
+        String[] texts = new String[50_000];
+        int[] weights = new int[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = token(random, 1 + random.nextInt(3));
+            weights[i] = 1 + random.nextInt(20);
+        }
+        SuggestionTrie trie = new SuggestionTrie(texts, weights);
+
+        Map<String, Integer> merged = new LinkedHashMap<>();
+        for (int i = 0; i < texts.length; i++) {
+            merged.merge(texts[i], weights[i], Integer::sum);
+        }
+        assertEquals(merged.size(), trie.size());
+
+        for (String prefix : Arrays.asList("", "a", "an", "ber", "bera", "o", "ou", "zuzu", "qux", "wenwenwen")) {
+            for (int limit : new int[] { 1, 10, 1_000 }) {
+                assertEquals(prefix + " " + limit, bruteForce(merged, prefix, limit), trie.complete(prefix, limit));
+            }
+        }
+        for (int i = 0; i < 2_000; i++) {
+            String prefix = texts[random.nextInt(texts.length)];
+            prefix = prefix.substring(0, 1 + random.nextInt(prefix.length()));
+            assertEquals(prefix, bruteForce(merged, prefix, 10), trie.complete(prefix, 10));
+        }
+    }
+
+    @Test
+    public void millionTokenBenchmark() {
+        Random random = new Random(7);
+        Set<String> distinct = new HashSet<>();
+        while (distinct.size() < 1_000_000) {
+            distinct.add(token(random, 2 + random.nextInt(4)));
+        }
+        String[] texts = distinct.toArray(new String[0]);
+        distinct = null;
+        int[] weights = new int[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            // Skewed like real names: a few very common, most rare
+            weights[i] = 1 + 1_000 / (1 + random.nextInt(10_000));
+        }
+
+        System.gc();
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        SuggestionTrie trie = new SuggestionTrie(texts, weights);
+        long buildTime = System.nanoTime() - start;
+        System.gc();
+        long heapAfter = usedHeap();
+        System.out.printf("%,d tokens: built in %.0f ms, %,d bytes retained (%,d bytes measured on the heap)%n",
+                trie.size(), buildTime / 1e6, trie.retainedBytes(), heapAfter - heapBefore);
+        assertEquals(texts.length, trie.size());
+
+        String[] prefixes = new String[20_000];
+        for (int i = 0; i < prefixes.length; i++) {
+            String text = texts[random.nextInt(texts.length)];
+            prefixes[i] = text.substring(0, 1 + random.nextInt(Math.min(4, text.length())));
+        }
+        for (int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            int found = 0;
+            for (String prefix : prefixes) {
+                found += trie.complete(prefix, 10).size();
+            }
+            long time = System.nanoTime() - start;
+            System.out.printf("%,d top-10 completions: %.2f µs each, %,d found%n", prefixes.length,
+                    time / 1e3 / prefixes.length, found);
+        }
+
+        // For scale, the same completions by scanning every token
+        Map<String, Integer> all = new HashMap<>(texts.length * 2);
+        for (int i = 0; i < texts.length; i++) {
+            all.put(texts[i], weights[i]);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            assertEquals(bruteForce(all, prefixes[i], 10), trie.complete(prefixes[i], 10));
+        }
+        System.out.printf("scanning every token: %.2f ms each%n", (System.nanoTime() - start) / 1e6 / 20);
+    }
+
+    // Texts starting with the prefix, heaviest first, then in dictionary order
+    private static List<String> bruteForce(Map<String, Integer> weights, String prefix, int limit) {
+        List<String> found = new ArrayList<>();
+        for (String text : weights.keySet()) {
+            if (text.startsWith(prefix)) found.add(text);
+        }
+        found.sort((a, b) -> weights.get(a).equals(weights.get(b)) ? a.compareTo(b) :
+                Integer.compare(weights.get(b), weights.get(a)));
+        return found.subList(0, Math.min(limit, found.size()));
+    }
+
+    private static String token(Random random, int syllables) {
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < syllables; i++) {
+            token.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return token.toString();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,122 @@
+package net.haydenwelton.familymap;
+
+import net.haydenwelton.familymap.data.DataCache;
+
+import model.AuthToken;
+import model.Event;
+import model.Person;
+import model.User;
+
+// Builds large, deterministic family trees for tests that cannot rely on the local server.
+// Person 0 is the user, person 1 is their spouse and the rest form a full binary pedigree
+// above the user: the father of person i is ancestor(2i + 1) and the mother is ancestor(2i + 2).
+public class SyntheticData {
+    public static final String USERNAME = "synthetic";
+
+    private static final String[] FIRST_NAMES_M = { "John", "William", "James", "Thomas", "George",
+            "Henry", "Samuel", "Joseph", "Patrick", "Michael" };
+    private static final String[] FIRST_NAMES_F = { "Mary", "Elizabeth", "Sarah", "Ann", "Margaret",
+            "Jane", "Catherine", "Bridget", "Ellen", "Alice" };
+    private static final String[] LAST_NAMES = { "Smith", "Jones", "Brown", "Taylor", "Wilson",
+            "O'Brien", "Murphy", "Walsh", "Evans", "Roberts", "Johnson", "Walker" };
+    private static final String[] CITIES = { "Dublin", "Cork", "Provo", "Boston", "Leeds",
+            "Lyon", "Oslo", "Perth", "Quebec", "Toledo", "Bergen", "Galway" };
+    private static final String[] COUNTRIES = { "Ireland", "United States", "England", "France",
+            "Norway", "Australia", "Canada", "Spain" };
+    private static final String[] MIDDLE_EVENTS = { "Baptism", "Marriage", "Graduation", "Census" };
+
+    private final Person[] persons;
+    private final Event[] events;
+
+    private SyntheticData(Person[] persons, Event[] events) {
+        this.persons = persons;
+        this.events = events;
+    }
+
+    public Person[] getPersons() {
+        return persons;
+    }
+
+    public Event[] getEvents() {
+        return events;
+    }
+
+    public Person getRoot() {
+        return persons[0];
+    }
+
+    // Generates personCount persons with eventsPerPerson events each (birth first, death last).
+    public static SyntheticData generate(int personCount, int eventsPerPerson) {
+        Person[] persons = new Person[personCount];
+        int ancestors = personCount - 1;
+        for (int i = 0; i < personCount; i++) {
+            int slot = i == 0 ? 0 : i - 1;
+            boolean spouse = i == 1;
+            String gender = (i == 0 || (!spouse && slot % 2 == 1)) ? "m" : "f";
+            String fatherID = null;
+            String motherID = null;
+            if (!spouse) {
+                int father = 2 * slot + 1;
+                int mother = 2 * slot + 2;
+                fatherID = father < ancestors ? personID(father) : null;
+                motherID = mother < ancestors ? personID(mother) : null;
+            }
+            String spouseID;
+            if (i == 0) {
+                spouseID = personCount > 1 ? personID(-1) : null;
+            }
+            else if (spouse) {
+                spouseID = personID(0);
+            }
+            else {
+                spouseID = null;
+            }
+            String firstName = gender.equals("m") ? FIRST_NAMES_M[i % FIRST_NAMES_M.length] :
+                    FIRST_NAMES_F[i % FIRST_NAMES_F.length];
+            persons[i] = new Person(spouse ? personID(-1) : personID(slot), USERNAME, firstName,
+                    LAST_NAMES[i % LAST_NAMES.length], gender, fatherID, motherID, spouseID);
+        }
+
+        Event[] events = new Event[personCount * eventsPerPerson];
+        int e = 0;
+        for (int i = 0; i < personCount; i++) {
+            int generation = 31 - Integer.numberOfLeadingZeros(i + 1);
+            int birthYear = 2000 - generation * 25 - i % 7;
+            for (int j = 0; j < eventsPerPerson; j++) {
+                String type;
+                if (j == 0) {
+                    type = "Birth";
+                }
+                else if (j == eventsPerPerson - 1) {
+                    type = "Death";
+                }
+                else {
+                    type = MIDDLE_EVENTS[(i + j) % MIDDLE_EVENTS.length];
+                }
+                int place = i * 31 + j;
+                events[e] = new Event("e" + e, USERNAME, persons[i].getPersonID(),
+                        (float) (place % 180 - 90), (float) (place % 360 - 180),
+                        COUNTRIES[place % COUNTRIES.length], CITIES[place % CITIES.length], type,
+                        birthYear + j * 20);
+                e++;
+            }
+        }
+        return new SyntheticData(persons, events);
+    }
+
+    // Loads the generated data into the DataCache as if the user had just logged in.
+    public void load() {
+        DataCache dataCache = DataCache.getInstance();
+        dataCache.invalidate();
+        Person root = getRoot();
+        dataCache.setUser(new User(USERNAME, "password", "email@gmail.com", root.getFirstName(),
+                root.getLastName(), root.getGender(), root.getPersonID()));
+        dataCache.setAuthToken(new AuthToken("token", USERNAME));
+        dataCache.setPersons(persons);
+        dataCache.setEvents(events);
+    }
+
+    private static String personID(int slot) {
+        return slot < 0 ? "spouse" : "p" + slot;
+    }
+}
@@ -0,0 +1,138 @@
+package net.haydenwelton.familymap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.SharedPreferences;
+
+import com.github.ivanshafran.sharedpreferencesmock.SPMockBuilder;
+
+import net.haydenwelton.familymap.data.DataCache;
+import net.haydenwelton.familymap.data.DataProcessor;
+import net.haydenwelton.familymap.model.SearchResult;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import model.Event;
+import model.Person;
+
+public class ViewAllocationTest {
+    private static final int PERSONS = 100_000;
+    private static final int CALLS = 1_000;
+
+    @Test
+    public void viewsMatchCopies() {
+        SyntheticData data = SyntheticData.generate(2_000, 2);
+        data.load();
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("father_side", true).commit();
+        prefs.edit().putBoolean("female", true).commit();
+        DataCache dataCache = DataCache.getFilteredInstance(prefs);
+
+        assertEquals(Arrays.asList(dataCache.getPersons()), dataCache.getPersonList());
+        assertEquals(Arrays.asList(dataCache.getFilteredPersons()), dataCache.getFilteredPersonList());
+        assertEquals(Arrays.asList(dataCache.getEvents()), dataCache.getEventList());
+        assertSame(dataCache.getEventList(), dataCache.getEventList());
+    }
+
+    @Test
+    public void viewsAreReadOnly() {
+        SyntheticData.generate(100, 2).load();
+        DataCache dataCache = DataCache.getInstance();
+        List<Person> persons = dataCache.getPersonList();
+        List<Event> events = dataCache.getEventList();
+        try {
+            persons.set(0, null);
+            fail();
+        }
+        catch (UnsupportedOperationException expected) {
+            // Views share the cache's storage, so they must not be writable
+        }
+        try {
+            events.set(0, null);
+            fail();
+        }
+        catch (UnsupportedOperationException expected) {
+            // Views share the cache's storage, so they must not be writable
+        }
+        assertTrue(persons.get(0) != null && events.get(0) != null);
+    }
+
+    @Test
+    public void repeatedViewCallsDoNotCopy() {
+        SyntheticData.generate(PERSONS, 2).load();
+        SharedPreferences prefs = new SPMockBuilder().createSharedPreferences();
+        prefs.edit().putBoolean("mother_side", true).commit();
+        prefs.edit().putBoolean("male", true).commit();
+        DataCache dataCache = DataCache.getFilteredInstance(prefs);
+
+        long copies = allocatedBytes(() -> {
+            for (int i = 0; i < CALLS; i++) {
+                consume(dataCache.getPersons().length + dataCache.getFilteredPersons().length +
+                        dataCache.getEvents().length);
+            }
+        });
+        long views = allocatedBytes(() -> {
+            for (int i = 0; i < CALLS; i++) {
+                consume(dataCache.getPersonList().size() + dataCache.getFilteredPersonList().size() +
+                        dataCache.getEventList().size());
+            }
+        });
+        System.out.printf("%,d calls over %,d persons: copies allocated %,d KB, views %,d bytes%n",
+                CALLS, PERSONS, copies / 1024, views);
+
+        // Nothing proportional to the data set: well under one reference per person in total
+        assertTrue(views < PERSONS);
+    }
+
+    @Test
+    public void familyAndPersonSearchDoNotCopy() {
+        SyntheticData data = SyntheticData.generate(PERSONS, 2);
+        data.load();
+        Person root = data.getRoot();
+        DataProcessor.findFamily(root);
+
+        long family = allocatedBytes(() -> {
+            for (int i = 0; i < 100; i++) {
+                consume(DataProcessor.findFamily(root).size());
+            }
+        });
+        // "zzz" matches no one, so anything allocated would come from the scan itself
+        long search = allocatedBytes(() -> {
+            for (int i = 0; i < 100; i++) {
+                List<SearchResult> results = new ArrayList<>();
+                DataProcessor.searchPersons(results, "zzz");
+                consume(results.size());
+            }
+        });
+        System.out.printf("100 calls over %,d persons: findFamily %,d bytes, searchPersons %,d bytes%n",
+                PERSONS, family, search);
+
+        assertTrue(family < PERSONS);
+        assertTrue(search < PERSONS);
+    }
+
+    private static int sink;
+
+    private static void consume(int value) {
+        sink += value;
+    }
+
+    // Bytes allocated by the current thread while running the task
+    private static long allocatedBytes(Runnable task) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        task.run();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        task.run();
+        return threads.getThreadAllocatedBytes(threadId) - before;
+    }
+}